@@ -14,6 +14,9 @@ public class ConfigReader {
     private SharedContext ctx;
     private FileCore FileCore;
 
+    //default and global configuration shared by all scenarios
+    private static Map<String, Map<String, Object>> globalLayer = null;
+
     // PicoContainer injects class SharedContext
     public ConfigReader(SharedContext ctx) {
         this.ctx = ctx;
@@ -30,6 +33,67 @@ public class ConfigReader {
      * @param path path to the config file
      */
     public void create(String path) {
+        create(path, null);
+    }
+
+
+    /**
+     * Creates storages based on the content of config files available in default and global configuration
+     * directories.
+     * Files are discovered, parsed and merged only once per test suite execution. Result is kept as an
+     * immutable tree and each scenario gets its own copy-on-write view of it (see SnapshotHashMap).
+     * Changes done later on by local config files or Storage.set are visible only in the current scenario.
+     *
+     * @param configDirs String..., directories with config files, files from later directories overwrite earlier ones
+     */
+    public void createFromGlobalConfig(String... configDirs) {
+        Map<String, Map<String, Object>> layer = getGlobalLayer(configDirs);
+        for (Map.Entry<String, Map<String, Object>> entry : layer.entrySet()) {
+            ctx.Object.put(entry.getKey(), HashMap.class, new SnapshotHashMap(entry.getValue()));
+        }
+    }
+
+
+    /**
+     * helper function used by createFromGlobalConfig method
+     * reads and merges configuration files when called for the first time
+     *
+     * @param configDirs String..., directories with config files
+     * @return Map, immutable storages
+     */
+    private Map<String, Map<String, Object>> getGlobalLayer(String... configDirs) {
+        synchronized (ConfigReader.class) {
+            if ( globalLayer == null ) {
+                Map<String, HashMap<String, Object>> layer = new LinkedHashMap<>();
+                for (String configDir : configDirs) {
+                    Log.debug("Configuration directory is " + configDir);
+                    ArrayList<String> configFiles = FileCore.searchForFile(configDir, ".config");
+                    for (String configFile : configFiles) {
+                        create(configFile, layer);
+                    }
+                }
+
+                Map<String, Map<String, Object>> frozen = new LinkedHashMap<>();
+                for (Map.Entry<String, HashMap<String, Object>> entry : layer.entrySet()) {
+                    frozen.put(entry.getKey(), SnapshotHashMap.freeze(entry.getValue()));
+                }
+                globalLayer = Collections.unmodifiableMap(frozen);
+            } else {
+                Log.debug("Global configuration already loaded. Going to reuse it");
+            }
+
+            return globalLayer;
+        }
+    }
+
+
+    /**
+     * helper function used to create or update storages based on the config file content
+     *
+     * @param path path to the config file
+     * @param layer Map, storages to update, if null storages from the context are updated
+     */
+    private void create(String path, Map<String, HashMap<String, Object>> layer) {
 
         JsonElement root = null;
         JsonObject object = null;
@@ -50,7 +114,7 @@ public class ConfigReader {
                     String pathToIncludedConfigFile = tLine.substring(9);
                     pathToIncludedConfigFile = FileCore.getProjectPath() + File.separator + pathToIncludedConfigFile.trim();
                     Log.debug("Found included configuration file");
-                    create(pathToIncludedConfigFile);
+                    create(pathToIncludedConfigFile, layer);
                 } else {
                     sFileWithoutIncludes = sFileWithoutIncludes + line + System.getProperty("line.separator");
                 }
@@ -84,16 +148,7 @@ public class ConfigReader {
                     }
 
                     result = parseObject(object);
-
-                    //if ctx object already exists overwrite/update its content else create new one
-                    HashMap<String, Object> tmpMap = ctx.Object.get(entry.getKey(), HashMap.class);
-                    if (tmpMap == null) {
-                        ctx.Object.put(entry.getKey(), HashMap.class, result);
-                    } else {
-                        //tmpMap.putAll(result);
-                        deepMerge(tmpMap, result);
-                        ctx.Object.put(entry.getKey(), HashMap.class, tmpMap);
-                    }
+                    update(entry.getKey(), result, layer);
                 }
             } else {
                 Log.debug("No objects found");
@@ -101,6 +156,47 @@ public class ConfigReader {
         }
     }
 
+
+    /**
+     * Creates or updates existing storage based on already parsed json object
+     * Values are converted the same way as in case of config files
+     *
+     * @param name String, name of the storage
+     * @param object JsonObject, content of the storage
+     */
+    public void createFromJson(String name, JsonObject object) {
+        update(name, parseObject(object), null);
+    }
+
+
+    /**
+     * helper function used to create or update particular storage
+     *
+     * @param name String, name of the storage
+     * @param result HashMap, new content of the storage
+     * @param layer Map, storages to update, if null storages from the context are updated
+     */
+    private void update(String name, HashMap<String, Object> result, Map<String, HashMap<String, Object>> layer) {
+        //if ctx object already exists overwrite/update its content else create new one
+        if ( layer != null ) {
+            HashMap<String, Object> tmpMap = layer.get(name);
+            if (tmpMap == null) {
+                layer.put(name, result);
+            } else {
+                deepMerge(tmpMap, result);
+            }
+            return;
+        }
+        HashMap<String, Object> tmpMap = ctx.Object.get(name, HashMap.class);
+        if (tmpMap == null) {
+            ctx.Object.put(name, HashMap.class, result);
+        } else {
+            //tmpMap.putAll(result);
+            deepMerge(tmpMap, result);
+            ctx.Object.put(name, HashMap.class, tmpMap);
+        }
+    }
+
     /**
      * Parses json object
      * helper function used to parse config files content
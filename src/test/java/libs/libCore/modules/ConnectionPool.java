@@ -0,0 +1,539 @@
+package libs.libCore.modules;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Pool of jdbc connections
+ *
+ * One pool is created per jdbc url and it is shared by all scenarios executed in the test suite.
+ * Number of open connections is bounded, connections are validated before they are handed out
+ * and closed when they were not used for longer than idle timeout.
+ * Calling close on a connection returned by getConnection gives it back to the pool,
+ * uncommitted changes are rolled back and auto commit is enabled again.
+ *
+ * Each physical connection keeps a cache of prepared statements keyed by sql text, so repeated queries
+ * are not parsed again by the data base. Closing a statement returned by prepareStatement(String) gives it back
+ * to the cache, settings of the statement like fetch size are kept. Least recently used statements are closed
+ * when the cache is full.
+ *
+ * Statements created via the connection return the connection handle from getConnection, never the physical
+ * connection. Statements that are not cached and were not closed by the user are closed when connection is given back.
+ */
+public class ConnectionPool implements DataSource {
+
+    private static final Map<String, ConnectionPool> pools = new ConcurrentHashMap<>();
+
+    private final String url;
+    private final Driver driver;
+    private final int maxSize;
+    private final long idleTimeout;
+    private final int validationTimeout;
+    private final long borrowTimeout;
+    private final int statementCacheSize;
+    private final Semaphore permits;
+    //most recently used connection is the first one, access is synchronized on the deque
+    private final Deque<Pooled> idle = new ArrayDeque<>();
+    private volatile boolean closed = false;
+
+    /**
+     * @param url String, jdbc url
+     * @param driver Driver, driver used to open new connections
+     * @param maxSize int, max number of connections open at the same time
+     * @param idleTimeout int, time in seconds after which not used connection is closed
+     * @param validationTimeout int, time in seconds to wait for validation of a connection
+     * @param borrowTimeout int, time in seconds to wait for a connection when all of them are in use
+     * @param statementCacheSize int, max number of prepared statements cached per connection, 0 disables the cache
+     */
+    public ConnectionPool(String url, Driver driver, int maxSize, int idleTimeout, int validationTimeout, int borrowTimeout, int statementCacheSize) {
+        this.url = url;
+        this.driver = driver;
+        this.maxSize = maxSize;
+        this.idleTimeout = TimeUnit.SECONDS.toMillis(idleTimeout);
+        this.validationTimeout = validationTimeout;
+        this.borrowTimeout = TimeUnit.SECONDS.toMillis(borrowTimeout);
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+
+    /**
+     * Returns pool for particular url, pool is created if it does not exist yet
+     *
+     * @param url String, jdbc url
+     * @param factory Function, creates new pool for the url
+     *
+     * @return ConnectionPool
+     */
+    public static ConnectionPool getInstance(String url, Function<String, ConnectionPool> factory) {
+        return pools.computeIfAbsent(url, factory);
+    }
+
+
+    /**
+     * Closes all pools and connections that are not in use
+     * Connections that are in use are closed when they are given back
+     */
+    public static void closeAll() {
+        for (ConnectionPool pool : pools.values()) {
+            pool.close();
+        }
+        pools.clear();
+    }
+
+
+    /**
+     * Closes the pool and connections that are not in use
+     */
+    public void close() {
+        closed = true;
+        List<Connection> toClose = new ArrayList<>();
+        synchronized (idle) {
+            for (Pooled pooled : idle) {
+                toClose.add(pooled.connection);
+            }
+            idle.clear();
+        }
+        for (Connection connection : toClose) {
+            discard(connection);
+        }
+        Log.debug("Connection pool for " + url + " closed");
+    }
+
+
+    /**
+     * Returns connection from the pool
+     * Idle connection is reused if it is still valid, otherwise new connection is open
+     *
+     * @return Connection
+     *
+     * @throws SQLException when connection can't be open or all connections are in use longer than borrow timeout
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if ( closed ) {
+            throw new SQLException("Connection pool for " + url + " is closed");
+        }
+        try {
+            if ( ! permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS) ) {
+                throw new SQLException("All " + maxSize + " connections to " + url + " are in use");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for connection to " + url, e);
+        }
+
+        try {
+            Pooled pooled;
+            while ( (pooled = takeIdle()) != null ) {
+                if ( isValid(pooled.connection) ) {
+                    Log.debug("Connection to " + url + " taken from the pool");
+                    return wrap(pooled);
+                }
+                Log.debug("Connection to " + url + " is not valid any more");
+                discard(pooled.connection);
+            }
+
+            Connection connection = driver.connect(url, new Properties());
+            if ( connection == null ) {
+                throw new SQLException("Driver " + driver.getClass().getName() + " does not accept url " + url);
+            }
+            Log.debug("New connection to " + url + " is open");
+            return wrap(new Pooled(connection));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+
+    /**
+     * helper function used to take most recently used idle connection
+     * connections idle longer than idle timeout are closed
+     *
+     * @return Pooled or null if there is no idle connection
+     */
+    private Pooled takeIdle() {
+        List<Connection> expired = new ArrayList<>();
+        Pooled result = null;
+        long now = System.currentTimeMillis();
+        synchronized (idle) {
+            while ( ! idle.isEmpty() && now - idle.peekLast().lastUsed > idleTimeout ) {
+                expired.add(idle.pollLast().connection);
+            }
+            if ( ! idle.isEmpty() ) {
+                result = idle.pollFirst();
+            }
+        }
+        for (Connection connection : expired) {
+            Log.debug("Closing connection to " + url + " idle for more than " + idleTimeout / 1000 + " seconds");
+            discard(connection);
+        }
+
+        return result;
+    }
+
+
+    /**
+     * helper function used to give connection back to the pool
+     *
+     * @param pooled Pooled, physical connection
+     */
+    private void release(Pooled pooled) {
+        Connection connection = pooled.connection;
+        try {
+            boolean reusable = ! closed && ! connection.isClosed();
+            if ( reusable && ! connection.getAutoCommit() ) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            if ( reusable ) {
+                //statements not closed by the user are closed or given back to the cache
+                List<Statement> open;
+                synchronized (pooled.open) {
+                    open = new ArrayList<>(pooled.open);
+                    pooled.open.clear();
+                }
+                for (Statement statement : open) {
+                    closeStatement(statement);
+                }
+                synchronized (pooled.statements) {
+                    for (CachedStatement cached : pooled.statements.values()) {
+                        cached.inUse = false;
+                        cached.owner = null;
+                    }
+                }
+                pooled.lastUsed = System.currentTimeMillis();
+                synchronized (idle) {
+                    idle.addFirst(pooled);
+                }
+                Log.debug("Connection to " + url + " given back to the pool");
+            } else {
+                discard(connection);
+            }
+        } catch (SQLException e) {
+            Log.warn("Connection to " + url + " can't be reused " + e.getMessage());
+            discard(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean isValid(Connection connection) {
+        try {
+            return connection.isValid(validationTimeout);
+        } catch (SQLException | AbstractMethodError e) {
+            return false;
+        }
+    }
+
+    private void discard(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            Log.warn("Connection to " + url + " can't be closed " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * helper function used to create connection handle
+     * close of the handle gives connection back to the pool, handle can't be used after close
+     *
+     * @param pooled Pooled, physical connection
+     *
+     * @return Connection
+     */
+    private Connection wrap(Pooled pooled) {
+        Connection connection = pooled.connection;
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean released = false;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if ( name.equals("close") ) {
+                    if ( ! released ) {
+                        released = true;
+                        release(pooled);
+                    }
+                    return null;
+                } else if ( name.equals("isClosed") ) {
+                    return released || connection.isClosed();
+                } else if ( name.equals("equals") ) {
+                    return proxy == args[0];
+                } else if ( name.equals("hashCode") ) {
+                    return System.identityHashCode(proxy);
+                } else if ( name.equals("toString") ) {
+                    return "Pooled " + connection;
+                } else if ( released ) {
+                    throw new SQLException("Connection was already given back to the pool");
+                } else if ( name.equals("prepareStatement") && args.length == 1 && statementCacheSize > 0 ) {
+                    return prepare(pooled, (String) args[0], (Connection) proxy);
+                }
+                Object result;
+                try {
+                    result = method.invoke(connection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                if ( result instanceof Statement ) {
+                    return track(pooled, (Statement) result, method.getReturnType(), (Connection) proxy);
+                }
+                return result;
+            }
+        };
+
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+
+    /**
+     * helper function used to create handle of a statement that is not cached
+     * getConnection of the handle returns connection handle, statement is closed when connection is given back
+     *
+     * @param pooled Pooled, physical connection
+     * @param statement Statement, statement created by the driver
+     * @param type Class, Statement, PreparedStatement or CallableStatement
+     * @param handle Connection, connection handle returned by getConnection
+     *
+     * @return Statement
+     */
+    private Statement track(Pooled pooled, Statement statement, Class<?> type, Connection handle) {
+        synchronized (pooled.open) {
+            pooled.open.add(statement);
+        }
+        InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if ( name.equals("getConnection") ) {
+                    return handle;
+                } else if ( name.equals("equals") ) {
+                    return proxy == args[0];
+                } else if ( name.equals("hashCode") ) {
+                    return System.identityHashCode(proxy);
+                } else if ( name.equals("close") ) {
+                    synchronized (pooled.open) {
+                        pooled.open.remove(statement);
+                    }
+                }
+                try {
+                    return method.invoke(statement, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+
+    /**
+     * helper function used to get prepared statement from the cache of the connection
+     * If statement for the same sql is already in use a new one is created that is not cached
+     *
+     * @param pooled Pooled, physical connection
+     * @param sql String, sql text
+     * @param handle Connection, connection handle returned by getConnection
+     *
+     * @return PreparedStatement
+     */
+    private PreparedStatement prepare(Pooled pooled, String sql, Connection handle) throws SQLException {
+        CachedStatement cached;
+        synchronized (pooled.statements) {
+            cached = pooled.statements.get(sql);
+            if ( cached != null && cached.inUse ) {
+                return (PreparedStatement) track(pooled, pooled.connection.prepareStatement(sql), PreparedStatement.class, handle);
+            }
+            if ( cached == null ) {
+                cached = new CachedStatement(pooled.connection.prepareStatement(sql));
+                pooled.statements.put(sql, cached);
+                evict(pooled);
+            } else {
+                cached.statement.clearParameters();
+            }
+            cached.inUse = true;
+        }
+
+        CachedStatement statement = cached;
+        InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                //statement was given back to the cache when it was closed or when connection was given back to the pool
+                boolean closed = statement.owner != proxy;
+                if ( name.equals("close") ) {
+                    if ( ! closed ) {
+                        giveBack(pooled, statement);
+                    }
+                    return null;
+                } else if ( name.equals("isClosed") ) {
+                    return closed || statement.statement.isClosed();
+                } else if ( name.equals("getConnection") ) {
+                    return handle;
+                } else if ( name.equals("equals") ) {
+                    return proxy == args[0];
+                } else if ( name.equals("hashCode") ) {
+                    return System.identityHashCode(proxy);
+                } else if ( closed ) {
+                    throw new SQLException("Statement is closed");
+                }
+                try {
+                    return method.invoke(statement.statement, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+
+        PreparedStatement result = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, handler);
+        synchronized (pooled.statements) {
+            cached.owner = result;
+        }
+        return result;
+    }
+
+    /**
+     * helper function used to give statement back to the cache, results and batch are dropped
+     */
+    private void giveBack(Pooled pooled, CachedStatement cached) {
+        try {
+            cached.statement.clearBatch();
+            ResultSet rs = cached.statement.getResultSet();
+            if ( rs != null ) {
+                rs.close();
+            }
+        } catch (SQLException e) {
+            Log.debug("Cached statement can't be cleaned up " + e.getMessage());
+        }
+        synchronized (pooled.statements) {
+            cached.inUse = false;
+            cached.owner = null;
+            if ( cached.evicted ) {
+                closeStatement(cached.statement);
+            }
+        }
+    }
+
+    /**
+     * helper function used to close least recently used statements when cache is full
+     * Statements that are in use are closed when they are given back
+     */
+    private void evict(Pooled pooled) {
+        Iterator<CachedStatement> it = pooled.statements.values().iterator();
+        while ( pooled.statements.size() > statementCacheSize && it.hasNext() ) {
+            CachedStatement cached = it.next();
+            it.remove();
+            cached.evicted = true;
+            if ( ! cached.inUse ) {
+                closeStatement(cached.statement);
+            }
+        }
+    }
+
+    private void closeStatement(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            Log.debug("Statement can't be closed " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Not supported, credentials shall be part of the url
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Credentials shall be provided in the jdbc url");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return (int) TimeUnit.MILLISECONDS.toSeconds(borrowTimeout);
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if ( iface.isInstance(this) ) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+
+    /**
+     * physical connection, its cache of prepared statements and time when it was given back to the pool
+     */
+    private static final class Pooled {
+
+        private final Connection connection;
+        //least recently used statement is the first one, access is synchronized on the map
+        private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+        //statements that are not cached and were not closed yet, access is synchronized on the set
+        private final Set<Statement> open = Collections.newSetFromMap(new IdentityHashMap<Statement, Boolean>());
+        private long lastUsed;
+
+        Pooled(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    private static final class CachedStatement {
+
+        private final PreparedStatement statement;
+        private boolean inUse = false;
+        private boolean evicted = false;
+        //statement handle that uses the statement
+        private volatile Object owner = null;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+    }
+
+}
@@ -1,14 +1,18 @@
 package libs.libCore.modules;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Context used to share objects between steps of a scenario
+ * It is safe to use it from multiple threads, reads are lock-free
+ */
 public class Context {
 
     private final Map<String, Map<Class<?>, Object>> internalMap;
 
     public Context() {
-        internalMap = new HashMap<>();
+        internalMap = new ConcurrentHashMap<>();
     }
 
     /**
@@ -20,7 +24,12 @@ public class Context {
      */
     public <T> void put(String textKey, Class<T> typeKey, T value) {
         Map<Class<?>, Object> mapForTextKey = getMapForTextKey(textKey);
-        mapForTextKey.put(typeKey, value);
+        //concurrent map does not accept null values, missing value is returned as null anyway
+        if ( value == null ) {
+            mapForTextKey.remove(typeKey);
+        } else {
+            mapForTextKey.put(typeKey, value);
+        }
         Log.debug("Ctx object " + textKey + " of type " + typeKey.toString() + " created or modified");
     }
 
@@ -35,9 +44,7 @@ public class Context {
      * @return HashMap
      */
     private Map<Class<?>, Object> getMapForTextKey(String textKey) {
-        if (!internalMap.containsKey(textKey))
-            internalMap.put(textKey, new HashMap<>());
-        return internalMap.get(textKey);
+        return internalMap.computeIfAbsent(textKey, k -> new ConcurrentHashMap<>());
     }
 
     /**
@@ -67,8 +74,9 @@ public class Context {
      * @return HashMap
      */
     private Object getUntyped(String textKey, Class<?> typeKey) {
-        if (internalMap.containsKey(textKey)) {
-            return internalMap.get(textKey).get(typeKey);
+        Map<Class<?>, Object> mapForTextKey = internalMap.get(textKey);
+        if (mapForTextKey != null) {
+            return mapForTextKey.get(typeKey);
         } else {
             Log.warn("Ctx obj with key " + textKey + " does not exists or null!");
             return null;
@@ -16,11 +16,21 @@ import org.junit.runner.Description;
 import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.ParentRunner;
 import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerScheduler;
+import ru.yandex.qatools.allure.Allure;
+import ru.yandex.qatools.allure.events.MakeAttachmentEvent;
+import ru.yandex.qatools.allure.events.TestCaseFinishedEvent;
+import ru.yandex.qatools.allure.events.TestCaseStartedEvent;
+import ru.yandex.qatools.allure.events.TestSuiteFinishedEvent;
+import ru.yandex.qatools.allure.events.TestSuiteStartedEvent;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created to override runChild method. In this way we can inject our own junit listener.
@@ -28,24 +38,95 @@ import java.util.List;
  * Otherwise exceptions will not be printed to the log.
  * Junit runner is used when test are triggered via maven surefire plugin
  *
+ * Features can be executed in parallel when cmd argument -Dthreads=N is provided (N > 1).
+ * In such case N workers are created. Each worker has its own cucumber Runtime (so its own
+ * pico container, SharedContext and modules created in HooksScenario), its own reporter
+ * and its own thread. Features are assigned to the workers up front so that each worker
+ * gets a similar number of scenarios. Results of all workers are counted by RunSummary and
+ * one summary of the whole run is printed at the end.
+ *
+ * Scenarios can be split between multiple runs (for example on different build agents) when cmd argument
+ * -Dshard=i/n is provided. Please see ShardSelector for details. Duration of each scenario is recorded
+ * and used by the next sharded run once durations of all shards are merged.
+ *
+ * Sql query metrics of the whole suite are attached to the report when all workers are done.
+ *
  */
 public class CucumberWithLogger extends ParentRunner<FeatureRunner> {
-    private final JUnitReporter jUnitReporter;
-    private final List<FeatureRunner> children = new ArrayList();
-    private final Runtime runtime;
+    private final List<FeatureRunner> children = new ArrayList<>();
+    private final List<Worker> workers = new ArrayList<>();
+    private final Map<FeatureRunner, Worker> assignments = new HashMap<>();
+    private final Map<FeatureRunner, CucumberFeature> features = new LinkedHashMap<>();
+    private ShardSelector shardSelector;
 
     public CucumberWithLogger(Class clazz) throws InitializationError, IOException {
         super(clazz);
         ClassLoader classLoader = clazz.getClassLoader();
         Assertions.assertNoCucumberAnnotatedMethods(clazz);
         RuntimeOptionsFactory runtimeOptionsFactory = new RuntimeOptionsFactory(clazz);
-        RuntimeOptions runtimeOptions = runtimeOptionsFactory.create();
         ResourceLoader resourceLoader = new MultiLoader(classLoader);
-        this.runtime = this.createRuntime(resourceLoader, classLoader, runtimeOptions);
-        JUnitOptions junitOptions = new JUnitOptions(runtimeOptions.getJunitOptions());
-        List<CucumberFeature> cucumberFeatures = runtimeOptions.cucumberFeatures(resourceLoader);
-        this.jUnitReporter = new JUnitReporter(runtimeOptions.reporter(classLoader), runtimeOptions.formatter(classLoader), runtimeOptions.isStrict(), junitOptions);
+
+        //each worker needs its own runtime options because plugins (like allure reporter) keep state
+        int threads = getThreadCount();
+        for (int i = 0; i < threads; i++) {
+            RuntimeOptions runtimeOptions = runtimeOptionsFactory.create();
+            Runtime runtime = this.createRuntime(resourceLoader, classLoader, runtimeOptions);
+            JUnitOptions junitOptions = new JUnitOptions(runtimeOptions.getJunitOptions());
+            //in parallel mode results of each worker are counted so one summary of the whole run can be printed
+            RunSummary summary = null;
+            JUnitReporter jUnitReporter;
+            if ( threads > 1 ) {
+                summary = new RunSummary(runtimeOptions.reporter(classLoader), runtimeOptions.formatter(classLoader));
+                jUnitReporter = new JUnitReporter(summary, summary, runtimeOptions.isStrict(), junitOptions);
+            } else {
+                jUnitReporter = new JUnitReporter(runtimeOptions.reporter(classLoader), runtimeOptions.formatter(classLoader), runtimeOptions.isStrict(), junitOptions);
+            }
+            this.workers.add(new Worker(runtimeOptions, runtime, jUnitReporter, summary));
+        }
+
+        List<CucumberFeature> cucumberFeatures = this.workers.get(0).runtimeOptions.cucumberFeatures(resourceLoader);
+        //index feature files once so scenarios do not have to scan features directory
+        try {
+            FeatureIndex.build(cucumberFeatures);
+        } catch (IllegalArgumentException e) {
+            throw new InitializationError(e.getMessage() + " Feature names have to be unique!");
+        }
+        try {
+            shardSelector = ShardSelector.fromSystemProperties();
+        } catch (IllegalArgumentException e) {
+            throw new InitializationError(e.getMessage());
+        }
+        if ( shardSelector != null ) {
+            cucumberFeatures = shardSelector.select(cucumberFeatures);
+        }
         this.addChildren(cucumberFeatures);
+
+        if ( threads > 1 ) {
+            this.setScheduler(new WorkerScheduler());
+        }
+    }
+
+    /**
+     * Returns number of workers used to run features as provided by cmd argument -Dthreads
+     * If argument is not provided or it is not a positive number features are executed sequentially
+     *
+     * @return int
+     */
+    public static int getThreadCount() {
+        String cmd_arg = System.getProperty("threads");
+        if ( cmd_arg == null ) {
+            return 1;
+        }
+        try {
+            int threads = Integer.parseInt(cmd_arg.trim());
+            if ( threads > 0 ) {
+                return threads;
+            }
+        } catch (NumberFormatException e) {
+            //fall back to sequential execution
+        }
+
+        return 1;
     }
 
     protected Runtime createRuntime(ResourceLoader resourceLoader, ClassLoader classLoader, RuntimeOptions runtimeOptions) throws InitializationError, IOException {
@@ -62,25 +143,162 @@ public class CucumberWithLogger extends ParentRunner<FeatureRunner> {
     }
 
     protected void runChild(FeatureRunner child, RunNotifier notifier) {
-        //register new junit listener to log exceptions
-        notifier.addListener(new JunitListenerWithLogger());
-        child.run(notifier);
+        Worker worker = this.assignments.get(child);
+        if ( worker.executor == null ) {
+            child.run(notifier);
+        } else {
+            worker.executor.execute(new Runnable() {
+                public void run() {
+                    child.run(notifier);
+                }
+            });
+        }
     }
 
     public void run(RunNotifier notifier) {
+        //register new junit listener to log exceptions
+        notifier.addListener(new JunitListenerWithLogger());
+        //register new junit listener to record scenario durations used by sharding
+        ShardSelector.DurationRecorder durationRecorder = new ShardSelector.DurationRecorder(this.features, shardSelector);
+        notifier.addListener(durationRecorder);
         super.run(notifier);
-        this.jUnitReporter.done();
-        this.jUnitReporter.close();
-        this.runtime.printSummary();
+        if ( this.workers.size() == 1 ) {
+            ExecutionContext.executionContextObject().endThread();
+        }
+        durationRecorder.save();
+        for (Worker worker : this.workers) {
+            worker.jUnitReporter.done();
+            worker.jUnitReporter.close();
+        }
+        if ( this.workers.size() == 1 ) {
+            this.workers.get(0).runtime.printSummary();
+        } else {
+            List<RunSummary> summaries = new ArrayList<>();
+            List<Runtime> runtimes = new ArrayList<>();
+            for (Worker worker : this.workers) {
+                summaries.add(worker.summary);
+                runtimes.add(worker.runtime);
+            }
+            RunSummary.print(summaries, runtimes, this.workers.get(0).runtimeOptions.isStrict(), System.out);
+        }
+        attachQueryMetrics();
+    }
+
+    /**
+     * helper function used to attach sql query metrics of the whole suite to the report
+     * Allure attaches files to test cases only, so metrics are reported as a separate suite with a single test case
+     */
+    private void attachQueryMetrics() {
+        QueryMetrics metrics = QueryMetrics.suite();
+        if ( metrics.getCount() == 0 ) {
+            return;
+        }
+        String suiteUid = UUID.randomUUID().toString();
+        Allure.LIFECYCLE.fire(new TestSuiteStartedEvent(suiteUid, "Sql metrics"));
+        Allure.LIFECYCLE.fire(new TestCaseStartedEvent(suiteUid, "Sql metrics of the suite"));
+        Allure.LIFECYCLE.fire(new MakeAttachmentEvent(metrics.toString().getBytes(StandardCharsets.UTF_8), "Sql metrics", "text/plain"));
+        Allure.LIFECYCLE.fire(new TestCaseFinishedEvent());
+        Allure.LIFECYCLE.fire(new TestSuiteFinishedEvent(suiteUid));
     }
 
+    /**
+     * helper function used to create feature runners
+     * Each feature is bound to the worker with the lowest number of scenarios assigned so far.
+     * Features with more scenarios are assigned first to keep workers balanced.
+     *
+     * @param cucumberFeatures List<CucumberFeature>, features to run
+     */
     private void addChildren(List<CucumberFeature> cucumberFeatures) throws InitializationError {
-        Iterator var2 = cucumberFeatures.iterator();
+        List<CucumberFeature> sorted = new ArrayList<>(cucumberFeatures);
+        Collections.sort(sorted, new Comparator<CucumberFeature>() {
+            public int compare(CucumberFeature a, CucumberFeature b) {
+                return b.getFeatureElements().size() - a.getFeatureElements().size();
+            }
+        });
 
-        while(var2.hasNext()) {
-            CucumberFeature cucumberFeature = (CucumberFeature)var2.next();
-            this.children.add(new FeatureRunner(cucumberFeature, this.runtime, this.jUnitReporter));
+        Map<CucumberFeature, Worker> featureToWorker = new HashMap<>();
+        for (CucumberFeature cucumberFeature : sorted) {
+            Worker worker = this.workers.get(0);
+            for (Worker candidate : this.workers) {
+                if ( candidate.load < worker.load ) {
+                    worker = candidate;
+                }
+            }
+            worker.load = worker.load + Math.max(1, cucumberFeature.getFeatureElements().size());
+            featureToWorker.put(cucumberFeature, worker);
         }
 
+        //keep original order of features in the description tree
+        for (CucumberFeature cucumberFeature : cucumberFeatures) {
+            Worker worker = featureToWorker.get(cucumberFeature);
+            FeatureRunner featureRunner = new FeatureRunner(cucumberFeature, worker.runtime, worker.jUnitReporter);
+            this.children.add(featureRunner);
+            this.assignments.put(featureRunner, worker);
+            this.features.put(featureRunner, cucumberFeature);
+        }
+    }
+
+
+    /**
+     * Holds runtime and reporter used by a single thread
+     * In parallel mode it holds results of the worker too
+     */
+    private static class Worker {
+        private final RuntimeOptions runtimeOptions;
+        private final Runtime runtime;
+        private final JUnitReporter jUnitReporter;
+        private final RunSummary summary;
+        private ExecutorService executor;
+        private int load = 0;
+
+        Worker(RuntimeOptions runtimeOptions, Runtime runtime, JUnitReporter jUnitReporter, RunSummary summary) {
+            this.runtimeOptions = runtimeOptions;
+            this.runtime = runtime;
+            this.jUnitReporter = jUnitReporter;
+            this.summary = summary;
+        }
+    }
+
+
+    /**
+     * Junit scheduler used in parallel mode
+     * runChild hands over each feature to the thread of its worker so here we only have
+     * to start worker threads and wait until all of them are done
+     */
+    private class WorkerScheduler implements RunnerScheduler {
+
+        WorkerScheduler() {
+            for (final Worker worker : workers) {
+                worker.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        return new Thread(r, "SAF-worker-" + workers.indexOf(worker));
+                    }
+                });
+            }
+        }
+
+        public void schedule(Runnable childStatement) {
+            childStatement.run();
+        }
+
+        public void finished() {
+            for (Worker worker : workers) {
+                //drop feature and thread scope of execution context after the last feature of the worker
+                worker.executor.execute(new Runnable() {
+                    public void run() {
+                        ExecutionContext.executionContextObject().endThread();
+                    }
+                });
+                worker.executor.shutdown();
+            }
+            for (Worker worker : workers) {
+                try {
+                    worker.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
     }
 }
@@ -8,9 +8,20 @@ import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DBConnector {
 
+    //drivers loaded so far, key is the path to the driver jar
+    private static final Map<String, Driver> drivers = new ConcurrentHashMap<>();
+
+    private static final int DEFAULT_POOL_MAX_SIZE = 5;
+    private static final int DEFAULT_POOL_IDLE_TIMEOUT = 300;
+    private static final int DEFAULT_POOL_VALIDATION_TIMEOUT = 5;
+    private static final int DEFAULT_POOL_BORROW_TIMEOUT = 60;
+    private static final int DEFAULT_POOL_STATEMENT_CACHE_SIZE = 50;
+
     private SharedContext ctx;
     private Storage Storage;
     private FileCore FileCore;
@@ -29,63 +40,115 @@ public class DBConnector {
      * Used driver is chosen based on the path defined in Environment.Active.JdbcDrivers.TYPE.path
      * Type can be one of Oracle, Mssql
      *
+     * Connections are taken from a pool shared by all scenarios, one pool is created per url.
+     * Pool can be configured via Environment.Active.Jdbc.pool, see getPool.
+     * Close of the connection gives it back to the pool.
+     *
      * @return Connection
      */
     public Connection create() {
         Connection connection = null;
         String JDBC_CONNECTION_URL = Storage.get("Environment.Active.Jdbc.url");
-        if ( JDBC_CONNECTION_URL.contains("jdbc:oracle") ) {
-            try {
-                Log.debug("Try to load oracle driver");
-                String pathToDriver = Storage.get("Environment.Active.JdbcDrivers.Oracle.path");
-                URL u = new URL("jar:file:" + FileCore.getProjectPath() + File.separator + pathToDriver + "!/");
-                String classname = "oracle.jdbc.driver.OracleDriver";
-                URLClassLoader ucl = new URLClassLoader(new URL[]{u});
-                Driver d = (Driver) Class.forName(classname, true, ucl).newInstance();
-                DriverManager.registerDriver(new DriverShim(d));
-                connection = DriverManager.getConnection(JDBC_CONNECTION_URL);
-                Log.debug("Connection to " + JDBC_CONNECTION_URL + " is open");
-            } catch (ClassNotFoundException e) {
-                Log.error("", e);
-            } catch (SQLException e) {
-                Log.error("", e);
-            } catch (IllegalAccessException e) {
-                Log.error("", e);
-            } catch (InstantiationException e) {
-                Log.error("", e);
-            } catch (MalformedURLException e) {
-                Log.error("", e);
-            }
-        } else if ( JDBC_CONNECTION_URL.contains("jdbc:sqlserver") ) {
-            try {
-                Log.debug("Try to load MsSql driver");
-                String pathToDriver = Storage.get("Environment.Active.JdbcDrivers.Mssql.path");
-                URL u = new URL("jar:file:" + FileCore.getProjectPath() + File.separator + pathToDriver + "!/");
-                String classname = "com.microsoft.sqlserver.jdbc.SQLServerDriver";
-                URLClassLoader ucl = new URLClassLoader(new URL[]{u});
-                Driver d = (Driver) Class.forName(classname, true, ucl).newInstance();
-                DriverManager.registerDriver(new DriverShim(d));
-                connection = DriverManager.getConnection(JDBC_CONNECTION_URL);
-                Log.debug("Connection to " + JDBC_CONNECTION_URL + " is open");
-
-            } catch (ClassNotFoundException e) {
-                Log.error("", e);
-            } catch (SQLException e) {
-                Log.error("", e);
-            } catch (IllegalAccessException e) {
-                Log.error("", e);
-            } catch (InstantiationException e) {
-                Log.error("", e);
-            } catch (MalformedURLException e) {
-                Log.error("", e);
-            }
+        try {
+            connection = getPool(JDBC_CONNECTION_URL).getConnection();
+            Log.debug("Connection to " + JDBC_CONNECTION_URL + " is open");
+        } catch (SQLException e) {
+            Log.error("", e);
+        }
+
+        return connection;
+    }
+
+
+    /**
+     * Returns pool of connections for particular url, pool is created if it does not exist yet
+     * Following settings from Environment.Active.Jdbc.pool are used
+     * maxSize - max number of connections open at the same time, default 5
+     * idleTimeout - time in seconds after which not used connection is closed, default 300
+     * validationTimeout - time in seconds to wait for connection validation, default 5
+     * borrowTimeout - time in seconds to wait for a connection when all of them are in use, default 60
+     * statementCacheSize - max number of prepared statements cached per connection, default 50, 0 disables the cache
+     *
+     * @param url String, jdbc url
+     *
+     * @return ConnectionPool
+     */
+    public ConnectionPool getPool(String url) {
+        return ConnectionPool.getInstance(url, key -> new ConnectionPool(
+                key,
+                loadDriver(key),
+                getPoolSetting("maxSize", DEFAULT_POOL_MAX_SIZE),
+                getPoolSetting("idleTimeout", DEFAULT_POOL_IDLE_TIMEOUT),
+                getPoolSetting("validationTimeout", DEFAULT_POOL_VALIDATION_TIMEOUT),
+                getPoolSetting("borrowTimeout", DEFAULT_POOL_BORROW_TIMEOUT),
+                getPoolSetting("statementCacheSize", DEFAULT_POOL_STATEMENT_CACHE_SIZE)));
+    }
+
+    private int getPoolSetting(String name, int defaultValue) {
+        Integer value = Storage.get("Environment.Active.Jdbc.pool." + name);
+        if ( value == null ) {
+            return defaultValue;
+        }
+        return value;
+    }
+
+
+    /**
+     * helper function used to load jdbc driver
+     * Driver is loaded only once per driver path so class loader is reused
+     * and only one DriverShim is registered in the DriverManager
+     *
+     * @param url String, jdbc url
+     *
+     * @return Driver
+     */
+    private Driver loadDriver(String url) {
+        String type = null;
+        String classname = null;
+        if ( url.contains("jdbc:oracle") ) {
+            type = "Oracle";
+            classname = "oracle.jdbc.driver.OracleDriver";
+        } else if ( url.contains("jdbc:sqlserver") ) {
+            type = "Mssql";
+            classname = "com.microsoft.sqlserver.jdbc.SQLServerDriver";
         } else {
             Log.error( "Can't read driver type or wrong name provided." +
-                            "Supported drivers types are: jdbc:oracle" );
+                            "Supported drivers types are: jdbc:oracle, jdbc:sqlserver" );
         }
 
-        return connection;
+        String pathToDriver = Storage.get("Environment.Active.JdbcDrivers." + type + ".path");
+        String key = classname + "@" + pathToDriver;
+        Driver driver = drivers.get(key);
+        if ( driver != null ) {
+            return driver;
+        }
+
+        synchronized (drivers) {
+            driver = drivers.get(key);
+            if ( driver == null ) {
+                try {
+                    Log.debug("Try to load " + type + " driver");
+                    URL u = new URL("jar:file:" + FileCore.getProjectPath() + File.separator + pathToDriver + "!/");
+                    URLClassLoader ucl = new URLClassLoader(new URL[]{u});
+                    Driver d = (Driver) Class.forName(classname, true, ucl).newInstance();
+                    driver = new DriverShim(d);
+                    DriverManager.registerDriver(driver);
+                    drivers.put(key, driver);
+                } catch (ClassNotFoundException e) {
+                    Log.error("", e);
+                } catch (SQLException e) {
+                    Log.error("", e);
+                } catch (IllegalAccessException e) {
+                    Log.error("", e);
+                } catch (InstantiationException e) {
+                    Log.error("", e);
+                } catch (MalformedURLException e) {
+                    Log.error("", e);
+                }
+            }
+        }
 
+        return driver;
     }
 
 }
@@ -116,6 +116,7 @@ public class DriverFactory {
         //we have to put it here because if something goes not ok
         //during browser manipulation driver won't be closed
         ctx.Object.put("Page", EventFiringWebDriver.class, driver);
+        HooksGlobal.registerDriver(driver);
 
         Log.debug("Removing all cookies");
         driver.manage().deleteAllCookies();
@@ -1,57 +1,136 @@
 package libs.libCore.modules;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *
  *    shared context that implements singelton pattern
  *
+ *    Objects can be put in one of the scopes
+ *    SUITE - visible in all scenarios, this is the default one
+ *    FEATURE - visible in all scenarios of the current feature, dropped when next feature is started in the same thread
+ *              or when the thread finished all its features
+ *    SCENARIO - visible in current scenario only, dropped when scenario ends
+ *    THREAD - visible in all scenarios executed by the current thread (see -Dthreads), dropped when the thread
+ *             finished all its features
+ *
+ *    It is safe to use it from multiple threads, reads are lock-free
+ *
  */
 
 public class ExecutionContext {
 
-        private static volatile ExecutionContext instance = null;
-        private Map<String, Map<Class<?>, Object>> internalMap;
+    public enum Scope { SUITE, FEATURE, SCENARIO, THREAD }
 
-        private ExecutionContext() {
-            internalMap = new HashMap<>();
-        }
+    private static volatile ExecutionContext instance = null;
+
+    private final Map<String, Map<Class<?>, Object>> suiteMap = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Map<Class<?>, Object>>> featureMaps = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Map<Class<?>, Object>>> scenarioMaps = new ConcurrentHashMap<>();
+    private final ThreadLocal<Map<String, Map<Class<?>, Object>>> threadMap = ThreadLocal.withInitial(ConcurrentHashMap::new);
 
-        public static ExecutionContext executionContextObject() {
-            // Lazy and thread-safe
-            if (instance == null) {
-                synchronized(ExecutionContext.class) {
-                    if (instance == null) {
-                        instance = new ExecutionContext();
-                    }
+    //feature and scenario executed by the current thread
+    private final ThreadLocal<String> currentFeature = new ThreadLocal<>();
+    private final ThreadLocal<String> currentScenario = new ThreadLocal<>();
+
+    private ExecutionContext() {}
+
+    public static ExecutionContext executionContextObject() {
+        // Lazy and thread-safe
+        if (instance == null) {
+            synchronized(ExecutionContext.class) {
+                if (instance == null) {
+                    instance = new ExecutionContext();
                 }
             }
+        }
+
+        return instance;
+    }
+
+
+    /**
+     * Marks beginning of a scenario in the current thread
+     * Objects from FEATURE scope of previous feature are dropped if a new feature was started
+     *
+     * @param featureId String, id of the feature
+     * @param scenarioId String, id of the scenario
+     */
+    public void startScenario(String featureId, String scenarioId) {
+        String previousFeature = currentFeature.get();
+        if ( previousFeature != null && ! previousFeature.equals(featureId) ) {
+            featureMaps.remove(previousFeature);
+        }
+        currentFeature.set(featureId);
+        currentScenario.set(scenarioId);
+    }
+
 
-            return instance;
+    /**
+     * Marks end of a scenario in the current thread
+     * Objects from SCENARIO scope are dropped
+     */
+    public void endScenario() {
+        String scenarioId = currentScenario.get();
+        if ( scenarioId != null ) {
+            scenarioMaps.remove(scenarioId);
         }
+        currentScenario.remove();
+    }
+
+
+    /**
+     * Marks end of execution of all features in the current thread
+     * Objects from FEATURE scope of the last feature and from THREAD scope are dropped
+     */
+    public void endThread() {
+        endScenario();
+        String featureId = currentFeature.get();
+        if ( featureId != null ) {
+            featureMaps.remove(featureId);
+        }
+        currentFeature.remove();
+        threadMap.remove();
+    }
+
 
     /**
      * Puts an object into the context in a form of HashMap
+     * SUITE scope is used
      *
      * @param textKey String, object name
      * @param typeKey Class, object type
      * @param value Generic, object value
      */
     public <T> void put(String textKey, Class<T> typeKey, T value) {
-        Map<Class<?>, Object> mapForTextKey = getMapForTextKey(textKey);
-        mapForTextKey.put(typeKey, value);
-        Log.debug("Execution ctx object " + textKey + " of type " + typeKey.toString() + " created or modified");
+        put(Scope.SUITE, textKey, typeKey, value);
     }
 
-    private Map<Class<?>, Object> getMapForTextKey(String textKey) {
-        if (!internalMap.containsKey(textKey))
-            internalMap.put(textKey, new HashMap<>());
-        return internalMap.get(textKey);
+
+    /**
+     * Puts an object into the context in a form of HashMap
+     *
+     * @param scope Scope, scope of the object
+     * @param textKey String, object name
+     * @param typeKey Class, object type
+     * @param value Generic, object value
+     */
+    public <T> void put(Scope scope, String textKey, Class<T> typeKey, T value) {
+        Map<Class<?>, Object> mapForTextKey = getMap(scope).computeIfAbsent(textKey, k -> new ConcurrentHashMap<>());
+        //concurrent map does not accept null values, missing value is returned as null anyway
+        if ( value == null ) {
+            mapForTextKey.remove(typeKey);
+        } else {
+            mapForTextKey.put(typeKey, value);
+        }
+        Log.debug("Execution ctx object " + textKey + " of type " + typeKey.toString() + " created or modified in scope " + scope);
     }
 
+
     /**
      * Retrieves object of particular type and name unchecked cast is done
+     * SUITE scope is used
      *
      * @param textKey object name
      * @param typeKey object type
@@ -59,10 +138,25 @@ public class ExecutionContext {
      * @return object from context
      */
     public <T> T get(String textKey, Class<?> typeKey) {
-        if (internalMap.containsKey(textKey)) {
+        return get(Scope.SUITE, textKey, typeKey);
+    }
+
+
+    /**
+     * Retrieves object of particular type and name from particular scope unchecked cast is done
+     *
+     * @param scope Scope, scope of the object
+     * @param textKey object name
+     * @param typeKey object type
+     *
+     * @return object from context
+     */
+    public <T> T get(Scope scope, String textKey, Class<?> typeKey) {
+        Map<Class<?>, Object> mapForTextKey = getMap(scope).get(textKey);
+        if (mapForTextKey != null) {
             T result = null;
             try {
-                result = (T) internalMap.get(textKey).get(typeKey);
+                result = (T) mapForTextKey.get(typeKey);
             } catch (ClassCastException e) {
                 Log.error("", e);
             }
@@ -74,6 +168,34 @@ public class ExecutionContext {
     }
 
 
+    /**
+     * helper function used to get map of objects for particular scope
+     *
+     * @param scope Scope
+     *
+     * @return Map
+     */
+    private Map<String, Map<Class<?>, Object>> getMap(Scope scope) {
+        switch (scope) {
+            case FEATURE:
+                return getScopedMap(featureMaps, currentFeature.get(), scope);
+            case SCENARIO:
+                return getScopedMap(scenarioMaps, currentScenario.get(), scope);
+            case THREAD:
+                return threadMap.get();
+            default:
+                return suiteMap;
+        }
+    }
+
+    private Map<String, Map<Class<?>, Object>> getScopedMap(Map<String, Map<String, Map<Class<?>, Object>>> maps, String id, Scope scope) {
+        if ( id == null ) {
+            Log.error("Execution ctx scope " + scope + " can be used only during scenario execution");
+        }
+        return maps.computeIfAbsent(id, k -> new ConcurrentHashMap<>());
+    }
+
+
     /**
      * Sets type of particular object
      *
@@ -0,0 +1,82 @@
+package libs.libCore.modules;
+
+import cucumber.runtime.io.MultiLoader;
+import cucumber.runtime.model.CucumberFeature;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Index of feature files
+ * Maps feature id (as used in scenario id) to the path of the feature file.
+ *
+ * Index is built once per test suite execution from the features already parsed by cucumber (see CucumberWithLogger)
+ * or, when tests are not started via junit runner, by a single scan of the features directory.
+ * Duplicated feature names are detected while index is built.
+ */
+public class FeatureIndex {
+
+    private static volatile Map<String, String> index = null;
+
+    private FeatureIndex() {}
+
+
+    /**
+     * Builds index of features
+     *
+     * @param cucumberFeatures List<CucumberFeature>, features parsed by cucumber
+     * @throws IllegalArgumentException if two features have the same name
+     */
+    public static synchronized void build(List<CucumberFeature> cucumberFeatures) {
+        Map<String, String> result = new HashMap<>();
+        for (CucumberFeature cucumberFeature : cucumberFeatures) {
+            String id = cucumberFeature.getGherkinFeature().getId();
+            String path = cucumberFeature.getPath();
+            if ( result.containsKey(id) ) {
+                throw new IllegalArgumentException("Duplicated feature name " + cucumberFeature.getGherkinFeature().getName() +
+                        " detected in " + path + " and " + result.get(id));
+            }
+            result.put(id, path);
+        }
+        index = result;
+    }
+
+
+    /**
+     * Returns path to the feature file with particular id
+     * If index was not built yet features are read from the features directory
+     *
+     * @param featureId String, feature id as available in the scenario id
+     * @param featuresPath String, path to the features directory
+     *
+     * @return String, path to the feature file or null if not found
+     */
+    public static String getFeaturePath(String featureId, String featuresPath) {
+        if ( index == null ) {
+            synchronized (FeatureIndex.class) {
+                if ( index == null ) {
+                    Log.debug("Building index of feature files in " + featuresPath);
+                    List<CucumberFeature> cucumberFeatures = CucumberFeature.load(
+                            new MultiLoader(FeatureIndex.class.getClassLoader()),
+                            Collections.singletonList(featuresPath),
+                            new ArrayList<>());
+                    build(cucumberFeatures);
+                }
+            }
+        }
+
+        String path = index.get(featureId);
+        if ( path == null ) {
+            return null;
+        }
+
+        //paths are relative to the directory used to start the test or to the features directory
+        File file = new File(path);
+        if ( ! file.exists() ) {
+            file = new File(featuresPath + File.separator + path);
+        }
+
+        return file.getAbsolutePath();
+    }
+
+}
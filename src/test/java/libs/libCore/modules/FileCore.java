@@ -11,8 +11,6 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import static org.apache.commons.io.FileUtils.readFileToString;
@@ -20,6 +18,7 @@ import static org.apache.commons.io.FileUtils.readFileToString;
 public class FileCore {
 
     private SharedContext ctx;
+    private static volatile String projectPath = null;
 
     public FileCore (SharedContext ctx) {
         this.ctx = ctx;
@@ -28,19 +27,23 @@ public class FileCore {
 
     /**
      * Returns path to the project directory
+     * Path is calculated once and reused
      *
      * @return path String, path to project directory
      */
     public String getProjectPath() {
-        String path = null;
-        try {
-            String tmp = Paths.get(ClassLoader.getSystemResource("").toURI()).getParent().toString();
-            int idx = tmp.lastIndexOf(File.separator);
-            path = tmp.substring(0,idx);
-            path = path + File.separator +"src" + File.separator + "test" + File.separator + "java";
-            Log.debug("Project path is " + path);
-        } catch (URISyntaxException e) {
-            Log.error( "Project path not found!", e );
+        String path = projectPath;
+        if ( path == null ) {
+            try {
+                String tmp = Paths.get(ClassLoader.getSystemResource("").toURI()).getParent().toString();
+                int idx = tmp.lastIndexOf(File.separator);
+                path = tmp.substring(0,idx);
+                path = path + File.separator +"src" + File.separator + "test" + File.separator + "java";
+                Log.debug("Project path is " + path);
+                projectPath = path;
+            } catch (URISyntaxException e) {
+                Log.error( "Project path not found!", e );
+            }
         }
 
         return path;
@@ -69,6 +72,9 @@ public class FileCore {
     /**
      * Returns paths to files that meets criteria like name or extension
      * Search is done in subdirectories as well
+     * Directories that belong to the project (like config, features or template directories) are walked
+     * only once, results of next searches are taken from the cache and refreshed when directory content changes.
+     * Paths found in the project directory are absolute, other ones are relative if sDir is relative
      *
      * @param sDir String, directory to search
      * @param criteria String, search criteria, for example file name or file extension
@@ -77,6 +83,9 @@ public class FileCore {
     public ArrayList<String> searchForFile(String sDir, String criteria){
         ArrayList<String> result = new ArrayList<>();
         try {
+            if ( isInProjectDir(sDir) ) {
+                return FileDiscovery.search(Paths.get(sDir), criteria);
+            }
             try (Stream<Path> stream = Files.find(Paths.get(sDir), 99,
                     (path, attr) -> String.valueOf(path).endsWith(criteria))) {
                 stream.map(String::valueOf)
@@ -92,9 +101,26 @@ public class FileCore {
         return result;
     }
 
+
+    /**
+     * helper function used by searchForFile to check if directory belongs to the project
+     *
+     * @param sDir String, path to the directory
+     * @return boolean
+     */
+    private boolean isInProjectDir(String sDir) {
+        String projectDir = getProjectPath();
+        if ( projectDir == null ) {
+            return false;
+        }
+        Path dir = Paths.get(sDir).toAbsolutePath().normalize();
+        return dir.startsWith(Paths.get(projectDir).toAbsolutePath().normalize());
+    }
+
     /**
      * Returns path to the currently executed feature file directory
-     * Detects duplicated feature file names. In this case test suite execution will be stopped immediately.
+     * Path is taken from the index of feature files which is built once per test suite execution.
+     * Duplicated feature names are detected when index is built.
      *
      * @return String, path to the feature file directory
      */
@@ -102,74 +128,18 @@ public class FileCore {
         Log.debug("Looking for a path to the current feature file");
 
         String path = "";
-
-        String sc = ctx.Object.get("ScenarioId", String.class);
         String fc = ctx.Object.get("FeatureId", String.class);
 
-        //with regexp
-        String scenarioName = sc.trim().replaceAll("\\s+","").toLowerCase();
-        String featureName = fc.replaceAll("-","").trim();
-        //Boolean isFound = false;
-        //to detect duplicates
-        HashMap<String, String> features = new HashMap<>();
-        ArrayList<String> fileList = searchForFile(getFeaturesPath(), ".feature");
-        for (String file : fileList) {
-            Boolean suspected = false;
-            String fileContent = readToString(new File(file)).trim()
-                    .replaceAll("\\p{Blank}","")
-                    .replaceAll("(?m)^#.*$","")
-                    .replaceAll("-","")
-                    .toLowerCase();
-
-            Pattern pattern = Pattern.compile("(?im)^feature:(.*?)$");
-            Matcher matcher = pattern.matcher(fileContent);
-            while (matcher.find())
-            {
-                String featureNameFromFile = matcher.group(1);
-                //duplicate detection
-                if ( features.containsKey(featureNameFromFile) ){
-                    Log.warn("FATAL ERROR! Duplicated feature name " + featureNameFromFile +
-                            " detected in " + new File(file).getAbsolutePath() +
-                            " and " + features.get(featureNameFromFile) +
-                            " Aborting execution!");
-                    System.exit(1);
-                }
-                features.put(featureNameFromFile, new File(file).getAbsolutePath());
-
-                if ( featureNameFromFile.equals(featureName) ) {
-                    suspected = true;
-                }
-            }
-
-            if ( suspected ) {
-                pattern = Pattern.compile("(?im)^scenario:(.*?)$|(?im)^scenariooutline:(.*?)$|(?im)^background:(.*?)$");
-                matcher = pattern.matcher(fileContent);
-                while ( matcher.find() ){
-                    String scenarioNameFromFile = matcher.group(1);
-                    String scenarioOutlineNameFromFile = matcher.group(2);
-                    String backgroundNameFromFile = matcher.group(3);
-
-                    if ( scenarioName.equals(scenarioNameFromFile) ) {
-                        Log.debug("Feature file path is " + new File(file).getAbsolutePath());
-                        //isFound = true;
-                        path = FilenameUtils.getFullPathNoEndSeparator(new File(file).getAbsolutePath());
-                    }
-                    if ( scenarioName.equals(scenarioOutlineNameFromFile) ) {
-                        Log.debug("Feature file path is " + new File(file).getAbsolutePath());
-                        //isFound = true;
-                        path = FilenameUtils.getFullPathNoEndSeparator(new File(file).getAbsolutePath());
-                    }
-                    if ( scenarioName.equals(backgroundNameFromFile) ) {
-                        Log.debug("Feature file path is " + new File(file).getAbsolutePath());
-                        //isFound = true;
-                        path = FilenameUtils.getFullPathNoEndSeparator(new File(file).getAbsolutePath());
-                    }
-                }
-            }
+        String featurePath = null;
+        try {
+            featurePath = FeatureIndex.getFeaturePath(fc.trim(), getFeaturesPath());
+        } catch (IllegalArgumentException e) {
+            Log.error("FATAL ERROR! " + e.getMessage() + " Aborting execution!");
+        }
 
-            //if ( isFound ){
-            //    break;
-            //}
+        if ( featurePath != null ) {
+            Log.debug("Feature file path is " + featurePath);
+            path = FilenameUtils.getFullPathNoEndSeparator(featurePath);
         }
 
         if ( path.equals("") ){
@@ -0,0 +1,217 @@
+package libs.libCore.modules;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Cache of directory trees used by FileCore.searchForFile
+ *
+ * Each directory tree is walked once. Results of a search are kept per directory and search criteria
+ * so next searches are just hash lookups.
+ * Directories are watched via WatchService. When file or directory is created or removed all cached
+ * trees that contain it are dropped and walked again on the next search.
+ * Events are delivered asynchronously (some implementations poll the file system every few seconds),
+ * so when nothing is found modification time of each directory in the tree is checked before the empty
+ * result is returned and the tree is walked again if needed.
+ * If WatchService is not available modification time of each directory in the tree is always checked instead.
+ *
+ * Returned paths are absolute, also when relative directory is searched.
+ */
+class FileDiscovery {
+
+    private static final int MAX_DEPTH = 99;
+    //directories modified this close to the walk may be modified again without change of their modification time
+    private static final long MTIME_RESOLUTION = 2000;
+    private static final Map<Path, Tree> trees = new ConcurrentHashMap<>();
+    private static WatchService watchService = null;
+    private static boolean watchServiceChecked = false;
+
+    private FileDiscovery() {}
+
+
+    /**
+     * Returns paths that ends with criteria in particular directory and its subdirectories
+     *
+     * @param dir Path, directory to search
+     * @param criteria String, search criteria, for example file name or file extension
+     *
+     * @return ArrayList<String>, sorted absolute paths, a new list is returned for each call
+     *
+     * @throws IOException when directory can't be accessed
+     */
+    static ArrayList<String> search(Path dir, String criteria) throws IOException {
+        Path root = dir.toAbsolutePath().normalize();
+        processEvents();
+
+        Tree tree = getTree(root, false);
+        List<String> result = tree.search(criteria);
+        //watch events may not be delivered yet, file created just before the search has to be found anyway
+        if ( result.isEmpty() && tree.watched && tree.isModified() ) {
+            Log.debug("Content of " + root + " changed but no event was received yet. Going to walk it again");
+            result = getTree(root, true).search(criteria);
+        }
+
+        return new ArrayList<>(result);
+    }
+
+    private static Tree getTree(Path root, boolean reload) throws IOException {
+        Tree tree = trees.get(root);
+        if ( reload || tree == null || ! tree.isValid() ) {
+            synchronized (FileDiscovery.class) {
+                Tree current = trees.get(root);
+                if ( current == null || current == tree || ! current.isValid() ) {
+                    current = new Tree(root);
+                    trees.put(root, current);
+                }
+                tree = current;
+            }
+        }
+        return tree;
+    }
+
+
+    /**
+     * helper function used to get the watch service
+     * returns null if file system does not support it
+     *
+     * @return WatchService
+     */
+    private static synchronized WatchService getWatchService() {
+        if ( ! watchServiceChecked ) {
+            watchServiceChecked = true;
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+            } catch (IOException | UnsupportedOperationException e) {
+                Log.debug("WatchService not available. Modification time of directories will be checked instead");
+            }
+        }
+        return watchService;
+    }
+
+
+    /**
+     * helper function used to drop cached trees that were modified since last search
+     */
+    private static void processEvents() {
+        WatchService service = getWatchService();
+        if ( service == null ) {
+            return;
+        }
+
+        WatchKey key;
+        while ( (key = service.poll()) != null ) {
+            Path dir = (Path) key.watchable();
+            Boolean overflow = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if ( event.kind() == OVERFLOW ) {
+                    overflow = true;
+                }
+            }
+            if ( ! key.reset() || overflow ) {
+                trees.clear();
+            }
+            for (Path root : new ArrayList<>(trees.keySet())) {
+                if ( dir.startsWith(root) ) {
+                    Log.debug("Content of " + dir + " changed. Cached search results for " + root + " dropped");
+                    trees.remove(root);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Directory tree listing with cached search results
+     */
+    private static class Tree {
+
+        private final List<String> paths = new ArrayList<>();
+        private final Map<Path, Long> dirs = new HashMap<>();
+        private final Map<String, List<String>> results = new ConcurrentHashMap<>();
+        private final boolean watched;
+        private final long walked = System.currentTimeMillis();
+
+        Tree(Path root) throws IOException {
+            final WatchService service = getWatchService();
+            Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), MAX_DEPTH, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    paths.add(String.valueOf(dir));
+                    dirs.put(dir, attrs.lastModifiedTime().toMillis());
+                    if ( service != null ) {
+                        dir.register(service, ENTRY_CREATE, ENTRY_DELETE);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    paths.add(String.valueOf(file));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                    if ( file.equals(root) ) {
+                        throw e;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            watched = service != null;
+        }
+
+        /**
+         * Checks if tree can be used, watched tree is valid until an event drops it
+         *
+         * @return boolean
+         */
+        boolean isValid() {
+            return watched || ! isModified();
+        }
+
+        /**
+         * Checks modification time of directories in the tree
+         * Directory modified right before the walk is treated as modified because next modification
+         * in the same time unit of the file system is not visible
+         *
+         * @return boolean, true if any directory could be modified after the walk
+         */
+        boolean isModified() {
+            for (Map.Entry<Path, Long> entry : dirs.entrySet()) {
+                try {
+                    long modified = Files.getLastModifiedTime(entry.getKey()).toMillis();
+                    if ( modified != entry.getValue() || modified >= walked - MTIME_RESOLUTION ) {
+                        return true;
+                    }
+                } catch (IOException e) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        List<String> search(String criteria) {
+            List<String> result = results.get(criteria);
+            if ( result == null ) {
+                result = new ArrayList<>();
+                for (String path : paths) {
+                    if ( path.endsWith(criteria) ) {
+                        result.add(path);
+                    }
+                }
+                Collections.sort(result, String.CASE_INSENSITIVE_ORDER);
+                results.put(criteria, Collections.unmodifiableList(result));
+            }
+            return result;
+        }
+    }
+
+}
@@ -5,24 +5,50 @@ import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.io.IoBuilder;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.support.events.EventFiringWebDriver;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.*;
 
 public class HooksGlobal {
 
-    private SharedContext ctx;
+    private static boolean dunit = false;
+
+    //web drivers of all workers that are still open, they are closed when all features are executed
+    private static final Set<EventFiringWebDriver> drivers = Collections.synchronizedSet(
+            Collections.newSetFromMap(new IdentityHashMap<EventFiringWebDriver, Boolean>()));
+
 
-    // PicoContainer injects class SharedContext
-    public HooksGlobal(SharedContext ctx) {
-        this.ctx = ctx;
+    /**
+     * Registers web driver so it is closed after execution of all features
+     * in case it is not closed at the end of the scenario
+     *
+     * @param driver EventFiringWebDriver, driver to register
+     */
+    public static void registerDriver(EventFiringWebDriver driver) {
+        drivers.add(driver);
     }
 
-    private static boolean dunit = false;
+    /**
+     * Removes web driver from the list of drivers closed after execution of all features
+     *
+     * @param driver EventFiringWebDriver, driver that was already closed
+     */
+    public static void unregisterDriver(EventFiringWebDriver driver) {
+        drivers.remove(driver);
+    }
 
     @Before(order=10)
     public void beforeAll() {
+        //features can be executed in parallel so make sure that only one thread does the beforeAll stuff
+        synchronized (HooksGlobal.class) {
+            beforeAllOnce();
+        }
+    }
+
+    private void beforeAllOnce() {
         if( ! dunit ) {
 
             //afterAll hook
@@ -31,19 +57,33 @@ public class HooksGlobal {
 
                     // do the afterAll stuff...
                     Log.info("*** All features executed");
-                    Storage Storage = ctx.Object.get("Storage", Storage.class);
-                    Boolean closeWebDriver = Storage.get("Environment.Active.WebDrivers.CloseBrowserAfterScenario");
-                    if ( ! closeWebDriver ) {
-                        EventFiringWebDriver Page = ctx.Object.get("Page", EventFiringWebDriver.class);
-                        if ( Page != null ) {
-                            Log.debug("Driver cleanup started");
+                    //close web drivers of all workers that were not closed after scenario
+                    List<EventFiringWebDriver> open;
+                    synchronized (drivers) {
+                        open = new ArrayList<>(drivers);
+                        drivers.clear();
+                    }
+                    for (EventFiringWebDriver Page : open) {
+                        Log.debug("Driver cleanup started");
+                        try {
                             Page.close();
                             Page.quit();
-                            Log.debug("Driver cleanup done");
+                        } catch (WebDriverException e) {
+                            Log.warn("Driver cleanup failed " + e.getMessage());
                         }
+                        Log.debug("Driver cleanup done");
                     }
 
+                    //close pooled jdbc connections
+                    ConnectionPool.closeAll();
 
+                    //close pooled ssh connections
+                    SshPool.closeAll();
+
+                    //log histograms and slowest sql queries of the whole suite
+                    if ( QueryMetrics.suite().getCount() > 0 ) {
+                        Log.info(QueryMetrics.suite().toString());
+                    }
 
                     Log.info("Test Suite execution ENDED!");
                 }
@@ -9,11 +9,15 @@ import io.restassured.config.LogConfig;
 import org.apache.commons.lang.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
 import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
 import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.appender.OutputStreamAppender;
 import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.apache.logging.log4j.core.filter.AbstractFilter;
 import org.apache.logging.log4j.core.layout.PatternLayout;
 import org.openqa.selenium.logging.LogEntry;
 import org.openqa.selenium.support.events.EventFiringWebDriver;
@@ -22,7 +26,6 @@ import ru.yandex.qatools.allure.annotations.Attachment;
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Pattern;
 
 import static io.restassured.config.ConnectionConfig.connectionConfig;
 import static io.restassured.config.HttpClientConfig.httpClientConfig;
@@ -36,6 +39,7 @@ public class HooksScenario {
     private PageCore PageCore;
     private Storage Storage;
     private ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private Appender appender;
 
     // PicoContainer injects class SharedContext
     public HooksScenario(SharedContext ctx) {
@@ -59,7 +63,9 @@ public class HooksScenario {
         Log.info("***");
 
         //add appender to attach log for particular scenario to the report
-        addAppender(out,scenario.getName()+logging_start);
+        //logs are marked with the scenario so logs of other scenarios executed in parallel are not attached
+        ThreadContext.put(Log.SCENARIO, scenario.getName() + logging_start);
+        appender = addAppender(out,scenario.getName()+logging_start);
 
         //start scenario
         String[] tId = scenario.getId().split(";");
@@ -76,6 +82,7 @@ public class HooksScenario {
         ctx.Object = new Context();
         ctx.Object.put("FeatureId", String.class, tId[0]);
         ctx.Object.put("ScenarioId", String.class, scenario.getName());
+        ExecutionContext.executionContextObject().startScenario(tId[0], scenario.getId());
 
         FileCore fileCore = new FileCore(ctx);
         ctx.Object.put("FileCore", FileCore.class, fileCore);
@@ -119,27 +126,14 @@ public class HooksScenario {
         StepCore = ctx.Object.get("StepCore", StepCore.class);
         Storage = ctx.Object.get("Storage", Storage.class);
 
-        Log.info("<- reading default configuration ->");
+        Log.info("<- reading default and global configuration ->");
         String defaultConfigDir = FileCore.getProjectPath() + File.separator + "libs" + File.separator + "libCore" + File.separator + "config";
         Log.debug("Default configuration directory is " + defaultConfigDir);
-
-        ArrayList<String> defaultConfigFiles = FileCore.searchForFile(defaultConfigDir,".config");
-        if(defaultConfigFiles.size()!=0) {
-            for (String globalConfigFile : defaultConfigFiles) {
-                Config.create(globalConfigFile);
-            }
-        }
-
-        Log.info("<- reading global configuration ->");
         String globalConfigDir = FileCore.getGlobalConfigPath();
         Log.debug("Global configuration directory is " + globalConfigDir);
 
-        ArrayList<String> globalConfigFiles = FileCore.searchForFile(globalConfigDir,".config");
-        if(globalConfigFiles.size()!=0) {
-            for (String globalConfigFile : globalConfigFiles) {
-                Config.create(globalConfigFile);
-            }
-        }
+        //files are parsed only once, each scenario gets its own copy-on-write view
+        Config.createFromGlobalConfig(defaultConfigDir, globalConfigDir);
 
         //configuring logger for rest operations
         ToLoggerPrintStream loggerPrintStream = new ToLoggerPrintStream();
@@ -221,8 +215,7 @@ public class HooksScenario {
 
         Log.info("-- Following configuration Environment.Active is going to be used --");
         for (HashMap.Entry<String, Object> entry : finalEnvConfig.entrySet()) {
-            String[] tmp = entry.getValue().getClass().getName().split(Pattern.quote(".")); // Split on period.
-            String type = tmp[2];
+            String type = entry.getValue().getClass().getSimpleName();
             Log.info( "(" + type + ")" + entry.getKey() + " = " + entry.getValue() );
         }
         Log.info("-- end --");
@@ -356,35 +349,50 @@ public class HooksScenario {
             }
         }
 
-        Log.info("Started resources clean up");
-        // Close web driver connection
-        Boolean closeWebDriver = Storage.get("Environment.Active.WebDrivers.CloseBrowserAfterScenario");
-        if ( closeWebDriver ) {
-            if (Page != null) {
-                Log.debug("Driver cleanup started");
-                Page.close();
-                Page.quit();
-                Log.debug("Driver cleanup done");
+        //cleanup can fail (Log.error throws) so scenario scope and scenario log are handled in any case
+        try {
+            Log.info("Started resources clean up");
+            // Close web driver connection
+            Boolean closeWebDriver = Storage.get("Environment.Active.WebDrivers.CloseBrowserAfterScenario");
+            if ( closeWebDriver ) {
+                if (Page != null) {
+                    Log.debug("Driver cleanup started");
+                    Page.close();
+                    Page.quit();
+                    HooksGlobal.unregisterDriver(Page);
+                    Log.debug("Driver cleanup done");
+                }
             }
-        }
 
-        // Close DB connection
-        SqlCore SqlCore = ctx.Object.get("SqlCore", SqlCore.class);
-        SqlCore.close();
+            // Close DB connection
+            SqlCore SqlCore = ctx.Object.get("SqlCore", SqlCore.class);
+            SqlCore.close();
+
+            //attach histograms and slowest sql queries of the scenario, if any were executed
+            QueryMetrics queryMetrics = SqlCore.getMetrics();
+            if ( queryMetrics.getCount() > 0 ) {
+                StepCore.attachMessageToReport("Sql metrics", queryMetrics.toString());
+            }
 
-        //Close ssh connection
-        SshCore SshCore = ctx.Object.get("SshCore", SshCore.class);
-        SshCore.closeClient();
+            //Close ssh connection
+            SshCore SshCore = ctx.Object.get("SshCore", SshCore.class);
+            SshCore.closeClient();
 
-        //Close winRM connection
-        WinRMCore WinRMCore = ctx.Object.get("WinRMCore", WinRMCore.class);
-        WinRMCore.closeClient();
+            //Close winRM connection
+            WinRMCore WinRMCore = ctx.Object.get("WinRMCore", WinRMCore.class);
+            WinRMCore.closeClient();
 
-        Log.info("Finished resources clean up");
+            Log.info("Finished resources clean up");
+        } finally {
+            //drop objects stored in scenario scope of execution context
+            ExecutionContext.executionContextObject().endScenario();
 
-        //this is used to add per scenario log to the report
-        attachLogToReport(out);
-        out.reset();
+            //this is used to add per scenario log to the report
+            attachLogToReport(out);
+            removeAppender(appender);
+            ThreadContext.remove(Log.SCENARIO);
+            out.reset();
+        }
     }
 
     @Attachment(value="Log", type="text/plain")
@@ -396,11 +404,15 @@ public class HooksScenario {
     /**
      * helper function used to add per scenario log to the report
      * it adds additional appender
+     * When features are executed in parallel appender accepts only logs written in the context of the current scenario,
+     * by the scenario thread or by helper threads that run tasks wrapped by Log.inContext
      *
      * @param outputStream
      * @param outputStreamName
+     *
+     * @return Appender
      */
-    private static void addAppender(final OutputStream outputStream, final String outputStreamName) {
+    private static Appender addAppender(final OutputStream outputStream, final String outputStreamName) {
         LoggerContext context = LoggerContext.getContext(false);
         Configuration config = context.getConfiguration();
 
@@ -408,8 +420,14 @@ public class HooksScenario {
                 .withPattern("%d{yyyy-MM-dd HH:mm:ss.SSS} [%-5level] %msg%n")
                 .build();
 
+        Filter filter = null;
+        if ( CucumberWithLogger.getThreadCount() > 1 ) {
+            filter = new CurrentScenarioFilter();
+            filter.start();
+        }
+
         Appender appender = OutputStreamAppender
-                .createAppender(layout, null, outputStream, outputStreamName, false, true);
+                .createAppender(layout, filter, outputStream, outputStreamName, false, true);
 
         appender.start();
         config.addAppender(appender);
@@ -419,6 +437,48 @@ public class HooksScenario {
         }
 
         context.updateLoggers();
+
+        return appender;
+    }
+
+
+    /**
+     * helper function used to remove per scenario appender when scenario log was attached to the report
+     *
+     * @param appender
+     */
+    private static void removeAppender(final Appender appender) {
+        if ( appender == null ) {
+            return;
+        }
+        LoggerContext context = LoggerContext.getContext(false);
+        Configuration config = context.getConfiguration();
+
+        for (LoggerConfig loggerConfig : config.getLoggers().values()) {
+            loggerConfig.removeAppender(appender.getName());
+        }
+        config.getAppenders().remove(appender.getName());
+        appender.stop();
+
+        context.updateLoggers();
+    }
+
+
+    /**
+     * Log4j filter that accepts only events logged in the context of the scenario that created it
+     * helper class used by addAppender to keep scenario logs separated in parallel execution
+     */
+    private static class CurrentScenarioFilter extends AbstractFilter {
+
+        private final String scenario = ThreadContext.get(Log.SCENARIO);
+
+        @Override
+        public Result filter(LogEvent event) {
+            if ( scenario != null && scenario.equals(event.getContextData().getValue(Log.SCENARIO)) ) {
+                return Result.NEUTRAL;
+            }
+            return Result.DENY;
+        }
     }
 
 
@@ -9,10 +9,16 @@ import java.io.StringWriter;
 /**
  * Used to add log to file support.
  * We want to log all exceptions throw during cucumber execution via junit runner
+ * Stacktrace is kept per thread because features can be executed in parallel
  */
 public class JunitListenerWithLogger extends RunListener {
 
-    private static String stacktrace = "";
+    private static final ThreadLocal<String> stacktrace = new ThreadLocal<String>() {
+        @Override
+        protected String initialValue() {
+            return "";
+        }
+    };
 
     @Override
     public void testFailure(Failure failure) throws Exception {
@@ -20,15 +26,15 @@ public class JunitListenerWithLogger extends RunListener {
         Throwable e = failure.getException();
         StringWriter sw = new StringWriter();
         e.printStackTrace(new PrintWriter(sw));
-        stacktrace = sw.toString();
+        stacktrace.set(sw.toString());
         //it will be printed here multiple times so we print it in the scenario after hook
         //Log.warn(e.getMessage());
     }
 
     public static String getStacktrace(){
 
-        String tmp = stacktrace;
-        stacktrace = "";
+        String tmp = stacktrace.get();
+        stacktrace.set("");
 
         return tmp;
     }
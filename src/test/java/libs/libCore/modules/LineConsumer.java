@@ -0,0 +1,175 @@
+package libs.libCore.modules;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Consumer of lines printed by a command executed via ssh, see SshCore.execute
+ * Lines of stdout and stderr are pushed while command is running so they do not have to be kept in memory.
+ * Calls are never concurrent, lines of both streams are pushed one by one in the order in which they were read.
+ */
+public interface LineConsumer {
+
+    /**
+     * Called for each line
+     *
+     * @param line String, line without line separator
+     * @param stderr boolean, true if line was printed to stderr
+     *
+     * @return boolean, true to continue, false to stop the command, for example when expected line appeared
+     *
+     * @throws IOException when line can't be consumed
+     */
+    boolean accept(String line, boolean stderr) throws IOException;
+
+
+    /**
+     * Creates consumer that prints lines to the log file
+     *
+     * @return LineConsumer
+     */
+    static LineConsumer toLog() {
+        return (line, stderr) -> {
+            Log.debug(stderr ? "[stderr] " + line : line);
+            return true;
+        };
+    }
+
+
+    /**
+     * Creates consumer that writes lines to the writer, each line is followed by line separator
+     * Writer is not closed
+     *
+     * @param out Writer, output
+     *
+     * @return LineConsumer
+     */
+    static LineConsumer toWriter(Writer out) {
+        String n = System.lineSeparator();
+        return (line, stderr) -> {
+            out.write(line);
+            out.write(n);
+            return true;
+        };
+    }
+
+
+    /**
+     * Creates consumer that stops the command as soon as line that contains the text appears
+     *
+     * @param text String, expected text, like READY
+     *
+     * @return Until
+     */
+    static Until until(String text) {
+        return new Until(text);
+    }
+
+
+    /**
+     * Consumer that stops the command as soon as line that contains expected text appears
+     */
+    final class Until implements LineConsumer {
+
+        private final String text;
+        private volatile String line;
+
+        public Until(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public boolean accept(String line, boolean stderr) {
+            if ( this.line == null && line.contains(text) ) {
+                this.line = line;
+            }
+            return this.line == null;
+        }
+
+        /**
+         * @return boolean, true if expected text appeared
+         */
+        public boolean isMatched() {
+            return line != null;
+        }
+
+        /**
+         * @return String, line that contains expected text, null if it did not appear
+         */
+        public String getLine() {
+            return line;
+        }
+    }
+
+
+    /**
+     * Consumer that keeps only the last lines of stdout and stderr (ring buffer)
+     * Can be used to see partial output of a long running command without keeping all of it
+     */
+    final class Tail implements LineConsumer {
+
+        private final int size;
+        private final Deque<String> stdout = new ArrayDeque<>();
+        private final Deque<String> stderr = new ArrayDeque<>();
+        private long lines = 0;
+        private long dropped = 0;
+
+        /**
+         * @param size int, max number of lines kept per stream
+         */
+        public Tail(int size) {
+            this.size = Math.max(1, size);
+        }
+
+        @Override
+        public synchronized boolean accept(String line, boolean stderr) {
+            Deque<String> buffer = stderr ? this.stderr : this.stdout;
+            if ( buffer.size() == size ) {
+                buffer.pollFirst();
+                dropped++;
+            }
+            buffer.addLast(line);
+            lines++;
+            return true;
+        }
+
+        /**
+         * @return String, last lines of stdout, each line is followed by new line
+         */
+        public synchronized String getStdout() {
+            return join(stdout);
+        }
+
+        /**
+         * @return String, last lines of stderr, each line is followed by new line
+         */
+        public synchronized String getStderr() {
+            return join(stderr);
+        }
+
+        /**
+         * @return long, number of all lines consumed so far, including the ones that were dropped
+         */
+        public synchronized long getLines() {
+            return lines;
+        }
+
+        /**
+         * @return long, number of lines that were dropped because buffer of their stream was full
+         */
+        public synchronized long getDropped() {
+            return dropped;
+        }
+
+        private static String join(Deque<String> buffer) {
+            StringBuilder result = new StringBuilder();
+            for (String line : buffer) {
+                result.append(line).append('\n');
+            }
+            return result.toString();
+        }
+    }
+
+}
@@ -0,0 +1,334 @@
+package libs.libCore.modules;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * Streaming line filter used to filter big files, like logs
+ *
+ * File is read line by line and all keywords are searched in a single pass over each line
+ * (Aho-Corasick automaton), so the cost does not depend on the number of filters.
+ * Lines that pass the filter are written to the output as soon as they are read.
+ *
+ * Following kinds of filters are available
+ * positive - only lines that contain at least one of the keywords pass the filter
+ * negative - only lines that do not contain any of the keywords pass the filter
+ * block - only lines between begin and end keywords (keywords included) pass the filter
+ *
+ * Blocks are written filter by filter, so blocks of all filters but the first one are spooled to temporary files
+ * and copied to the output at the end. Memory usage does not depend on the size of the file.
+ */
+public class LineFilter {
+
+    private static final int POSITIVE = 0;
+    private static final int NEGATIVE = 1;
+    private static final int BLOCK = 2;
+
+    private final int kind;
+    private final int size;
+    private final Automaton automaton;
+
+    private LineFilter(int kind, int size, List<String> keywords) {
+        this.kind = kind;
+        this.size = size;
+        this.automaton = new Automaton(keywords);
+    }
+
+
+    /**
+     * Creates positive filter
+     *
+     * @param filters List<String>, keywords
+     *
+     * @return LineFilter
+     */
+    public static LineFilter positive(List<String> filters) {
+        return new LineFilter(POSITIVE, filters.size(), filters);
+    }
+
+    /**
+     * Creates negative filter
+     *
+     * @param filters List<String>, keywords
+     *
+     * @return LineFilter
+     */
+    public static LineFilter negative(List<String> filters) {
+        return new LineFilter(NEGATIVE, filters.size(), filters);
+    }
+
+    /**
+     * Creates block filter
+     * Blocks are written to the output filter by filter, in the order in which filters were defined
+     *
+     * @param filters List<Map<String, String>>, each map contains 'begin' and 'end' keywords
+     *
+     * @return LineFilter
+     */
+    public static LineFilter block(List<Map<String, String>> filters) {
+        //keyword of begin of block i is on position 2*i and keyword of its end on position 2*i+1
+        List<String> keywords = new ArrayList<>();
+        for (Map<String, String> filter : filters) {
+            keywords.add(filter.get("begin"));
+            keywords.add(filter.get("end"));
+        }
+        return new LineFilter(BLOCK, filters.size(), keywords);
+    }
+
+
+    /**
+     * Filters the file and returns the result
+     *
+     * @param input File, file to filter
+     *
+     * @return String, lines that passed the filter separated by line separator and trimmed
+     */
+    public String apply(File input) {
+        StringWriter output = new StringWriter();
+        apply(input, output);
+        return output.toString().trim();
+    }
+
+
+    /**
+     * Filters the file and writes the result to the output
+     *
+     * @param input File, file to filter
+     * @param output Writer, lines that passed the filter are written here separated by line separator
+     *
+     * @return long, number of lines that passed the filter
+     */
+    public long apply(File input, Writer output) {
+        Output out = new Output(output);
+        long lines = 0;
+
+        //in case of block filters output of the first filter is written directly, others are spooled
+        //to temporary files so blocks are written filter by filter
+        boolean[] isMatch = new boolean[size];
+        Output[] outputs = new Output[size];
+        File[] spools = new File[size];
+        boolean[] matched = new boolean[automaton.size()];
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(input), Charset.defaultCharset()), 64 * 1024)) {
+            for (int i = 0; i < size && kind == BLOCK; i++) {
+                if ( i == 0 ) {
+                    outputs[i] = out;
+                } else {
+                    spools[i] = File.createTempFile("block" + i + "_", ".filter");
+                    outputs[i] = new Output(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spools[i]), Charset.defaultCharset()), 64 * 1024));
+                }
+            }
+
+            String line;
+            while ( (line = reader.readLine()) != null ) {
+                if ( kind != BLOCK ) {
+                    if ( automaton.find(line, null) == (kind == POSITIVE) ) {
+                        out.write(line);
+                    }
+                    continue;
+                }
+
+                boolean found = automaton.find(line, matched);
+                for (int i = 0; i < size; i++) {
+                    if ( found && matched[2 * i + 1] ) {
+                        outputs[i].write(line);
+                        isMatch[i] = false;
+                    }
+                    if ( found && matched[2 * i] ) {
+                        isMatch[i] = true;
+                    }
+                    if ( isMatch[i] ) {
+                        outputs[i].write(line);
+                    }
+                }
+                if ( found ) {
+                    Arrays.fill(matched, false);
+                }
+            }
+
+            for (int i = 1; i < size && kind == BLOCK; i++) {
+                outputs[i].writer.close();
+                if ( outputs[i].lines > 0 ) {
+                    try (Reader spool = new InputStreamReader(new FileInputStream(spools[i]), Charset.defaultCharset())) {
+                        out.copy(spool);
+                    }
+                }
+                lines = lines + outputs[i].lines;
+            }
+        } catch (IOException e) {
+            Log.error( "", e );
+        } finally {
+            for (int i = 1; i < size; i++) {
+                if ( outputs[i] != null ) {
+                    try {
+                        outputs[i].writer.close();
+                    } catch (IOException e) {
+                        //already closed or not needed anymore
+                    }
+                }
+                if ( spools[i] != null ) {
+                    spools[i].delete();
+                }
+            }
+        }
+
+        return lines + out.lines;
+    }
+
+
+    /**
+     * helper class used to write lines separated by line separator
+     */
+    private static final class Output {
+
+        private final String n = System.lineSeparator();
+        private final Writer writer;
+        private boolean empty = true;
+        private long lines = 0;
+
+        Output(Writer writer) {
+            this.writer = writer;
+        }
+
+        void write(String line) throws IOException {
+            if ( ! empty ) {
+                writer.write(n);
+            }
+            writer.write(line);
+            empty = false;
+            lines++;
+        }
+
+        /**
+         * appends content of another output as it is, lines are not counted
+         */
+        void copy(Reader content) throws IOException {
+            if ( ! empty ) {
+                writer.write(n);
+            }
+            char[] chunk = new char[8192];
+            int read;
+            while ( (read = content.read(chunk)) != -1 ) {
+                writer.write(chunk, 0, read);
+            }
+            empty = false;
+        }
+    }
+
+
+    /**
+     * Aho-Corasick automaton used to find all keywords in a single pass over the line
+     */
+    private static final class Automaton {
+
+        private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+        private final List<Integer> fail = new ArrayList<>();
+        private final List<int[]> outputs = new ArrayList<>();
+        private final int keywords;
+
+        Automaton(List<String> keywords) {
+            this.keywords = keywords.size();
+            addNode();
+
+            List<List<Integer>> tmpOutputs = new ArrayList<>();
+            tmpOutputs.add(new ArrayList<>());
+            for (int k = 0; k < keywords.size(); k++) {
+                String keyword = keywords.get(k);
+                int node = 0;
+                for (int i = 0; i < keyword.length(); i++) {
+                    Integer next = transitions.get(node).get(keyword.charAt(i));
+                    if ( next == null ) {
+                        next = addNode();
+                        tmpOutputs.add(new ArrayList<>());
+                        transitions.get(node).put(keyword.charAt(i), next);
+                    }
+                    node = next;
+                }
+                tmpOutputs.get(node).add(k);
+            }
+
+            //breadth first traversal to calculate failure links and merge outputs
+            Deque<Integer> queue = new ArrayDeque<>();
+            for (Integer child : transitions.get(0).values()) {
+                fail.set(child, 0);
+                queue.add(child);
+            }
+            while ( ! queue.isEmpty() ) {
+                int node = queue.poll();
+                for (Map.Entry<Character, Integer> entry : transitions.get(node).entrySet()) {
+                    int child = entry.getValue();
+                    int state = fail.get(node);
+                    while ( state != 0 && ! transitions.get(state).containsKey(entry.getKey()) ) {
+                        state = fail.get(state);
+                    }
+                    Integer target = transitions.get(state).get(entry.getKey());
+                    fail.set(child, target != null && target != child ? target : 0);
+                    tmpOutputs.get(child).addAll(tmpOutputs.get(fail.get(child)));
+                    queue.add(child);
+                }
+            }
+
+            for (List<Integer> tmpOutput : tmpOutputs) {
+                int[] output = new int[tmpOutput.size()];
+                for (int i = 0; i < output.length; i++) {
+                    output[i] = tmpOutput.get(i);
+                }
+                outputs.add(output);
+            }
+        }
+
+        private int addNode() {
+            transitions.add(new HashMap<>());
+            fail.add(0);
+            return transitions.size() - 1;
+        }
+
+        int size() {
+            return keywords;
+        }
+
+        /**
+         * Finds keywords in the line
+         *
+         * @param line String, line to check
+         * @param matched boolean[], if not null flags of all keywords found in the line are set,
+         *                else search stops on first keyword found
+         *
+         * @return boolean, true if at least one keyword was found
+         */
+        boolean find(String line, boolean[] matched) {
+            boolean found = mark(outputs.get(0), matched);
+            if ( found && matched == null ) {
+                return true;
+            }
+            int node = 0;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                Integer next = transitions.get(node).get(c);
+                while ( next == null && node != 0 ) {
+                    node = fail.get(node);
+                    next = transitions.get(node).get(c);
+                }
+                node = next == null ? 0 : next;
+                if ( outputs.get(node).length > 0 ) {
+                    found = mark(outputs.get(node), matched) || found;
+                    if ( matched == null ) {
+                        return true;
+                    }
+                }
+            }
+            return found;
+        }
+
+        private boolean mark(int[] output, boolean[] matched) {
+            if ( matched != null ) {
+                for (int k : output) {
+                    matched[k] = true;
+                }
+            }
+            return output.length > 0;
+        }
+    }
+
+}
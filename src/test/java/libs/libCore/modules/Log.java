@@ -3,6 +3,7 @@ package libs.libCore.modules;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
 import org.apache.logging.log4j.core.Appender;
 import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.appender.ConsoleAppender;
@@ -13,6 +14,8 @@ import org.apache.logging.log4j.status.StatusLogger;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 import static org.junit.Assert.fail;
 
@@ -70,6 +73,59 @@ public class Log {
     //assign logger to global variable Log
     private static Logger Log = LogManager.getLogger("libs.libCore.modules");
 
+    //key of the thread context that identifies scenario which logs are attached to the report
+    public static final String SCENARIO = "scenario";
+
+
+    /**
+     * Wraps a task executed by a helper thread so it logs with the thread context of the current thread
+     * Thanks to that logs of helper threads are attached to the report of the scenario that started them
+     *
+     * @param task Callable, task to wrap
+     *
+     * @return Callable
+     */
+    public static <T> Callable<T> inContext(final Callable<T> task) {
+        final Map<String, String> context = ThreadContext.getImmutableContext();
+        return new Callable<T>() {
+            public T call() throws Exception {
+                Map<String, String> previous = ThreadContext.getImmutableContext();
+                ThreadContext.clearMap();
+                ThreadContext.putAll(context);
+                try {
+                    return task.call();
+                } finally {
+                    ThreadContext.clearMap();
+                    ThreadContext.putAll(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps a task executed by a helper thread so it logs with the thread context of the current thread
+     *
+     * @param task Runnable, task to wrap
+     *
+     * @return Runnable
+     */
+    public static Runnable inContext(final Runnable task) {
+        final Map<String, String> context = ThreadContext.getImmutableContext();
+        return new Runnable() {
+            public void run() {
+                Map<String, String> previous = ThreadContext.getImmutableContext();
+                ThreadContext.clearMap();
+                ThreadContext.putAll(context);
+                try {
+                    task.run();
+                } finally {
+                    ThreadContext.clearMap();
+                    ThreadContext.putAll(previous);
+                }
+            }
+        };
+    }
+
 
     /**
      * logs message with INFO severity
@@ -5,9 +5,17 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Macro {
 
+    private static final String PREFIX = "mcr.";
+    private static final List<String> AVAILABLE_TYPES = Arrays.asList("date", "timestamp");
+
+    //macro definitions compiled so far, key is the definition from Macro storage
+    private static final Map<Map<String, Object>, Definition> compiled = new ConcurrentHashMap<>();
+    private static volatile Set<String> availableZones = null;
+
     private SharedContext ctx;
 
     // PicoContainer injects class SharedContext
@@ -17,114 +25,89 @@ public class Macro {
 
 
     /**
-     * calculates macros
-     *
-     * helper function used to calculate macro values based on data defined in the Macro
-     * configuration storage
-     *
-     * It is used internally by eval method.
-     *
-     * @param macro Map, storage that contains macro definitions
+     * Compiled macro definition
+     * Definition is validated and formatter is created only once
      */
-    private HashMap mcr(Map<String, Object> macro){
-
-        HashMap<String,String> result = new HashMap<>();
-
-        // Get the current date and time
-        LocalDateTime currentTime = LocalDateTime.now();
-
-        //for each macro calculate new value and store it in a result map as string
-        for (HashMap.Entry<String, Object> entry : macro.entrySet())
-        {
-            //Log.debug("Found macro " + entry.getKey());
-
-            //set default values for particular macro
-            String calculatedValue = null;
-            String type = null;
-            String format = "MM/dd/yyyy HH:mm:ss S";
-            String suffix = "";
-            String prefix = "";
-            String sZoneId = ZoneId.systemDefault().getId();
-            Integer addDays = 0;
-            Integer addWeeks = 0;
-            Integer addMonths = 0;
-            Integer addYears = 0;
-            Integer addHours = 0;
-            Integer addMinutes = 0;
-            Integer addSeconds = 0;
-            Integer addNanos = 0;
+    private static final class Definition {
 
+        private String type = null;
+        private String format = "MM/dd/yyyy HH:mm:ss S";
+        private String suffix = "";
+        private String prefix = "";
+        private String sZoneId = ZoneId.systemDefault().getId();
+        private final Integer addDays;
+        private final Integer addWeeks;
+        private final Integer addMonths;
+        private final Integer addYears;
+        private final Integer addHours;
+        private final Integer addMinutes;
+        private final Integer addSeconds;
+        private final Integer addNanos;
+        private final ZoneId zoneId;
+        private final DateTimeFormatter formatter;
+
+        /**
+         * @param name String, name of the macro
+         * @param tMacro Map, macro definition
+         */
+        Definition(String name, Map<String, Object> tMacro) {
             //read user defined values for particular macro
-            if (entry.getValue().getClass().getName().contains("HashMap")) {
-                HashMap<String, Object> tMacro = (HashMap<String, Object>) entry.getValue();
-                if(tMacro.containsKey("type")){
-                    type = tMacro.get("type").toString();
-                    }else{
-                    Log.error("Macro type has to be provided for " + entry.getKey());
-                }
-                if(tMacro.containsKey("format")){
-                    format = tMacro.get("format").toString();
-                }
-                if(tMacro.containsKey("suffix")){
-                    suffix = tMacro.get("suffix").toString();
-                }
-                if(tMacro.containsKey("prefix")){
-                    prefix = tMacro.get("prefix").toString();
-                }
-                if(tMacro.containsKey("zoneId")){
-                    sZoneId = tMacro.get("zoneId").toString();
-                }
-                if(tMacro.containsKey("addYears")){
-                    addYears = Integer.parseInt(tMacro.get("addYears").toString());
-                }
-                if(tMacro.containsKey("addMonths")){
-                    addMonths = Integer.parseInt(tMacro.get("addMonths").toString());
-                }
-                if(tMacro.containsKey("addWeeks")){
-                    addWeeks = Integer.parseInt(tMacro.get("addWeeks").toString());
-                }
-                if(tMacro.containsKey("addDays")){
-                    addDays = Integer.parseInt(tMacro.get("addDays").toString());
-                }
-                if(tMacro.containsKey("addHours")){
-                    addHours = Integer.parseInt(tMacro.get("addHours").toString());
-                }
-                if(tMacro.containsKey("addMinutes")){
-                    addMinutes = Integer.parseInt(tMacro.get("addMinutes").toString());
-                }
-                if(tMacro.containsKey("addSeconds")){
-                    addSeconds = Integer.parseInt(tMacro.get("addSeconds").toString());
-                }
-                if(tMacro.containsKey("addNanos")){
-                    addNanos = Integer.parseInt(tMacro.get("addNanos").toString());
-                }
+            if ( tMacro.containsKey("type") ) {
+                type = tMacro.get("type").toString();
+            } else {
+                Log.error("Macro type has to be provided for " + name);
+            }
+            if ( tMacro.containsKey("format") ) {
+                format = tMacro.get("format").toString();
+            }
+            if ( tMacro.containsKey("suffix") ) {
+                suffix = tMacro.get("suffix").toString();
+            }
+            if ( tMacro.containsKey("prefix") ) {
+                prefix = tMacro.get("prefix").toString();
             }
+            if ( tMacro.containsKey("zoneId") ) {
+                sZoneId = tMacro.get("zoneId").toString();
+            }
+            addYears = getInt(tMacro, "addYears");
+            addMonths = getInt(tMacro, "addMonths");
+            addWeeks = getInt(tMacro, "addWeeks");
+            addDays = getInt(tMacro, "addDays");
+            addHours = getInt(tMacro, "addHours");
+            addMinutes = getInt(tMacro, "addMinutes");
+            addSeconds = getInt(tMacro, "addSeconds");
+            addNanos = getInt(tMacro, "addNanos");
 
             //check if values are correct
-            ArrayList<String> availableTypes = new ArrayList<>();
-            availableTypes.add("date");
-            availableTypes.add("timestamp");
-
-            if(!availableTypes.contains(type)){
-                Log.warn("Available macro types are as follows:");
-                for(String item : availableTypes){
-                    Log.debug(item);
-                }
-                Log.error("Wrong type defined for macro " + entry.getKey());
+            if ( ! AVAILABLE_TYPES.contains(type) ) {
+                Log.warn("Available macro types are " + AVAILABLE_TYPES);
+                Log.error("Wrong type defined for macro " + name);
             }
 
-            Set<String> availableZones = ZoneId.getAvailableZoneIds();
-            if(!availableZones.contains(sZoneId)) {
-                Log.warn("Available macro zoneIds are as follows:");
-                for (String s : availableZones) {
-                    Log.info(s);
-                }
-                Log.error("Wrong zoneId defined for macro " + entry.getKey());
+            if ( ! getAvailableZones().contains(sZoneId) ) {
+                Log.debug("Available macro zoneIds are " + getAvailableZones());
+                Log.error("Wrong zoneId " + sZoneId + " defined for macro " + name);
             }
 
-            //calculate new macro value
-            ZoneId zoneId = ZoneId.of(sZoneId);
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern(format);
+            zoneId = ZoneId.of(sZoneId);
+            formatter = DateTimeFormatter.ofPattern(format);
+        }
+
+        private static Integer getInt(Map<String, Object> tMacro, String key) {
+            if ( tMacro.containsKey(key) ) {
+                return Integer.parseInt(tMacro.get(key).toString());
+            }
+            return 0;
+        }
+
+        /**
+         * calculates macro value
+         *
+         * @param currentTime LocalDateTime, time used as a base for the calculation
+         *
+         * @return String
+         */
+        String evaluate(LocalDateTime currentTime) {
             ZonedDateTime macroTime = currentTime.atZone(zoneId).plusYears(addYears)
                     .plusMonths(addMonths)
                     .plusWeeks(addWeeks)
@@ -134,17 +117,94 @@ public class Macro {
                     .plusSeconds(addSeconds)
                     .plusNanos(addNanos);
 
-            long epoch = macroTime.toEpochSecond();
+            if ( type.equals("date") ) {
+                return prefix + macroTime.format(formatter) + suffix;
+            } else {
+                return prefix + macroTime.toEpochSecond() + suffix;
+            }
+        }
+    }
+
+
+    /**
+     * helper function used to get available zone ids
+     * zone ids are read only once because ZoneId.getAvailableZoneIds creates new set on each call
+     *
+     * @return Set
+     */
+    private static Set<String> getAvailableZones() {
+        if ( availableZones == null ) {
+            availableZones = Collections.unmodifiableSet(new HashSet<>(ZoneId.getAvailableZoneIds()));
+        }
+        return availableZones;
+    }
+
+
+    /**
+     * Macro values for single evaluation
+     * Value of a macro is calculated when it is used for the first time,
+     * all macros are calculated using the same current time
+     */
+    private static final class Values {
+
+        private final LocalDateTime currentTime = LocalDateTime.now();
+        private final Map<String, Definition> definitions = new HashMap<>();
+        private final Map<String, String> values = new HashMap<>();
 
-            if(type.equals("date")) {
-                calculatedValue = prefix + macroTime.format(formatter) + suffix;
-            }else{
-                calculatedValue = prefix + epoch + suffix;
+        /**
+         * Returns value of the macro
+         *
+         * @param name String, name of the macro without mcr. prefix
+         *
+         * @return String or null if there is no such macro
+         */
+        String get(String name) {
+            String value = values.get(name);
+            if ( value == null ) {
+                Definition definition = definitions.get(name);
+                if ( definition == null ) {
+                    return null;
+                }
+                value = definition.evaluate(currentTime);
+                values.put(name, value);
+                Log.debug("Macro " + name + " is " + value);
             }
+            return value;
+        }
+    }
+
 
-            //store calculated macro
-            result.put(entry.getKey(),calculatedValue);
-            Log.debug("Macro " + entry.getKey() + " is " + calculatedValue);
+    /**
+     * compiles macros
+     *
+     * helper function used to get compiled macro definitions based on data defined in the Macro
+     * configuration storage. Each definition is compiled only once per test suite execution.
+     *
+     * It is used internally by eval method.
+     *
+     * @param macro Map, storage that contains macro definitions
+     *
+     * @return Values
+     */
+    private Values mcr(Map<String, Object> macro){
+        Values result = new Values();
+        if ( macro == null ) {
+            return result;
+        }
+
+        //definitions are only read so they are not copied from the global configuration
+        for (String name : macro.keySet()) {
+            Object value = peek(macro, name);
+            Map<String, Object> tMacro = new HashMap<>();
+            if ( value instanceof Map ) {
+                tMacro.putAll((Map<String, Object>) value);
+            }
+            Definition definition = compiled.get(tMacro);
+            if ( definition == null ) {
+                definition = new Definition(name, tMacro);
+                compiled.put(tMacro, definition);
+            }
+            result.definitions.put(name, definition);
         }
 
         return result;
@@ -155,6 +215,7 @@ public class Macro {
      * evaluates macros
      * This method looks for a variable that starts with "mcr." in the configuration Storage entities
      * and tries to substitute such variables with calculated macro values.
+     * Macros can be used as a whole value, like "mcr.today" or inside of a string, like "id_mcr.today_1"
      *
      * @param input String, name of the storage where macro variables subsitution shall be done
      */
@@ -163,7 +224,7 @@ public class Macro {
         if ( mapToEval != null ) {
             HashMap<String, Object> macros = ctx.Object.get("Macro", HashMap.class);
 
-            HashMap<String, String> macrosAfterEvaluation = mcr(macros);
+            Values macrosAfterEvaluation = mcr(macros);
 
             //evaluate macros
             handleEvaluation(mapToEval, macrosAfterEvaluation);
@@ -175,39 +236,155 @@ public class Macro {
     /**
      * helper method to handle nested macros in maps and lists.
      * Recursion is used to check every entity of the input map.
-     * Nested lists are not supported
+     * Nested maps and lists are read without copying them (see SnapshotHashMap) and only
+     * the ones that contain a macro are taken for modification.
      *
-     * @param map HashMap, input to be checked for macro presence
-     * @param macrosAfterEvaluation HashMap, contains macros name and calculated value mapping
+     * @param map Map, input to be checked for macro presence
+     * @param macrosAfterEvaluation Values, contains macros name and calculated value mapping
      */
-    private void handleEvaluation (HashMap<String, Object> map, HashMap<String, String> macrosAfterEvaluation) {
-        for (HashMap.Entry<String, Object> entry : map.entrySet()){
-
-            if ( entry.getValue() instanceof HashMap ) {
-                handleEvaluation((HashMap) entry.getValue(), macrosAfterEvaluation);
-            } else if ( entry.getValue() instanceof ArrayList ) {
-                for (int i=0; i < ((ArrayList) entry.getValue()).size(); i++){
-                    if ( ((ArrayList) entry.getValue()).get(i).getClass().getName().contains("String")) {
-                        for (HashMap.Entry<String, String> macroEntry : macrosAfterEvaluation.entrySet()) {
-                            if (((ArrayList) entry.getValue()).get(i).equals("mcr." + macroEntry.getKey())) {
-                                ((ArrayList) entry.getValue()).set(i,macroEntry.getValue());
-                            }
-                        }
-                    } else if ( ((ArrayList) entry.getValue()).get(i) instanceof HashMap) {
-                        handleEvaluation((HashMap<String, Object>) ((ArrayList) entry.getValue()).get(i), macrosAfterEvaluation);
-                    }
+    private void handleEvaluation (Map<String, Object> map, Values macrosAfterEvaluation) {
+        for (String key : map.keySet()){
+            Object value = peek(map, key);
+            if ( value instanceof Map ) {
+                if ( containsMacro(value) ) {
+                    handleEvaluation((Map<String, Object>) map.get(key), macrosAfterEvaluation);
                 }
-            } else {
-                if (entry.getValue().getClass().getName().contains("String")) {
-                    for (HashMap.Entry<String, String> macroEntry : macrosAfterEvaluation.entrySet()) {
-                        if (entry.getValue().equals("mcr." + macroEntry.getKey())) {
-                            map.put(entry.getKey(), macroEntry.getValue());
-                        }
-                    }
+            } else if ( value instanceof List ) {
+                if ( containsMacro(value) ) {
+                    handleEvaluation((List<Object>) map.get(key), macrosAfterEvaluation);
+                }
+            } else if ( value instanceof String ) {
+                String result = substitute((String) value, macrosAfterEvaluation);
+                if ( result != value ) {
+                    //value of an existing key is replaced so key set is not modified
+                    map.put(key, result);
+                }
+            }
+        }
+    }
+
+    private void handleEvaluation (List<Object> list, Values macrosAfterEvaluation) {
+        for (int i=0; i < list.size(); i++){
+            Object value = list.get(i);
+            if ( value instanceof Map ) {
+                if ( containsMacro(value) ) {
+                    handleEvaluation((Map<String, Object>) value, macrosAfterEvaluation);
+                }
+            } else if ( value instanceof List ) {
+                handleEvaluation((List<Object>) value, macrosAfterEvaluation);
+            } else if ( value instanceof String ) {
+                String result = substitute((String) value, macrosAfterEvaluation);
+                if ( result != value ) {
+                    list.set(i, result);
                 }
             }
         }
     }
 
 
+    /**
+     * helper method used to read a value of a map without copying it
+     *
+     * @param map Map, map to read
+     * @param key String, key of the value
+     *
+     * @return Object
+     */
+    private static Object peek(Map<String, Object> map, String key) {
+        if ( map instanceof SnapshotHashMap ) {
+            return ((SnapshotHashMap) map).peek(key);
+        }
+        return map.get(key);
+    }
+
+    /**
+     * helper method used to check if a map, list or string contains a macro
+     * Content is only read so nothing is copied
+     *
+     * @param value Object, value to check
+     *
+     * @return boolean
+     */
+    private boolean containsMacro(Object value) {
+        if ( value instanceof Map ) {
+            Map<String, Object> map = (Map<String, Object>) value;
+            for (String key : map.keySet()) {
+                if ( containsMacro(peek(map, key)) ) {
+                    return true;
+                }
+            }
+        } else if ( value instanceof List ) {
+            for (Object item : (List<Object>) value) {
+                if ( containsMacro(item) ) {
+                    return true;
+                }
+            }
+        } else if ( value instanceof String ) {
+            return ((String) value).contains(PREFIX);
+        }
+        return false;
+    }
+
+
+    /**
+     * helper method used to substitute macros in a string
+     * If the whole value is a macro, like "mcr.today" or "mcr.next-day", macro name is the rest of the value.
+     * Otherwise macro name is the longest sequence of letters, digits and underscores after mcr. prefix
+     * which is a known macro, sequence can be shortened only at an underscore
+     * Unknown macros are left untouched
+     *
+     * @param value String, input
+     * @param macrosAfterEvaluation Values, contains macros name and calculated value mapping
+     *
+     * @return String, the same instance is returned if no macro was found
+     */
+    private String substitute (String value, Values macrosAfterEvaluation) {
+        int idx = value.indexOf(PREFIX);
+        if ( idx < 0 ) {
+            return value;
+        }
+        //whole value is a macro, name can contain any characters
+        if ( idx == 0 ) {
+            String macroValue = macrosAfterEvaluation.get(value.substring(PREFIX.length()));
+            if ( macroValue != null ) {
+                return macroValue;
+            }
+        }
+
+        StringBuilder result = null;
+        int last = 0;
+        while ( idx >= 0 ) {
+            int start = idx + PREFIX.length();
+            int end = start;
+            while ( end < value.length() && ( Character.isLetterOrDigit(value.charAt(end)) || value.charAt(end) == '_' ) ) {
+                end++;
+            }
+            String macroValue = end > start ? macrosAfterEvaluation.get(value.substring(start, end)) : null;
+            //name can be followed by an underscore, like in "id_mcr.today_1"
+            while ( macroValue == null && end > start ) {
+                end = value.lastIndexOf('_', end - 1);
+                if ( end <= start ) {
+                    end = start;
+                } else {
+                    macroValue = macrosAfterEvaluation.get(value.substring(start, end));
+                }
+            }
+            if ( macroValue != null ) {
+                if ( result == null ) {
+                    result = new StringBuilder(value.length() + macroValue.length());
+                }
+                result.append(value, last, idx).append(macroValue);
+                last = end;
+            }
+            idx = value.indexOf(PREFIX, Math.max(end, start));
+        }
+
+        if ( result == null ) {
+            return value;
+        }
+        result.append(value, last, value.length());
+
+        return result.toString();
+    }
+
 }
\ No newline at end of file
@@ -15,6 +15,8 @@ import java.util.concurrent.TimeUnit;
 
 public class PageCore {
 
+    private static final StoragePath WEB_TIMEOUT = StoragePath.compile("Environment.Active.Web.timeout");
+
     protected SharedContext ctx;
     protected Storage Storage;
     protected EventFiringWebDriver Page;
@@ -51,7 +53,7 @@ public class PageCore {
      */
     public void waitUntilTitleContains(String pageTitle) {
         Log.debug("Going to wait for page load and check title");
-        Integer timeout = Storage.get("Environment.Active.Web.timeout");
+        Integer timeout = Storage.get(WEB_TIMEOUT);
         WebDriverWait wait = new WebDriverWait(Page, timeout, 1000);
         try {
             wait.until(ExpectedConditions.titleContains(pageTitle));
@@ -67,7 +69,7 @@ public class PageCore {
      */
     public void waitForPageToLoad() {
         Log.debug("Going to wait for page load");
-        Integer timeOutInSeconds = Storage.get("Environment.Active.Web.timeout");
+        Integer timeOutInSeconds = Storage.get(WEB_TIMEOUT);
         JavascriptExecutor js = Page;
         String jsCommand = "return document.readyState";
         // Validate readyState before doing any waits
@@ -96,7 +98,7 @@ public class PageCore {
      */
     public void waitForElementToBePresent(By locator) {
         Log.debug("Going to wait for an element identified " + locator.toString() + " to be present");
-        Integer seconds = Storage.get("Environment.Active.Web.timeout");
+        Integer seconds = Storage.get(WEB_TIMEOUT);
         WebDriverWait wait = new WebDriverWait(Page, seconds);
         try {
             wait.until(ExpectedConditions.presenceOfElementLocated(locator));
@@ -114,7 +116,7 @@ public class PageCore {
      */
     public void waitForElementToBeVisible(By locator) {
         Log.debug("Going to wait for an element identified " + locator.toString() + " to be visible");
-        Integer seconds = Storage.get("Environment.Active.Web.timeout");
+        Integer seconds = Storage.get(WEB_TIMEOUT);
         WebDriverWait wait = new WebDriverWait(Page, seconds);
         try {
             wait.until(ExpectedConditions.visibilityOfElementLocated(locator));
@@ -133,7 +135,7 @@ public class PageCore {
     public void waitForElementToBeRemoved(By locator) {
         Log.debug("Going to wait for an element identified " + locator.toString() + " to be removed");
         turnOffImplicitWaits();
-        Integer timeOut = Storage.get("Environment.Active.Web.timeout");
+        Integer timeOut = Storage.get(WEB_TIMEOUT);
         WebDriverWait wait = new WebDriverWait(Page, timeOut);
         try {
             wait.until(ExpectedConditions.invisibilityOfElementLocated(locator));
@@ -179,7 +181,7 @@ public class PageCore {
      * helper function
      */
     private void turnOnImplicitWaits() {
-        Integer seconds = Storage.get("Environment.Active.Web.timeout");
+        Integer seconds = Storage.get(WEB_TIMEOUT);
         Page.manage().timeouts().implicitlyWait(seconds, TimeUnit.SECONDS);
     }
 
@@ -504,7 +506,7 @@ public class PageCore {
      */
     public Alert waitForAlert() {
         Log.debug("Going to wait for an alert window");
-        Integer seconds = Storage.get("Environment.Active.Web.timeout");
+        Integer seconds = Storage.get(WEB_TIMEOUT);
         WebDriverWait wait = new WebDriverWait(Page, seconds);
         try {
             wait.until(ExpectedConditions.alertIsPresent());
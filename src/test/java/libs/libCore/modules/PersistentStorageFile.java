@@ -0,0 +1,367 @@
+package libs.libCore.modules;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Append-only file used to pass content of storages between scenarios and features
+ *
+ * Each line has the form identifier={json}. New content of an identifier is always appended
+ * at the end of the file and an in-memory index keeps position of the latest entry of each identifier,
+ * so write and read cost depends only on the size of the entry and not on the size of the file.
+ * When most of the file is occupied by outdated entries it is compacted, only latest entries are kept.
+ *
+ * File is read only once per test suite execution, entries appended later on by other processes
+ * are detected by file size and only the new part of the file is indexed. Compacted file starts with
+ * a generation line, file replaced by compaction in another process is detected by its generation
+ * (and by its file key where file system provides it) and indexed again.
+ *
+ * File can be shared by many processes, appends and compaction are guarded by an exclusive lock
+ * and reads by a shared lock of file name.lock (storage file itself is replaced by compaction so it can't be locked).
+ */
+public class PersistentStorageFile {
+
+    //compaction is not done for small files
+    private static final long COMPACTION_MIN_SIZE = 64 * 1024;
+    private static final String GENERATION = "#generation=";
+    private static final Map<String, PersistentStorageFile> instances = new HashMap<>();
+
+    private final File file;
+    //identifier -> {offset of json, length of json in bytes}
+    private final Map<String, long[]> index = new LinkedHashMap<>();
+    private long indexedLength = 0;
+    private long liveLength = 0;
+    //identity of the indexed file, it changes when file is replaced
+    private Object indexedKey = null;
+    private String indexedGeneration = "";
+    private FileChannel lockChannel = null;
+
+    private PersistentStorageFile(File file) {
+        this.file = file;
+    }
+
+
+    /**
+     * Returns storage file handler, one handler exists per file
+     *
+     * @param file File, storage file
+     *
+     * @return PersistentStorageFile
+     */
+    public static PersistentStorageFile getInstance(File file) {
+        synchronized (instances) {
+            String key = file.getAbsolutePath();
+            PersistentStorageFile result = instances.get(key);
+            if ( result == null ) {
+                result = new PersistentStorageFile(file);
+                instances.put(key, result);
+            }
+            return result;
+        }
+    }
+
+
+    /**
+     * @return File, storage file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return boolean, true if storage file exists
+     */
+    public boolean exists() {
+        return file.exists();
+    }
+
+
+    /**
+     * Appends new content of an identifier to the file
+     * Previous content of the same identifier becomes outdated
+     *
+     * @param identifier String, identifier of the entry
+     * @param content String, json
+     */
+    public synchronized void put(String identifier, String content) {
+        FileLock lock = lock(false);
+        try {
+            append(identifier, content);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    private void append(String identifier, String content) {
+        refresh();
+
+        byte[] prefix = (identifier + "=").getBytes(StandardCharsets.UTF_8);
+        byte[] json = content.getBytes(StandardCharsets.UTF_8);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long offset = raf.length();
+            raf.seek(offset);
+            ByteArrayOutputStream record = new ByteArrayOutputStream(prefix.length + json.length + 1);
+            record.write(prefix);
+            record.write(json);
+            record.write('\n');
+            raf.write(record.toByteArray());
+
+            addToIndex(identifier, offset + prefix.length, json.length);
+            indexedLength = raf.length();
+        } catch (IOException e) {
+            Log.error( "Can't write to the storage file " + file.getAbsolutePath(), e );
+        }
+
+        if ( indexedLength > COMPACTION_MIN_SIZE && indexedLength > 2 * liveLength ) {
+            compact();
+        }
+    }
+
+
+    /**
+     * Returns latest content of an identifier
+     *
+     * @param identifier String, identifier of the entry
+     *
+     * @return String, json or null if identifier does not exist
+     */
+    public synchronized String get(String identifier) {
+        FileLock lock = lock(true);
+        try {
+            refresh();
+
+            long[] position = index.get(identifier);
+            if ( position == null ) {
+                return null;
+            }
+
+            byte[] json = new byte[(int) position[1]];
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                raf.seek(position[0]);
+                raf.readFully(json);
+            } catch (IOException e) {
+                Log.error( "Can't read from the storage file " + file.getAbsolutePath(), e );
+            }
+
+            return new String(json, StandardCharsets.UTF_8);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+
+    /**
+     * helper function used to lock the storage file against other processes
+     *
+     * @param shared boolean, true for read lock, false for write lock
+     *
+     * @return FileLock
+     */
+    private FileLock lock(boolean shared) {
+        try {
+            if ( lockChannel == null ) {
+                File lockFile = new File(file.getAbsolutePath() + ".lock");
+                lockChannel = new RandomAccessFile(lockFile, "rw").getChannel();
+            }
+            return lockChannel.lock(0, Long.MAX_VALUE, shared);
+        } catch (IOException e) {
+            Log.error( "Can't lock the storage file " + file.getAbsolutePath(), e );
+        }
+        return null;
+    }
+
+    private void unlock(FileLock lock) {
+        try {
+            if ( lock != null ) {
+                lock.release();
+            }
+        } catch (IOException e) {
+            Log.warn("Can't unlock the storage file " + file.getAbsolutePath() + ". " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * helper function used to index entries that were not indexed yet
+     * Whole file is indexed again if it was replaced or truncated
+     */
+    private void refresh() {
+        long length = 0;
+        Object key = null;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            length = attributes.size();
+            key = attributes.fileKey();
+        } catch (NoSuchFileException e) {
+            //file does not exist yet
+        } catch (IOException e) {
+            Log.error( "Can't read the storage file " + file.getAbsolutePath(), e );
+        }
+
+        String generation = readGeneration();
+        if ( length < indexedLength || ! Objects.equals(key, indexedKey) || ! generation.equals(indexedGeneration) ) {
+            if ( indexedLength > 0 ) {
+                Log.debug("Storage file " + file.getAbsolutePath() + " was modified. Going to index it again");
+            }
+            index.clear();
+            indexedLength = 0;
+            liveLength = 0;
+            indexedKey = key;
+            indexedGeneration = generation;
+        }
+        if ( length == indexedLength ) {
+            return;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(indexedLength);
+            InputStream in = new BufferedInputStream(new FileInputStream(raf.getFD()), 64 * 1024);
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long lineStart = indexedLength;
+            long position = indexedLength;
+            int b;
+            while ( (b = in.read()) != -1 ) {
+                position++;
+                if ( b == '\n' ) {
+                    indexLine(line.toByteArray(), lineStart);
+                    line.reset();
+                    lineStart = position;
+                } else {
+                    line.write(b);
+                }
+            }
+            //incomplete line is indexed next time, when it is finished
+            indexedLength = lineStart;
+        } catch (IOException e) {
+            Log.error( "Can't read the storage file " + file.getAbsolutePath(), e );
+        }
+    }
+
+
+    /**
+     * helper function used to add single line of the file to the index
+     *
+     * @param line byte[], line without new line character
+     * @param offset long, offset of the line in the file
+     */
+    private void indexLine(byte[] line, long offset) {
+        int length = line.length;
+        if ( length > 0 && line[length - 1] == '\r' ) {
+            length--;
+        }
+        for (int i = 0; i < length - 1; i++) {
+            if ( line[i] == '=' && line[i + 1] == '{' ) {
+                String identifier = new String(line, 0, i, StandardCharsets.UTF_8);
+                addToIndex(identifier, offset + i + 1, length - i - 1);
+                return;
+            }
+        }
+    }
+
+    /**
+     * helper function used to read generation written by compaction at the beginning of the file
+     *
+     * @return String, generation or empty string if file was not compacted yet
+     */
+    private String readGeneration() {
+        if ( ! file.exists() ) {
+            return "";
+        }
+        byte[] header = new byte[GENERATION.length() + 64];
+        int read = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ( read < header.length && (n = in.read(header, read, header.length - read)) > 0 ) {
+                read = read + n;
+            }
+        } catch (IOException e) {
+            Log.error( "Can't read the storage file " + file.getAbsolutePath(), e );
+        }
+        String line = new String(header, 0, read, StandardCharsets.UTF_8);
+        if ( ! line.startsWith(GENERATION) || line.indexOf('\n') < 0 ) {
+            return "";
+        }
+        return line.substring(GENERATION.length(), line.indexOf('\n'));
+    }
+
+    private void addToIndex(String identifier, long offset, long length) {
+        long[] previous = index.remove(identifier);
+        if ( previous != null ) {
+            liveLength = liveLength - previous[1];
+        }
+        index.put(identifier, new long[] { offset, length });
+        liveLength = liveLength + length;
+    }
+
+
+    /**
+     * helper function used to rewrite the file with latest entries only
+     */
+    private void compact() {
+        Log.debug("Compacting storage file " + file.getAbsolutePath());
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        Map<String, long[]> compacted = new LinkedHashMap<>();
+        String generation = Long.toHexString(System.nanoTime()) + Long.toHexString(Double.doubleToLongBits(Math.random()));
+        byte[] header = (GENERATION + generation + "\n").getBytes(StandardCharsets.UTF_8);
+        long length = header.length;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024)) {
+            out.write(header);
+            for (Map.Entry<String, long[]> entry : index.entrySet()) {
+                byte[] prefix = (entry.getKey() + "=").getBytes(StandardCharsets.UTF_8);
+                byte[] json = new byte[(int) entry.getValue()[1]];
+                raf.seek(entry.getValue()[0]);
+                raf.readFully(json);
+                out.write(prefix);
+                out.write(json);
+                out.write('\n');
+                compacted.put(entry.getKey(), new long[] { length + prefix.length, json.length });
+                length = length + prefix.length + json.length + 1;
+            }
+        } catch (IOException e) {
+            Log.warn("Can't compact storage file " + file.getAbsolutePath() + ". " + e.getMessage());
+            tmp.delete();
+            return;
+        }
+
+        try {
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Log.warn("Can't replace storage file " + file.getAbsolutePath() + ". " + e.getMessage());
+            tmp.delete();
+            return;
+        }
+
+        index.clear();
+        index.putAll(compacted);
+        indexedLength = length;
+        indexedGeneration = generation;
+        try {
+            indexedKey = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            indexedKey = null;
+        }
+        liveLength = 0;
+        for (long[] position : compacted.values()) {
+            liveLength = liveLength + position[1];
+        }
+        Log.debug("Storage file compacted to " + length + " bytes");
+    }
+
+}
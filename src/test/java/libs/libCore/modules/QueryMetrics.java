@@ -0,0 +1,247 @@
+package libs.libCore.modules;
+
+import java.util.*;
+
+/**
+ * Collects execution metrics of sql queries executed by SqlCore
+ *
+ * For each kind of query (select, insert, batch etc.) latency histogram is kept together with
+ * number of rows returned or affected and approximate number of bytes fetched.
+ * Slowest queries are kept as well so they can be attached to the report.
+ * Queries that failed (including the ones that timed out) are recorded too and counted as errors.
+ *
+ * Each SqlCore (so each scenario) has its own instance, all of them report to the suite instance too.
+ * Instances are thread safe.
+ */
+public class QueryMetrics {
+
+    public enum Kind { SELECT, SCALAR, INSERT, UPDATE, DELETE, BATCH, COMPARE }
+
+    private static final int SLOW_QUERIES = 20;
+    private static final int QUERY_LENGTH = 200;
+    //upper bounds of latency buckets in ms, last bucket is unbounded
+    private static final long[] BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000 };
+
+    private static final QueryMetrics SUITE = new QueryMetrics("suite", null);
+
+    private final String name;
+    private final QueryMetrics parent;
+    private final Map<Kind, Histogram> histograms = new EnumMap<>(Kind.class);
+    private final PriorityQueue<Sample> slowest = new PriorityQueue<>();
+
+    private QueryMetrics(String name, QueryMetrics parent) {
+        this.name = name;
+        this.parent = parent;
+    }
+
+
+    /**
+     * Creates metrics of a single scenario, all queries are reported to the suite metrics too
+     *
+     * @return QueryMetrics
+     */
+    public static QueryMetrics forScenario() {
+        return new QueryMetrics("scenario", SUITE);
+    }
+
+
+    /**
+     * @return QueryMetrics, metrics of all queries executed in the test suite
+     */
+    public static QueryMetrics suite() {
+        return SUITE;
+    }
+
+
+    /**
+     * Records execution of a query
+     *
+     * @param kind Kind, kind of the query
+     * @param query String, executed query
+     * @param nanos long, execution time in ns
+     * @param rows long, number of rows returned or affected
+     * @param bytes long, approximate number of bytes fetched, see sizeOf
+     * @param failed boolean, true if query failed
+     */
+    public void record(Kind kind, String query, long nanos, long rows, long bytes, boolean failed) {
+        synchronized (this) {
+            Histogram histogram = histograms.get(kind);
+            if ( histogram == null ) {
+                histogram = new Histogram();
+                histograms.put(kind, histogram);
+            }
+            histogram.add(nanos, rows, bytes, failed);
+
+            //min heap, the fastest of the slowest queries is on top
+            if ( slowest.size() < SLOW_QUERIES || slowest.peek().nanos < nanos ) {
+                slowest.add(new Sample(kind, query, nanos, rows, bytes, failed));
+                if ( slowest.size() > SLOW_QUERIES ) {
+                    slowest.poll();
+                }
+            }
+        }
+        if ( parent != null ) {
+            parent.record(kind, query, nanos, rows, bytes, failed);
+        }
+    }
+
+
+    /**
+     * @return long, number of recorded queries
+     */
+    public synchronized long getCount() {
+        long count = 0;
+        for (Histogram histogram : histograms.values()) {
+            count = count + histogram.count;
+        }
+        return count;
+    }
+
+
+    /**
+     * Returns approximate size of a value fetched from the data base
+     * Strings are counted as one byte per character, numbers and dates as 8 bytes, booleans as 1 byte
+     *
+     * @param value Object, column value
+     *
+     * @return long
+     */
+    public static long sizeOf(Object value) {
+        if ( value == null ) {
+            return 0;
+        } else if ( value instanceof CharSequence ) {
+            return ((CharSequence) value).length();
+        } else if ( value instanceof byte[] ) {
+            return ((byte[]) value).length;
+        } else if ( value instanceof Boolean ) {
+            return 1;
+        } else if ( value instanceof Number || value instanceof Date ) {
+            return 8;
+        }
+        return value.toString().length();
+    }
+
+
+    /**
+     * Returns report with latency histograms per kind of query and table of the slowest queries
+     *
+     * @return String
+     */
+    @Override
+    public synchronized String toString() {
+        String n = System.lineSeparator();
+        StringBuilder result = new StringBuilder();
+
+        result.append("Sql query metrics of the ").append(name).append(n).append(n);
+        result.append(String.format("%-8s %8s %8s %10s %9s %9s %9s %9s %9s %10s %12s", "kind", "count", "errors",
+                "total ms", "avg ms", "p50 ms", "p95 ms", "p99 ms", "max ms", "rows", "bytes")).append(n);
+        for (Map.Entry<Kind, Histogram> entry : histograms.entrySet()) {
+            Histogram h = entry.getValue();
+            result.append(String.format("%-8s %8d %8d %10.1f %9.1f %9s %9s %9s %9.1f %10d %12d", entry.getKey(), h.count,
+                    h.errors, h.nanos / 1e6, h.nanos / 1e6 / h.count, h.percentile(0.5), h.percentile(0.95), h.percentile(0.99),
+                    h.max / 1e6, h.rows, h.bytes)).append(n);
+        }
+
+        result.append(n).append("Latency histogram (number of queries per bucket)").append(n);
+        result.append(String.format("%-8s", "kind"));
+        for (long bound : BOUNDS) {
+            result.append(String.format(" %7s", "<" + bound));
+        }
+        result.append(String.format(" %7s", ">=" + BOUNDS[BOUNDS.length - 1])).append(n);
+        for (Map.Entry<Kind, Histogram> entry : histograms.entrySet()) {
+            result.append(String.format("%-8s", entry.getKey()));
+            for (long bucket : entry.getValue().buckets) {
+                result.append(String.format(" %7d", bucket));
+            }
+            result.append(n);
+        }
+
+        List<Sample> samples = new ArrayList<>(slowest);
+        Collections.sort(samples, Collections.reverseOrder());
+        result.append(n).append("Slowest queries").append(n);
+        result.append(String.format("%10s %-8s %-6s %10s %12s  %s", "ms", "kind", "status", "rows", "bytes", "query")).append(n);
+        for (Sample sample : samples) {
+            result.append(String.format("%10.1f %-8s %-6s %10d %12d  %s", sample.nanos / 1e6, sample.kind,
+                    sample.failed ? "failed" : "ok", sample.rows, sample.bytes, sample.query)).append(n);
+        }
+
+        return result.toString();
+    }
+
+
+    /**
+     * helper class used to count queries in latency buckets
+     */
+    private static final class Histogram {
+
+        private final long[] buckets = new long[BOUNDS.length + 1];
+        private long count = 0;
+        private long errors = 0;
+        private long nanos = 0;
+        private long max = 0;
+        private long rows = 0;
+        private long bytes = 0;
+
+        void add(long nanos, long rows, long bytes, boolean failed) {
+            long ms = nanos / 1000000;
+            int i = 0;
+            while ( i < BOUNDS.length && ms >= BOUNDS[i] ) {
+                i++;
+            }
+            buckets[i]++;
+            count++;
+            if ( failed ) {
+                errors++;
+            }
+            this.nanos = this.nanos + nanos;
+            this.max = Math.max(max, nanos);
+            this.rows = this.rows + rows;
+            this.bytes = this.bytes + bytes;
+        }
+
+        /**
+         * @return String, upper bound of the bucket that contains given percentile, max if it is lower
+         */
+        String percentile(double p) {
+            long rank = (long) Math.ceil(p * count);
+            long seen = 0;
+            for (int i = 0; i < BOUNDS.length; i++) {
+                seen = seen + buckets[i];
+                if ( seen >= rank ) {
+                    return String.format("%.1f", Math.min(BOUNDS[i], max / 1e6));
+                }
+            }
+            return String.format("%.1f", max / 1e6);
+        }
+    }
+
+
+    /**
+     * helper class used to keep the slowest queries
+     */
+    private static final class Sample implements Comparable<Sample> {
+
+        private final Kind kind;
+        private final String query;
+        private final long nanos;
+        private final long rows;
+        private final long bytes;
+        private final boolean failed;
+
+        Sample(Kind kind, String query, long nanos, long rows, long bytes, boolean failed) {
+            this.kind = kind;
+            String text = query.replaceAll("\\s+", " ").trim();
+            this.query = text.length() > QUERY_LENGTH ? text.substring(0, QUERY_LENGTH) + "..." : text;
+            this.nanos = nanos;
+            this.rows = rows;
+            this.bytes = bytes;
+            this.failed = failed;
+        }
+
+        @Override
+        public int compareTo(Sample other) {
+            return Long.compare(nanos, other.nanos);
+        }
+    }
+
+}
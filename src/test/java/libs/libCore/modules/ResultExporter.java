@@ -0,0 +1,231 @@
+package libs.libCore.modules;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes results of sql select query to a writer in one of the formats
+ * TEXT - values separated by ", ", header is written only if there is at least one row (format used by SqlCore.writeListToFile)
+ * CSV - values separated by comma, values that contain comma, quote or new line are quoted as defined in RFC 4180
+ * TSV - values separated by tab, tab, new line and backslash in values are escaped with backslash
+ * JSONL - each row is written as json object in a separate line (JSON Lines)
+ *
+ * Null values are written as null in TEXT and JSONL formats and as empty value in CSV and TSV formats.
+ * Rows are written straight to the writer, use buffered writer for big results. Writer is not closed.
+ * It can be used as a consumer of SqlCore.select to export results without keeping them in memory.
+ */
+public class ResultExporter implements RowConsumer {
+
+    public enum Format { TEXT, CSV, TSV, JSONL }
+
+    private final String n = System.lineSeparator();
+    private final Writer out;
+    private final Format format;
+    private String[] columns = new String[0];
+    private boolean headerWritten = false;
+
+    /**
+     * @param out Writer, output
+     * @param format Format, output format
+     */
+    public ResultExporter(Writer out, Format format) {
+        this.out = out;
+        this.format = format;
+    }
+
+
+    /**
+     * Exports results returned by SqlCore.selectList
+     *
+     * @param list List<Map<String, Object>>, list as returned by method selectList
+     * @param out Writer, output
+     * @param format Format, output format
+     *
+     * @return long, number of rows
+     *
+     * @throws IOException when results can't be written
+     */
+    public static long export(List<Map<String, Object>> list, Writer out, Format format) throws IOException {
+        return feed(list, new ResultExporter(out, format));
+    }
+
+
+    /**
+     * Pushes results returned by SqlCore.selectList to the consumer
+     * Column labels are taken from the first row
+     *
+     * @param list List<Map<String, Object>>, list as returned by method selectList
+     * @param consumer RowConsumer, consumer of rows
+     *
+     * @return long, number of rows
+     *
+     * @throws IOException when consumer fails
+     */
+    public static long feed(List<Map<String, Object>> list, RowConsumer consumer) throws IOException {
+        String[] columns = new String[0];
+        if ( list.size() > 0 ) {
+            columns = list.get(0).keySet().toArray(columns);
+        }
+        consumer.begin(columns);
+
+        Object[] row = new Object[columns.length];
+        for (Map<String, Object> map : list) {
+            int i = 0;
+            for (Object value : map.values()) {
+                if ( i < row.length ) {
+                    row[i++] = value;
+                }
+            }
+            consumer.accept(row);
+        }
+        consumer.end(list.size());
+
+        return list.size();
+    }
+
+
+    @Override
+    public void begin(String[] columns) throws IOException {
+        this.columns = columns.clone();
+        if ( format == Format.CSV || format == Format.TSV ) {
+            writeHeader();
+        }
+    }
+
+    @Override
+    public void accept(Object[] row) throws IOException {
+        if ( format == Format.TEXT ) {
+            writeHeader();
+        }
+        if ( format == Format.JSONL ) {
+            writeJson(row);
+        } else {
+            writeValues(row, false);
+        }
+    }
+
+    @Override
+    public void end(long rows) throws IOException {
+        if ( format == Format.TEXT && rows == 0 ) {
+            out.write(n);
+        }
+        out.flush();
+    }
+
+
+    private void writeHeader() throws IOException {
+        if ( ! headerWritten && columns.length > 0 ) {
+            writeValues(columns, true);
+        }
+        headerWritten = true;
+    }
+
+    private void writeValues(Object[] values, boolean header) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if ( i > 0 ) {
+                out.write(format == Format.CSV ? "," : format == Format.TSV ? "\t" : ", ");
+            }
+            Object value = values[i];
+            if ( format == Format.TEXT ) {
+                out.write(String.valueOf(value));
+            } else if ( value != null ) {
+                String text = value.toString();
+                out.write(format == Format.CSV ? quoteCsv(text) : escapeTsv(text));
+            }
+        }
+        out.write(n);
+    }
+
+    private void writeJson(Object[] row) throws IOException {
+        out.write('{');
+        for (int i = 0; i < row.length; i++) {
+            if ( i > 0 ) {
+                out.write(',');
+            }
+            writeJsonString(i < columns.length ? columns[i] : "column" + (i + 1));
+            out.write(':');
+            Object value = row[i];
+            if ( value == null ) {
+                out.write("null");
+            } else if ( value instanceof Boolean || ( value instanceof Number && isFinite((Number) value) ) ) {
+                out.write(value.toString());
+            } else {
+                writeJsonString(value.toString());
+            }
+        }
+        out.write('}');
+        out.write(n);
+    }
+
+
+    /**
+     * helper function used to quote value as defined in RFC 4180
+     *
+     * @param value String
+     *
+     * @return String, value in quotes if it contains separator, quote or new line, value as is otherwise
+     */
+    private static String quoteCsv(String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && ! quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if ( ! quote ) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String escapeTsv(String value) {
+        StringBuilder result = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String escaped = c == '\t' ? "\\t" : c == '\n' ? "\\n" : c == '\r' ? "\\r" : c == '\\' ? "\\\\" : null;
+            if ( escaped != null && result == null ) {
+                result = new StringBuilder(value.length() + 8).append(value, 0, i);
+            }
+            if ( result != null ) {
+                if ( escaped != null ) {
+                    result.append(escaped);
+                } else {
+                    result.append(c);
+                }
+            }
+        }
+        return result == null ? value : result.toString();
+    }
+
+    private void writeJsonString(String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ( c == '"' || c == '\\' ) {
+                out.write('\\');
+                out.write(c);
+            } else if ( c == '\n' ) {
+                out.write("\\n");
+            } else if ( c == '\r' ) {
+                out.write("\\r");
+            } else if ( c == '\t' ) {
+                out.write("\\t");
+            } else if ( c < 0x20 ) {
+                out.write(String.format("\\u%04x", (int) c));
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+
+    private static boolean isFinite(Number value) {
+        if ( value instanceof Double || value instanceof Float ) {
+            double d = value.doubleValue();
+            return ! Double.isNaN(d) && ! Double.isInfinite(d);
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,155 @@
+package libs.libCore.modules;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Consumer of rows returned by sql select query, see SqlCore.select
+ * Rows are pushed one by one while result set is read so they do not have to be kept in memory
+ */
+public interface RowConsumer {
+
+    /**
+     * Called once before the first row
+     *
+     * @param columns String[], column labels
+     *
+     * @throws IOException when row can't be consumed
+     */
+    default void begin(String[] columns) throws IOException {}
+
+    /**
+     * Called for each row
+     *
+     * @param row Object[], column values, array is reused for the next row so copy it if values shall be kept
+     *
+     * @throws IOException when row can't be consumed
+     */
+    void accept(Object[] row) throws IOException;
+
+    /**
+     * Called once after the last row
+     *
+     * @param rows long, number of rows
+     *
+     * @throws IOException when row can't be consumed
+     */
+    default void end(long rows) throws IOException {}
+
+
+    /**
+     * Creates consumer that prints rows to the log file, in the same way as SqlCore.printList
+     *
+     * @return RowConsumer
+     */
+    static RowConsumer toLog() {
+        return new RowConsumer() {
+            private String header;
+
+            @Override
+            public void begin(String[] columns) {
+                header = join(columns);
+            }
+
+            @Override
+            public void accept(Object[] row) {
+                if ( header != null ) {
+                    Log.debug(header);
+                    header = null;
+                }
+                Log.debug(join(row));
+            }
+        };
+    }
+
+
+    /**
+     * Creates consumer that writes rows to the writer, in the same format as SqlCore.writeListToFile
+     * Header is written together with the first row, when there are no rows only line separator is written
+     * Writer is not closed, see ResultExporter for other formats
+     *
+     * @param out Writer, output
+     *
+     * @return RowConsumer
+     */
+    static RowConsumer toWriter(Writer out) {
+        return new ResultExporter(out, ResultExporter.Format.TEXT);
+    }
+
+
+    /**
+     * helper function used to join values with ", " separator
+     *
+     * @param values Object[]
+     *
+     * @return String
+     */
+    static String join(Object[] values) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if ( i > 0 ) {
+                result.append(", ");
+            }
+            result.append(values[i]);
+        }
+        return result.toString();
+    }
+
+
+    /**
+     * Consumer that calculates SHA-256 digest of the rows in the order in which they were returned
+     * Can be used to compare big results without storing them
+     */
+    final class Digest implements RowConsumer {
+
+        private final MessageDigest digest;
+        private long rows = 0;
+
+        public Digest() {
+            MessageDigest md = null;
+            try {
+                md = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                Log.error("", e);
+            }
+            this.digest = md;
+        }
+
+        @Override
+        public void accept(Object[] row) {
+            for (Object value : row) {
+                //null is distinguished from "null" string, each value is terminated so "a","b" != "ab",""
+                if ( value == null ) {
+                    digest.update((byte) 0);
+                } else {
+                    digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) 1);
+                }
+            }
+            digest.update((byte) 2);
+            rows++;
+        }
+
+        /**
+         * @return long, number of consumed rows
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * @return String, hex encoded digest of consumed rows, digest is reset afterwards
+         */
+        public String getHex() {
+            StringBuilder result = new StringBuilder();
+            for (byte b : digest.digest()) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        }
+    }
+
+}
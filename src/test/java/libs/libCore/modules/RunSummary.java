@@ -0,0 +1,252 @@
+package libs.libCore.modules;
+
+import cucumber.runtime.Runtime;
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Reporter;
+import gherkin.formatter.model.*;
+
+import java.io.PrintStream;
+import java.text.DecimalFormat;
+import java.util.*;
+
+/**
+ * Counts scenario and step results of a single worker when features are executed in parallel
+ *
+ * Each worker has its own cucumber Runtime so each of them would print its own summary.
+ * Instead all results are passed through RunSummary (it wraps reporter and formatter of the worker)
+ * and one summary of the whole run is printed at the end, in the same format as cucumber does.
+ *
+ * Instances are not thread safe, each one is used by the thread of its worker only.
+ */
+public class RunSummary implements Reporter, Formatter {
+
+    //order in which counts are printed, from the most to the least severe
+    private static final List<String> STATUSES = Arrays.asList("failed", "skipped", "pending", "undefined", "passed");
+    //severity used to calculate status of a scenario from the results of its steps and hooks
+    private static final List<String> SEVERITY = Arrays.asList("passed", "skipped", "pending", "undefined", "failed");
+
+    private final Reporter reporter;
+    private final Formatter formatter;
+
+    private final Map<String, Integer> scenarios = new HashMap<>();
+    private final Map<String, Integer> steps = new HashMap<>();
+    private final Map<String, List<String>> designations = new HashMap<>();
+    private long duration = 0;
+
+    private String uri;
+    private Scenario scenario;
+    private String scenarioStatus;
+
+    public RunSummary(Reporter reporter, Formatter formatter) {
+        this.reporter = reporter;
+        this.formatter = formatter;
+    }
+
+
+    /**
+     * Prints one summary of all workers: failed scenarios, scenario and step counts, duration,
+     * errors and snippets of undefined steps (each snippet once)
+     *
+     * @param summaries List<RunSummary>, summaries of all workers
+     * @param runtimes List<Runtime>, runtimes of all workers
+     * @param strict boolean, if true pending and undefined scenarios are listed as well
+     * @param out PrintStream, stream to print to
+     */
+    public static void print(List<RunSummary> summaries, List<Runtime> runtimes, boolean strict, PrintStream out) {
+        Map<String, Integer> scenarios = new HashMap<>();
+        Map<String, Integer> steps = new HashMap<>();
+        Map<String, List<String>> designations = new HashMap<>();
+        long duration = 0;
+        for (RunSummary summary : summaries) {
+            add(scenarios, summary.scenarios);
+            add(steps, summary.steps);
+            for (Map.Entry<String, List<String>> entry : summary.designations.entrySet()) {
+                if ( ! designations.containsKey(entry.getKey()) ) {
+                    designations.put(entry.getKey(), new ArrayList<String>());
+                }
+                designations.get(entry.getKey()).addAll(entry.getValue());
+            }
+            duration = duration + summary.duration;
+        }
+
+        out.println();
+        printScenarios(out, designations, "failed");
+        if ( strict ) {
+            printScenarios(out, designations, "pending");
+            printScenarios(out, designations, "undefined");
+        }
+        if ( total(steps) == 0 ) {
+            out.println("0 Scenarios");
+            out.println("0 Steps");
+        } else {
+            out.println(total(scenarios) + " Scenarios (" + subCounts(scenarios) + ")");
+            out.println(total(steps) + " Steps (" + subCounts(steps) + ")");
+        }
+        out.println(String.format("%dm", duration / 60000000000L) + new DecimalFormat("0.000").format((duration % 60000000000L) / 1000000000d) + "s");
+        out.println();
+
+        Set<String> snippets = new LinkedHashSet<>();
+        for (Runtime runtime : runtimes) {
+            for (Throwable error : runtime.getErrors()) {
+                error.printStackTrace(out);
+                out.println();
+            }
+            snippets.addAll(runtime.getSnippets());
+        }
+        if ( ! snippets.isEmpty() ) {
+            out.append("\n");
+            out.println("You can implement missing steps with the snippets below:");
+            out.println();
+            for (String snippet : snippets) {
+                out.println(snippet);
+            }
+        }
+    }
+
+    private static void add(Map<String, Integer> to, Map<String, Integer> from) {
+        for (Map.Entry<String, Integer> entry : from.entrySet()) {
+            Integer count = to.get(entry.getKey());
+            to.put(entry.getKey(), count == null ? entry.getValue() : count + entry.getValue());
+        }
+    }
+
+    private static int total(Map<String, Integer> counts) {
+        int total = 0;
+        for (Integer count : counts.values()) {
+            total = total + count;
+        }
+        return total;
+    }
+
+    private static String subCounts(Map<String, Integer> counts) {
+        StringBuilder sb = new StringBuilder();
+        for (String status : STATUSES) {
+            Integer count = counts.get(status);
+            if ( count != null && count > 0 ) {
+                if ( sb.length() > 0 ) {
+                    sb.append(", ");
+                }
+                sb.append(count).append(" ").append(status);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void printScenarios(PrintStream out, Map<String, List<String>> designations, String status) {
+        List<String> list = designations.get(status);
+        if ( list == null || list.isEmpty() ) {
+            return;
+        }
+        out.println(status.substring(0, 1).toUpperCase() + status.substring(1) + " scenarios:");
+        for (String designation : list) {
+            out.println(designation);
+        }
+        out.println();
+    }
+
+    private void count(Map<String, Integer> counts, String status) {
+        Integer count = counts.get(status);
+        counts.put(status, count == null ? 1 : count + 1);
+    }
+
+    //keeps the most severe status of the current scenario and adds up execution time
+    private void addResult(Result result) {
+        if ( result.getDuration() != null ) {
+            duration = duration + result.getDuration();
+        }
+        if ( scenarioStatus == null || SEVERITY.indexOf(result.getStatus()) > SEVERITY.indexOf(scenarioStatus) ) {
+            scenarioStatus = result.getStatus();
+        }
+    }
+
+
+    public void before(Match match, Result result) {
+        addResult(result);
+        reporter.before(match, result);
+    }
+
+    public void result(Result result) {
+        count(steps, result.getStatus());
+        addResult(result);
+        reporter.result(result);
+    }
+
+    public void after(Match match, Result result) {
+        addResult(result);
+        reporter.after(match, result);
+    }
+
+    public void match(Match match) {
+        reporter.match(match);
+    }
+
+    public void embedding(String mimeType, byte[] data) {
+        reporter.embedding(mimeType, data);
+    }
+
+    public void write(String text) {
+        reporter.write(text);
+    }
+
+
+    public void syntaxError(String state, String event, List<String> legalEvents, String uri, Integer line) {
+        formatter.syntaxError(state, event, legalEvents, uri, line);
+    }
+
+    public void uri(String uri) {
+        this.uri = uri;
+        formatter.uri(uri);
+    }
+
+    public void feature(Feature feature) {
+        formatter.feature(feature);
+    }
+
+    public void scenarioOutline(ScenarioOutline scenarioOutline) {
+        formatter.scenarioOutline(scenarioOutline);
+    }
+
+    public void examples(Examples examples) {
+        formatter.examples(examples);
+    }
+
+    public void startOfScenarioLifeCycle(Scenario scenario) {
+        this.scenario = scenario;
+        this.scenarioStatus = null;
+        formatter.startOfScenarioLifeCycle(scenario);
+    }
+
+    public void background(Background background) {
+        formatter.background(background);
+    }
+
+    public void scenario(Scenario scenario) {
+        formatter.scenario(scenario);
+    }
+
+    public void step(Step step) {
+        formatter.step(step);
+    }
+
+    public void endOfScenarioLifeCycle(Scenario scenario) {
+        String status = scenarioStatus == null ? "passed" : scenarioStatus;
+        count(scenarios, status);
+        if ( ! designations.containsKey(status) ) {
+            designations.put(status, new ArrayList<String>());
+        }
+        designations.get(status).add(uri + ":" + this.scenario.getLine() + " # " + this.scenario.getKeyword() + ": " + this.scenario.getName());
+        formatter.endOfScenarioLifeCycle(scenario);
+    }
+
+    public void done() {
+        formatter.done();
+    }
+
+    public void close() {
+        formatter.close();
+    }
+
+    public void eof() {
+        formatter.eof();
+    }
+}
@@ -4,6 +4,8 @@ public class SSHResult {
     private String stdout;
     private String stderr;
     private Integer exitCode;
+    private long duration;
+    private boolean truncated;
 
 
     /**
@@ -13,9 +15,34 @@ public class SSHResult {
      *
      */
     public SSHResult(String stdout, String stderr, Integer exitCode) {
+        this(stdout, stderr, exitCode, 0);
+    }
+
+
+    /**
+     * Constructor
+     *
+     * Creates new set of SSHResults together with command execution time in ms
+     *
+     */
+    public SSHResult(String stdout, String stderr, Integer exitCode, long duration) {
+        this(stdout, stderr, exitCode, duration, false);
+    }
+
+
+    /**
+     * Constructor
+     *
+     * Creates new set of SSHResults together with command execution time in ms
+     * and information if first lines of the output were dropped
+     *
+     */
+    public SSHResult(String stdout, String stderr, Integer exitCode, long duration, boolean truncated) {
         this.stdout = stdout;
         this.stderr = stderr;
         this.exitCode = exitCode;
+        this.duration = duration;
+        this.truncated = truncated;
     }
 
 
@@ -46,4 +73,24 @@ public class SSHResult {
         return exitCode;
     }
 
+
+    /**
+     *
+     * Returns command execution time in ms
+     *
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+
+    /**
+     *
+     * Returns true if stdout or stderr contains only the last lines of the output
+     *
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
 }
\ No newline at end of file
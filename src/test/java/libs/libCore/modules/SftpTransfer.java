@@ -0,0 +1,573 @@
+package libs.libCore.modules;
+
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.common.IOUtils;
+import net.schmizz.sshj.connection.channel.direct.Session;
+import net.schmizz.sshj.sftp.FileAttributes;
+import net.schmizz.sshj.sftp.OpenMode;
+import net.schmizz.sshj.sftp.RemoteFile;
+import net.schmizz.sshj.sftp.RemoteResourceInfo;
+import net.schmizz.sshj.sftp.SFTPClient;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Transfers files and directory trees via sftp
+ *
+ * Files are split into chunks and chunks are transferred over several sftp channels at the same time,
+ * each channel runs on a connection leased from the pool of the node (see SshPool). Files of a directory tree
+ * are transferred at the same time too, channels take chunks of all files from a single queue.
+ *
+ * File is written as name.part and renamed when all chunks are transferred, so incomplete file is never visible
+ * under its final name. Completed chunks are recorded in a journal, when transfer is interrupted next transfer
+ * of the same file resumes from the journal as long as the source was not modified in the meantime.
+ * When verification is enabled SHA-256 of the transferred file is compared with SHA-256 calculated on the remote host
+ * (sha256sum or shasum has to be available there, otherwise verification is skipped with a warning).
+ */
+public class SftpTransfer {
+
+    private static final int BUFFER_SIZE = 32 * 1024;
+    private static final int UNCONFIRMED_REQUESTS = 16;
+    private static final String PART = ".part";
+
+    private final SshPool pool;
+    private final int channels;
+    private final long chunkSize;
+    private final boolean verify;
+
+    /**
+     * @param pool SshPool, pool of connections to the node
+     * @param channels int, number of sftp channels used at the same time
+     * @param chunkSize long, size of a chunk in bytes
+     * @param verify boolean, switch to verify transferred files with SHA-256
+     */
+    public SftpTransfer(SshPool pool, int channels, long chunkSize, boolean verify) {
+        this.pool = pool;
+        this.channels = Math.max(1, channels);
+        this.chunkSize = Math.max(BUFFER_SIZE, chunkSize);
+        this.verify = verify;
+    }
+
+
+    /**
+     * Downloads file from remote host
+     *
+     * @param remotePath String, path to the file on remote host
+     * @param localFile File, path of the downloaded file, parent directory has to exist
+     *
+     * @return long, number of transferred bytes, chunks resumed from previous transfer are not counted
+     *
+     * @throws IOException when transfer or verification fails
+     */
+    public long download(String remotePath, File localFile) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        SSHClient client = pool.borrow();
+        try (SFTPClient sftp = client.newSFTPClient()) {
+            FileAttributes attributes = sftp.stat(remotePath);
+            jobs.add(newDownload(remotePath, localFile, attributes));
+        } finally {
+            pool.release(client);
+        }
+        return transfer(jobs);
+    }
+
+
+    /**
+     * Downloads directory tree from remote host
+     *
+     * @param remoteDir String, path to the directory on remote host
+     * @param localDir File, directory to which content of remote directory is downloaded, it is created if needed
+     *
+     * @return long, number of transferred bytes, chunks resumed from previous transfer are not counted
+     *
+     * @throws IOException when transfer or verification fails
+     */
+    public long downloadTree(String remoteDir, File localDir) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        SSHClient client = pool.borrow();
+        try (SFTPClient sftp = client.newSFTPClient()) {
+            Deque<String[]> dirs = new ArrayDeque<>();
+            dirs.add(new String[] { remoteDir, localDir.getAbsolutePath() });
+            while ( ! dirs.isEmpty() ) {
+                String[] dir = dirs.poll();
+                Files.createDirectories(new File(dir[1]).toPath());
+                for (RemoteResourceInfo info : sftp.ls(dir[0])) {
+                    File local = new File(dir[1], info.getName());
+                    if ( info.isDirectory() ) {
+                        dirs.add(new String[] { info.getPath(), local.getAbsolutePath() });
+                    } else if ( info.isRegularFile() && ! info.getName().endsWith(PART) ) {
+                        jobs.add(newDownload(info.getPath(), local, info.getAttributes()));
+                    }
+                }
+            }
+        } finally {
+            pool.release(client);
+        }
+        return transfer(jobs);
+    }
+
+
+    /**
+     * Uploads file to remote host
+     *
+     * @param localFile File, file to upload
+     * @param remotePath String, path of the uploaded file on remote host, parent directory has to exist
+     *
+     * @return long, number of transferred bytes, chunks resumed from previous transfer are not counted
+     *
+     * @throws IOException when transfer or verification fails
+     */
+    public long upload(File localFile, String remotePath) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        SSHClient client = pool.borrow();
+        try (SFTPClient sftp = client.newSFTPClient()) {
+            jobs.add(newUpload(sftp, localFile, remotePath));
+        } finally {
+            pool.release(client);
+        }
+        return transfer(jobs);
+    }
+
+
+    /**
+     * Uploads directory tree to remote host
+     *
+     * @param localDir File, directory to upload
+     * @param remoteDir String, directory to which content of local directory is uploaded, it is created if needed
+     *
+     * @return long, number of transferred bytes, chunks resumed from previous transfer are not counted
+     *
+     * @throws IOException when transfer or verification fails
+     */
+    public long uploadTree(File localDir, String remoteDir) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        SSHClient client = pool.borrow();
+        try (SFTPClient sftp = client.newSFTPClient()) {
+            Deque<Object[]> dirs = new ArrayDeque<>();
+            dirs.add(new Object[] { localDir, remoteDir });
+            while ( ! dirs.isEmpty() ) {
+                Object[] dir = dirs.poll();
+                String remote = (String) dir[1];
+                sftp.mkdirs(remote);
+                File[] files = ((File) dir[0]).listFiles();
+                if ( files == null ) {
+                    throw new IOException("Directory " + dir[0] + " can't be read");
+                }
+                for (File file : files) {
+                    if ( file.isDirectory() ) {
+                        dirs.add(new Object[] { file, remote + "/" + file.getName() });
+                    } else if ( file.isFile() ) {
+                        jobs.add(newUpload(sftp, file, remote + "/" + file.getName()));
+                    }
+                }
+            }
+        } finally {
+            pool.release(client);
+        }
+        return transfer(jobs);
+    }
+
+
+    /**
+     * helper function used to prepare download of a single file
+     * Journal is kept next to the part file
+     */
+    private Job newDownload(String remotePath, File localFile, FileAttributes attributes) throws IOException {
+        File part = new File(localFile.getAbsolutePath() + PART);
+        File journal = new File(localFile.getAbsolutePath() + PART + ".journal");
+        Job job = new Job(true, remotePath, localFile, part.getAbsolutePath(), journal,
+                attributes.getSize(), attributes.getMtime());
+        if ( ! job.resume(part.exists()) ) {
+            try (RandomAccessFile file = new RandomAccessFile(part, "rw")) {
+                file.setLength(job.size);
+            }
+        }
+        return job;
+    }
+
+
+    /**
+     * helper function used to prepare upload of a single file
+     * Journal is kept in the temporary directory
+     */
+    private Job newUpload(SFTPClient sftp, File localFile, String remotePath) throws IOException {
+        String part = remotePath + PART;
+        String id = Integer.toHexString((pool + ":" + remotePath + ":" + localFile.getAbsolutePath()).hashCode());
+        File journal = new File(System.getProperty("java.io.tmpdir"), "sftp-" + id + PART + ".journal");
+        Job job = new Job(false, remotePath, localFile, part, journal,
+                localFile.length(), localFile.lastModified() / 1000);
+        if ( ! job.resume(sftp.statExistence(part) != null) ) {
+            sftp.open(part, EnumSet.of(OpenMode.WRITE, OpenMode.CREAT, OpenMode.TRUNC)).close();
+        }
+        return job;
+    }
+
+
+    /**
+     * helper function used to transfer chunks of all jobs over several channels at the same time
+     *
+     * @return long, number of transferred bytes
+     */
+    private long transfer(List<Job> jobs) throws IOException {
+        long start = System.currentTimeMillis();
+        ConcurrentLinkedQueue<Chunk> queue = new ConcurrentLinkedQueue<>();
+        List<Job> transferred = new ArrayList<>();
+        for (Job job : jobs) {
+            List<Chunk> pending = job.pending();
+            if ( pending.isEmpty() ) {
+                transferred.add(job);
+            }
+            queue.addAll(pending);
+        }
+        //all chunks were transferred before but the job was not finished, for example verification or rename failed
+        if ( ! transferred.isEmpty() ) {
+            SSHClient client = pool.borrow();
+            try (SFTPClient sftp = client.newSFTPClient()) {
+                for (Job job : transferred) {
+                    finish(client, sftp, job);
+                }
+            } finally {
+                pool.release(client);
+            }
+        }
+        int workers = Math.max(1, Math.min(channels, queue.size()));
+        Log.debug("Going to transfer " + jobs.size() + " files in " + queue.size() + " chunks over " + workers + " sftp channels");
+
+        //first failure of any channel, all channels stop as soon as it is set
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        List<Future<Long>> results = new ArrayList<>();
+        for (int i = 0; i < workers && ! queue.isEmpty(); i++) {
+            results.add(executor.submit(Log.inContext(() -> work(queue, failure))));
+        }
+        executor.shutdown();
+
+        long bytes = 0;
+        for (Future<Long> result : results) {
+            try {
+                bytes = bytes + result.get();
+            } catch (ExecutionException e) {
+                failure.compareAndSet(null, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, new InterruptedIOException("Interrupted while waiting for sftp transfer"));
+                queue.clear();
+            }
+        }
+        for (Job job : jobs) {
+            job.closeLocal();
+        }
+        if ( failure.get() != null ) {
+            throw failure.get() instanceof IOException ? (IOException) failure.get() : new IOException(failure.get());
+        }
+        for (Job job : jobs) {
+            if ( ! job.finished ) {
+                throw new IOException("Transfer of " + job.localFile + (job.download ? " from " : " to ") + job.remotePath +
+                        " on " + pool + " was not finished");
+            }
+        }
+
+        double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+        Log.debug("Transferred " + bytes + " bytes in " + String.format("%.3f", seconds) + " s (" +
+                String.format("%.1f", bytes / seconds / 1024 / 1024) + " MB/s)");
+        return bytes;
+    }
+
+
+    /**
+     * helper function used by each channel to transfer chunks taken from the queue
+     * Job is finished (verified and renamed) by the channel that transferred its last chunk
+     * When one channel fails it records the failure and all channels stop, also in the middle of a chunk
+     *
+     * @param queue Queue<Chunk>, chunks to transfer
+     * @param failure AtomicReference<Throwable>, first failure of any channel
+     *
+     * @return long, number of transferred bytes
+     */
+    private long work(Queue<Chunk> queue, AtomicReference<Throwable> failure) throws IOException {
+        long bytes = 0;
+        SSHClient client = pool.borrow();
+        try (SFTPClient sftp = client.newSFTPClient()) {
+            Chunk chunk;
+            while ( failure.get() == null && (chunk = queue.poll()) != null ) {
+                Job job = chunk.job;
+                if ( job.download ) {
+                    bytes = bytes + download(sftp, chunk, failure);
+                } else {
+                    bytes = bytes + upload(sftp, chunk, failure);
+                }
+                if ( job.complete(chunk.index) ) {
+                    finish(client, sftp, job);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            failure.compareAndSet(null, e);
+            queue.clear();
+            throw e;
+        } finally {
+            pool.release(client);
+        }
+        return bytes;
+    }
+
+    private static void checkNotFailed(AtomicReference<Throwable> failure) throws InterruptedIOException {
+        if ( failure.get() != null ) {
+            throw new InterruptedIOException("Transfer stopped because another sftp channel failed");
+        }
+    }
+
+    private long download(SFTPClient sftp, Chunk chunk, AtomicReference<Throwable> failure) throws IOException {
+        FileChannel local = chunk.job.openLocal();
+        long position = chunk.from;
+        try (RemoteFile remote = sftp.open(chunk.job.remotePath);
+             InputStream in = remote.new ReadAheadRemoteFileInputStream(UNCONFIRMED_REQUESTS, chunk.from)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while ( position < chunk.to ) {
+                checkNotFailed(failure);
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, chunk.to - position));
+                if ( read < 0 ) {
+                    throw new EOFException("File " + chunk.job.remotePath + " is shorter than expected, it was modified during transfer");
+                }
+                ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+                while ( data.hasRemaining() ) {
+                    position = position + local.write(data, position);
+                }
+            }
+        }
+        return chunk.to - chunk.from;
+    }
+
+    private long upload(SFTPClient sftp, Chunk chunk, AtomicReference<Throwable> failure) throws IOException {
+        FileChannel local = chunk.job.openLocal();
+        long position = chunk.from;
+        try (RemoteFile remote = sftp.open(chunk.job.partPath, EnumSet.of(OpenMode.WRITE));
+             OutputStream out = remote.new RemoteFileOutputStream(chunk.from, UNCONFIRMED_REQUESTS)) {
+            ByteBuffer data = ByteBuffer.allocate(BUFFER_SIZE);
+            while ( position < chunk.to ) {
+                checkNotFailed(failure);
+                data.clear();
+                data.limit((int) Math.min(data.capacity(), chunk.to - position));
+                int read = local.read(data, position);
+                if ( read < 0 ) {
+                    throw new EOFException("File " + chunk.job.localFile + " is shorter than expected, it was modified during transfer");
+                }
+                out.write(data.array(), 0, read);
+                position = position + read;
+            }
+        }
+        return chunk.to - chunk.from;
+    }
+
+
+    /**
+     * helper function used to verify transferred file and rename it to its final name
+     */
+    private void finish(SSHClient client, SFTPClient sftp, Job job) throws IOException {
+        job.closeLocal();
+        String path = job.download ? job.partPath : job.localFile.getAbsolutePath();
+        String remote = job.download ? job.remotePath : job.partPath;
+
+        if ( verify ) {
+            String expected = remoteChecksum(client, remote);
+            if ( expected == null ) {
+                Log.warn("SHA-256 of " + remote + " can't be calculated on " + pool + ", transfer is not verified");
+            } else {
+                String actual = localChecksum(new File(path));
+                if ( ! expected.equalsIgnoreCase(actual) ) {
+                    //next transfer starts from the beginning
+                    Files.deleteIfExists(job.journal.toPath());
+                    if ( job.download ) {
+                        Files.deleteIfExists(new File(job.partPath).toPath());
+                    } else {
+                        sftp.rm(job.partPath);
+                    }
+                    throw new IOException("SHA-256 of " + job.localFile + " and " + job.remotePath + " on " + pool +
+                            " is not equal (" + actual + " != " + expected + ")");
+                }
+            }
+        }
+
+        if ( job.download ) {
+            Files.move(new File(job.partPath).toPath(), job.localFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            if ( sftp.statExistence(job.remotePath) != null ) {
+                sftp.rm(job.remotePath);
+            }
+            sftp.rename(job.partPath, job.remotePath);
+        }
+        Files.deleteIfExists(job.journal.toPath());
+        job.finished = true;
+        Log.debug("File " + job.localFile + (job.download ? " downloaded from " : " uploaded to ") + job.remotePath);
+    }
+
+
+    /**
+     * helper function used to calculate SHA-256 of a file on remote host
+     *
+     * @return String, hex encoded digest, null if it can't be calculated
+     */
+    private static String remoteChecksum(SSHClient client, String path) throws IOException {
+        String quoted = "'" + path.replace("'", "'\\''") + "'";
+        String cmd = "sha256sum " + quoted + " 2>/dev/null || shasum -a 256 " + quoted + " 2>/dev/null";
+        try (Session session = client.startSession()) {
+            Session.Command command = session.exec(cmd);
+            String output = IOUtils.readFully(command.getInputStream()).toString();
+            command.join(60, TimeUnit.SECONDS);
+            Integer exitStatus = command.getExitStatus();
+            if ( exitStatus == null || exitStatus != 0 || output.trim().isEmpty() ) {
+                return null;
+            }
+            return output.trim().split("\\s+")[0];
+        }
+    }
+
+    private static String localChecksum(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ( (read = in.read(buffer)) > 0 ) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StringBuilder result = new StringBuilder();
+        for (byte b : digest.digest()) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+
+
+    /**
+     * helper class used to keep state of a single file transfer
+     */
+    private final class Job {
+
+        private final boolean download;
+        private final String remotePath;
+        private final File localFile;
+        private final String partPath;
+        private final File journal;
+        private final long size;
+        private final long mtime;
+        private final int chunks;
+        private final Set<Integer> done = new HashSet<>();
+        private final AtomicInteger remaining = new AtomicInteger();
+        private FileChannel local;
+        private volatile boolean finished = false;
+
+        Job(boolean download, String remotePath, File localFile, String partPath, File journal, long size, long mtime) {
+            this.download = download;
+            this.remotePath = remotePath;
+            this.localFile = localFile;
+            this.partPath = partPath;
+            this.journal = journal;
+            this.size = size;
+            this.mtime = mtime;
+            //empty file has one empty chunk so it is finished like other files
+            this.chunks = (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+        }
+
+        /**
+         * reads completed chunks from the journal, new journal is created if it does not match the source
+         *
+         * @param partExists boolean, true if part file exists
+         *
+         * @return boolean, true if transfer is resumed
+         */
+        boolean resume(boolean partExists) throws IOException {
+            String header = size + " " + mtime + " " + chunkSize;
+            if ( partExists && journal.exists() ) {
+                List<String> lines = Files.readAllLines(journal.toPath(), StandardCharsets.UTF_8);
+                if ( lines.size() > 0 && lines.get(0).equals(header) ) {
+                    for (String line : lines.subList(1, lines.size())) {
+                        if ( ! line.trim().isEmpty() ) {
+                            done.add(Integer.parseInt(line.trim()));
+                        }
+                    }
+                    remaining.set(chunks - done.size());
+                    Log.debug("Transfer of " + localFile + " resumed, " + done.size() + " of " + chunks + " chunks already transferred");
+                    return true;
+                }
+            }
+            Files.write(journal.toPath(), (header + "\n").getBytes(StandardCharsets.UTF_8));
+            remaining.set(chunks);
+            return false;
+        }
+
+        List<Chunk> pending() {
+            List<Chunk> result = new ArrayList<>();
+            for (int i = 0; i < chunks; i++) {
+                if ( ! done.contains(i) ) {
+                    result.add(new Chunk(this, i, i * chunkSize, Math.min(size, (i + 1) * chunkSize)));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * records completed chunk in the journal
+         *
+         * @return boolean, true if it was the last chunk of the file
+         */
+        boolean complete(int index) throws IOException {
+            synchronized (this) {
+                Files.write(journal.toPath(), (index + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            }
+            return remaining.decrementAndGet() == 0;
+        }
+
+        synchronized FileChannel openLocal() throws IOException {
+            if ( local == null ) {
+                local = download
+                        ? FileChannel.open(new File(partPath).toPath(), StandardOpenOption.WRITE)
+                        : FileChannel.open(localFile.toPath(), StandardOpenOption.READ);
+            }
+            return local;
+        }
+
+        synchronized void closeLocal() throws IOException {
+            if ( local != null ) {
+                local.close();
+                local = null;
+            }
+        }
+    }
+
+
+    /**
+     * helper class used to keep byte range of a file
+     */
+    private static final class Chunk {
+
+        private final Job job;
+        private final int index;
+        private final long from;
+        private final long to;
+
+        Chunk(Job job, int index, long from, long to) {
+            this.job = job;
+            this.index = index;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+}
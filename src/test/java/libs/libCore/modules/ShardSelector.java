@@ -0,0 +1,390 @@
+package libs.libCore.modules;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import cucumber.runtime.junit.FeatureRunner;
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.CucumberTagStatement;
+import org.apache.commons.io.FileUtils;
+import org.junit.runner.Description;
+import org.junit.runner.notification.RunListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Type;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Splits scenarios between multiple test suite executions (shards), for example on different build agents.
+ * Shard is selected via cmd argument -Dshard=i/n, where i is the shard number (starting from 1)
+ * and n is total number of shards.
+ *
+ * Scenarios are distributed using durations recorded in previous runs. Longest scenarios are assigned first,
+ * each one to the shard with the lowest total duration so far. When no history exists scenarios are assigned
+ * in round-robin fashion. Scenario outline is never split between shards.
+ *
+ * History file is read from path provided via cmd argument -Dshard_history or from the system temp directory.
+ * All shards have to use the same history file, otherwise they can select overlapping sets of scenarios.
+ * History is a read-only snapshot for the shards, each shard writes durations it recorded to its own file
+ * (history file name followed by .shard-i-of-n). Shard files are merged into the history after all shards
+ * finished by ShardSelector.main (see README), so shards that start later partition from the same history.
+ * Run without sharding merges its durations into the history file directly.
+ * Merge is done under a lock of history file name.lock.
+ */
+public class ShardSelector {
+
+    private static final String TMP_DIR_PATH = System.getProperty("java.io.tmpdir");
+    private static final String HISTORY_FILE_NAME = "SAF_Scenario_Durations.json";
+
+    private final int index;
+    private final int total;
+
+    public ShardSelector(int index, int total) {
+        this.index = index;
+        this.total = total;
+    }
+
+
+    /**
+     * Creates shard selector based on cmd argument -Dshard=i/n
+     *
+     * @return ShardSelector or null if sharding was not requested
+     *
+     * @throws IllegalArgumentException when value of the cmd argument is not valid
+     */
+    public static ShardSelector fromSystemProperties() {
+        String cmd_arg = System.getProperty("shard");
+        if ( cmd_arg == null || cmd_arg.trim().equals("") ) {
+            return null;
+        }
+
+        String[] tmp = cmd_arg.trim().split("/");
+        int index = 0;
+        int total = 0;
+        try {
+            if ( tmp.length == 2 ) {
+                index = Integer.parseInt(tmp[0].trim());
+                total = Integer.parseInt(tmp[1].trim());
+            }
+        } catch (NumberFormatException e) {
+            //handled below
+        }
+        if ( total < 1 || index < 1 || index > total ) {
+            throw new IllegalArgumentException("Wrong value of cmd argument -Dshard=" + cmd_arg + ". Expected is i/n where 1 <= i <= n");
+        }
+
+        return new ShardSelector(index, total);
+    }
+
+
+    /**
+     * Returns history file with durations of scenarios recorded in previous runs
+     *
+     * @return File
+     */
+    public static File getHistoryFile() {
+        String cmd_arg = System.getProperty("shard_history");
+        if ( cmd_arg != null && ! cmd_arg.trim().equals("") ) {
+            return new File(cmd_arg.trim());
+        }
+
+        return new File(TMP_DIR_PATH + File.separator + HISTORY_FILE_NAME);
+    }
+
+
+    /**
+     * Returns file to which durations recorded by this shard are written
+     *
+     * @return File
+     */
+    public File getShardFile() {
+        File history = getHistoryFile();
+        return new File(history.getAbsoluteFile().getParentFile(), history.getName() + ".shard-" + index + "-of-" + total);
+    }
+
+
+    /**
+     * Merges durations recorded by shards into the history file and removes shard files
+     * It shall be executed when all shards finished, for example as a separate build step
+     *
+     * @param args String[], not used, history file is taken from cmd argument -Dshard_history
+     */
+    public static void main(String[] args) {
+        File history = getHistoryFile();
+        File[] shardFiles = history.getAbsoluteFile().getParentFile().listFiles((dir, name) ->
+                name.startsWith(history.getName() + ".shard-"));
+        if ( shardFiles == null || shardFiles.length == 0 ) {
+            Log.info("No shard durations found next to " + history.getAbsolutePath());
+            return;
+        }
+
+        Map<String, Long> durations = new HashMap<>();
+        for (File shardFile : shardFiles) {
+            durations.putAll(readHistory(shardFile));
+        }
+        if ( mergeHistory(history, durations) ) {
+            for (File shardFile : shardFiles) {
+                shardFile.delete();
+            }
+        }
+    }
+
+
+    /**
+     * Merges durations into the history file
+     * File is locked so concurrent merges do not lose updates and replaced atomically so it is never read half written
+     *
+     * @param file File, history file
+     * @param durations Map<String, Long>, scenario key to duration in ms mapping
+     *
+     * @return boolean, true if history was written
+     */
+    public static boolean mergeHistory(File file, Map<String, Long> durations) {
+        File lockFile = new File(file.getAbsolutePath() + ".lock");
+        try (FileChannel channel = new RandomAccessFile(lockFile, "rw").getChannel()) {
+            //lock is released when channel is closed
+            channel.lock();
+            Map<String, Long> history = new TreeMap<>(readHistory(file));
+            history.putAll(durations);
+            writeHistory(file, history);
+            Log.debug("Scenario durations merged into " + file.getAbsolutePath());
+            return true;
+        } catch (IOException e) {
+            Log.warn("Can't write scenario durations history to " + file.getAbsolutePath() + ". " + e.getMessage());
+        }
+        return false;
+    }
+
+    private static void writeHistory(File file, Map<String, Long> durations) throws IOException {
+        String content = new GsonBuilder().setPrettyPrinting().create().toJson(new TreeMap<>(durations));
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        FileUtils.writeStringToFile(tmp, content, "UTF-8");
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+
+    /**
+     * Returns unique key of particular scenario or scenario outline
+     * It is used to identify scenarios in the history file
+     *
+     * @param feature CucumberFeature, feature that contains the scenario
+     * @param element CucumberTagStatement, scenario or scenario outline
+     *
+     * @return String
+     */
+    public static String getKey(CucumberFeature feature, CucumberTagStatement element) {
+        return feature.getPath() + ":" + element.getVisualName();
+    }
+
+
+    /**
+     * Removes from the features all scenarios that do not belong to this shard
+     * Features without any scenario left are removed as well
+     *
+     * @param features List<CucumberFeature>, features as loaded by cucumber
+     *
+     * @return List<CucumberFeature>, features to be executed by this shard
+     */
+    public List<CucumberFeature> select(List<CucumberFeature> features) {
+        Map<String, Long> history = readHistory(getHistoryFile());
+
+        //collect all scenarios in a stable order
+        List<String> keys = new ArrayList<>();
+        for (CucumberFeature feature : features) {
+            for (CucumberTagStatement element : feature.getFeatureElements()) {
+                keys.add(getKey(feature, element));
+            }
+        }
+        Collections.sort(keys);
+
+        Set<String> selected = new HashSet<>();
+        Long known = 0L;
+        Integer knownCount = 0;
+        for (String key : keys) {
+            if ( history.containsKey(key) ) {
+                known = known + history.get(key);
+                knownCount++;
+            }
+        }
+
+        if ( knownCount == 0 ) {
+            Log.info("No scenario durations history found. Scenarios are going to be assigned to shards in round-robin fashion");
+            for (int i = 0; i < keys.size(); i++) {
+                if ( i % total == index - 1 ) {
+                    selected.add(keys.get(i));
+                }
+            }
+        } else {
+            //scenarios without history are assumed to take an average time
+            final Map<String, Long> durations = new HashMap<>();
+            Long average = known / knownCount;
+            for (String key : keys) {
+                Long duration = history.get(key);
+                durations.put(key, duration != null ? duration : average);
+            }
+
+            List<String> sorted = new ArrayList<>(keys);
+            Collections.sort(sorted, new Comparator<String>() {
+                public int compare(String a, String b) {
+                    int result = durations.get(b).compareTo(durations.get(a));
+                    if ( result == 0 ) {
+                        result = a.compareTo(b);
+                    }
+                    return result;
+                }
+            });
+
+            long[] load = new long[total];
+            long expected = 0;
+            for (String key : sorted) {
+                int shard = 0;
+                for (int i = 1; i < total; i++) {
+                    if ( load[i] < load[shard] ) {
+                        shard = i;
+                    }
+                }
+                load[shard] = load[shard] + durations.get(key);
+                if ( shard == index - 1 ) {
+                    selected.add(key);
+                    expected = expected + durations.get(key);
+                }
+            }
+            Log.info("Expected duration of shard " + index + "/" + total + " is " + expected / 1000 + " s");
+        }
+
+        List<CucumberFeature> result = new ArrayList<>();
+        for (CucumberFeature feature : features) {
+            Iterator<CucumberTagStatement> iterator = feature.getFeatureElements().iterator();
+            while ( iterator.hasNext() ) {
+                if ( ! selected.contains(getKey(feature, iterator.next())) ) {
+                    iterator.remove();
+                }
+            }
+            if ( feature.getFeatureElements().size() > 0 ) {
+                result.add(feature);
+            }
+        }
+        Log.info("Shard " + index + "/" + total + " is going to execute " + selected.size()
+                + " of " + keys.size() + " scenarios");
+
+        return result;
+    }
+
+
+    /**
+     * Reads durations of scenarios from the history file
+     *
+     * @param file File, history file
+     *
+     * @return Map<String, Long>, scenario key to duration in ms mapping
+     */
+    public static Map<String, Long> readHistory(File file) {
+        Map<String, Long> result = new HashMap<>();
+        if ( ! file.exists() ) {
+            return result;
+        }
+        try {
+            Type type = new TypeToken<HashMap<String, Long>>(){}.getType();
+            Map<String, Long> tmp = new Gson().fromJson(FileUtils.readFileToString(file, "UTF-8"), type);
+            if ( tmp != null ) {
+                result.putAll(tmp);
+            }
+        } catch (IOException | JsonSyntaxException e) {
+            Log.warn("Can't read scenario durations history from " + file.getAbsolutePath());
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Junit listener used to record duration of each scenario
+     * When test suite execution is over durations are written to the shard file or,
+     * when sharding is not used, merged with the history file
+     */
+    public static class DurationRecorder extends RunListener {
+
+        private final Map<Description, String> keys = new HashMap<>();
+        private final Map<Description, Long> started = new ConcurrentHashMap<>();
+        private final Map<String, Long> durations = new ConcurrentHashMap<>();
+        private final ShardSelector shard;
+
+        /**
+         * @param runners Map<FeatureRunner, CucumberFeature>, feature runners and features they execute
+         * @param shard ShardSelector, shard executed by this run or null if sharding is not used
+         */
+        public DurationRecorder(Map<FeatureRunner, CucumberFeature> runners, ShardSelector shard) {
+            this.shard = shard;
+            for (Map.Entry<FeatureRunner, CucumberFeature> entry : runners.entrySet()) {
+                CucumberFeature feature = entry.getValue();
+                List<Description> elements = entry.getKey().getDescription().getChildren();
+                List<CucumberTagStatement> statements = feature.getFeatureElements();
+                for (int i = 0; i < elements.size() && i < statements.size(); i++) {
+                    String key = getKey(feature, statements.get(i));
+                    //scenario outline examples are summed up under the outline
+                    addKey(elements.get(i), key);
+                }
+            }
+        }
+
+        private void addKey(Description description, String key) {
+            keys.put(description, key);
+            for (Description child : description.getChildren()) {
+                if ( child.isSuite() ) {
+                    addKey(child, key);
+                }
+            }
+        }
+
+        @Override
+        public void testStarted(Description description) {
+            if ( keys.containsKey(description) ) {
+                started.put(description, System.currentTimeMillis());
+            }
+        }
+
+        @Override
+        public void testFinished(Description description) {
+            Long start = started.remove(description);
+            if ( start != null ) {
+                String key = keys.get(description);
+                Long duration = System.currentTimeMillis() - start;
+                Long previous = durations.get(key);
+                durations.put(key, previous == null ? duration : previous + duration);
+            }
+        }
+
+        /**
+         * Writes recorded durations to the shard file or merges them with the history file
+         */
+        public void save() {
+            if ( durations.size() == 0 ) {
+                return;
+            }
+            if ( shard == null ) {
+                mergeHistory(getHistoryFile(), durations);
+                return;
+            }
+            //history is not modified by shards, it is merged when all of them finished
+            File file = shard.getShardFile();
+            try {
+                writeHistory(file, durations);
+                Log.debug("Scenario durations stored in " + file.getAbsolutePath());
+            } catch (IOException e) {
+                Log.warn("Can't write scenario durations to " + file.getAbsolutePath() + ". " + e.getMessage());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,306 @@
+package libs.libCore.modules;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Copy-on-write view of a configuration storage
+ *
+ * Global configuration is parsed once and kept as an immutable tree. Each scenario gets its own
+ * SnapshotHashMap on top of it. Only one level of the tree is copied at a time. Nested maps and lists
+ * are copied when they are accessed for the first time, so local config files, macro evaluation
+ * and Storage.set can modify the view without touching the shared tree or cloning all of it.
+ *
+ * Code that only reads the tree, like macro evaluation looking for macros, can use peek to get a value
+ * without copying it and call get only for the branch it is going to modify.
+ *
+ * It extends HashMap because storages are kept in the context as HashMap objects.
+ * All write paths of HashMap and of its key, value and entry views go through the copy-on-write bookkeeping.
+ */
+public class SnapshotHashMap extends HashMap<String, Object> {
+
+    private static final long serialVersionUID = 1L;
+
+    //keys which values are still shared with the immutable tree
+    private Set<String> shared = new HashSet<>();
+
+    /**
+     * Creates new view on top of the map
+     *
+     * @param base Map, map that shall not be modified
+     */
+    public SnapshotHashMap(Map<String, Object> base) {
+        super(Math.max(16, (int) (base.size() / .75f) + 1));
+        for (Map.Entry<String, Object> entry : base.entrySet()) {
+            super.put(entry.getKey(), entry.getValue());
+            if ( entry.getValue() instanceof Map || entry.getValue() instanceof List ) {
+                shared.add(entry.getKey());
+            }
+        }
+    }
+
+
+    /**
+     * Makes an immutable copy of a configuration tree
+     * Nested maps and lists are copied as well
+     *
+     * @param map Map, configuration tree
+     *
+     * @return Map
+     */
+    public static Map<String, Object> freeze(Map<String, Object> map) {
+        Map<String, Object> result = new HashMap<>();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            result.put(entry.getKey(), freezeValue(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static Object freezeValue(Object value) {
+        if ( value instanceof Map ) {
+            return freeze(asMap(value));
+        } else if ( value instanceof List ) {
+            List<Object> result = new ArrayList<>();
+            for (Object item : (List<?>) value) {
+                result.add(freezeValue(item));
+            }
+            return Collections.unmodifiableList(result);
+        }
+        return value;
+    }
+
+
+    /**
+     * Copies value shared with the immutable tree
+     * Maps are copied lazily, lists are copied with their content
+     *
+     * @param value Object
+     *
+     * @return Object
+     */
+    private static Object copyValue(Object value) {
+        if ( value instanceof Map ) {
+            return new SnapshotHashMap(asMap(value));
+        } else if ( value instanceof List ) {
+            List<?> list = (List<?>) value;
+            ArrayList<Object> result = new ArrayList<>(list.size());
+            for (Object item : list) {
+                result.add(copyValue(item));
+            }
+            return result;
+        }
+        return value;
+    }
+
+    //nested maps of the configuration tree always have String keys
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object value) {
+        return (Map<String, Object>) value;
+    }
+
+
+    /**
+     * helper function used to replace shared value with its private copy
+     *
+     * @param key Object
+     */
+    private void materialize(Object key) {
+        if ( shared.remove(key) && super.containsKey(key) ) {
+            super.put((String) key, copyValue(super.get(key)));
+        }
+    }
+
+    private void materializeAll() {
+        if ( shared.size() > 0 ) {
+            for (String key : new ArrayList<>(shared)) {
+                materialize(key);
+            }
+        }
+    }
+
+    /**
+     * Returns value without copying it
+     * Nested maps and lists that are still shared with the immutable tree can't be modified
+     *
+     * @param key Object
+     *
+     * @return Object
+     */
+    public Object peek(Object key) {
+        return super.get(key);
+    }
+
+    @Override
+    public Object get(Object key) {
+        materialize(key);
+        return super.get(key);
+    }
+
+    @Override
+    public Object getOrDefault(Object key, Object defaultValue) {
+        materialize(key);
+        return super.getOrDefault(key, defaultValue);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        shared.remove(key);
+        return super.put(key, value);
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ?> m) {
+        for (Map.Entry<? extends String, ?> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public Object putIfAbsent(String key, Object value) {
+        materialize(key);
+        return super.putIfAbsent(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        shared.remove(key);
+        return super.remove(key);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        materialize(key);
+        return super.remove(key, value);
+    }
+
+    @Override
+    public Object replace(String key, Object value) {
+        materialize(key);
+        return super.replace(key, value);
+    }
+
+    @Override
+    public boolean replace(String key, Object oldValue, Object newValue) {
+        materialize(key);
+        return super.replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public void clear() {
+        shared.clear();
+        super.clear();
+    }
+
+    /**
+     * Removal via the key set (or its iterator) also removes the key from shared keys
+     */
+    @Override
+    public Set<String> keySet() {
+        final Set<String> keys = super.keySet();
+        return new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                final Iterator<String> it = keys.iterator();
+                return new Iterator<String>() {
+                    private String current;
+
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    public String next() {
+                        current = it.next();
+                        return current;
+                    }
+
+                    public void remove() {
+                        it.remove();
+                        shared.remove(current);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return keys.contains(o);
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                boolean removed = keys.remove(o);
+                shared.remove(o);
+                return removed;
+            }
+
+            @Override
+            public void clear() {
+                SnapshotHashMap.this.clear();
+            }
+        };
+    }
+
+    //values and entries can be modified only after all shared values were copied, shared keys are empty afterwards
+    @Override
+    public Collection<Object> values() {
+        materializeAll();
+        return super.values();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        materializeAll();
+        return super.entrySet();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super Object> action) {
+        materializeAll();
+        super.forEach(action);
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super String, ? super Object, ?> function) {
+        materializeAll();
+        super.replaceAll(function);
+    }
+
+    @Override
+    public Object computeIfAbsent(String key, Function<? super String, ?> mappingFunction) {
+        materialize(key);
+        return super.computeIfAbsent(key, mappingFunction);
+    }
+
+    @Override
+    public Object computeIfPresent(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        materialize(key);
+        return super.computeIfPresent(key, remappingFunction);
+    }
+
+    @Override
+    public Object compute(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        materialize(key);
+        return super.compute(key, remappingFunction);
+    }
+
+    @Override
+    public Object merge(String key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        materialize(key);
+        return super.merge(key, value, remappingFunction);
+    }
+
+    @Override
+    public Object clone() {
+        materializeAll();
+        SnapshotHashMap result = (SnapshotHashMap) super.clone();
+        result.shared = new HashSet<>();
+        return result;
+    }
+
+}
@@ -1,23 +1,42 @@
 package libs.libCore.modules;
 
+import com.opencsv.CSVParser;
+import com.opencsv.CSVParserBuilder;
 import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
 import org.apache.commons.dbutils.QueryRunner;
 import org.apache.commons.dbutils.handlers.MapListHandler;
 import org.apache.commons.dbutils.handlers.ScalarHandler;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.lang.BooleanUtils;
 import org.apache.commons.lang.StringUtils;
 
 import java.io.*;
 import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class SqlCore {
 
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int DEFAULT_SLOW_QUERY_THRESHOLD = 1000;
+    private static final Pattern TIME_PATTERN = Pattern.compile("\\d\\d:\\d\\d:\\d\\d"); // not perfect but good enough;)
+
+    private final QueryRunner runner = new QueryRunner();
+    private final QueryMetrics metrics = QueryMetrics.forScenario();
     private SharedContext ctx;
     private FileCore FileCore;
     private Connection Sql;
@@ -34,15 +53,19 @@ public class SqlCore {
     /**
      * Opens new jdbc connection using params from the configuration Environment.Active.Jdbc
      * and Environment.Active.JdbcDrivers
+     * Connection is taken from the pool shared by all scenarios, see DBConnector
      *
      */
     public void open(){
+        //give back connection that is already open, if any
+        close();
         Sql = new DBConnector(ctx).create();
     }
 
 
     /**
      * Closes open jdbc connection
+     * Connection is given back to the pool
      *
      */
     public void close() {
@@ -53,30 +76,45 @@ public class SqlCore {
                 Log.debug("Db connection cleanup done");
             } catch (SQLException e) {
                 Log.error("", e);
+            } finally {
+                Sql = null;
             }
         }
     }
 
     /**
      * Executes sql select statement and returns results in the for of a DataTable (List of Maps)
+     * Query can contain ? placeholders, their values are bound as parameters
+     * Prepared statements are cached per connection so the same query is parsed by the data base only once
      *
      * @param SqlQuery String, query to be executed
+     * @param params Object..., values of ? placeholders in the query, if any
      * @return List<Map<String,Object>>
      */
-    public List<Map<String,Object>> selectList (String SqlQuery) {
+    public List<Map<String,Object>> selectList (String SqlQuery, Object... params) {
 
-        Log.debug("Going to execute Sql query " + SqlQuery);
+        Log.debug("Going to execute Sql query " + SqlQuery + paramsToString(params));
         //MapListHandler: Multiple rows of data will be returned by the Sql query
         // Each row of data will be encapsulated into a Map,
         // and then stored in the List
-        QueryRunner runner = new QueryRunner();
         List<Map<String,Object>> list = null;
+        long bytes = 0;
+        boolean failed = true;
+        long start = System.nanoTime();
 
         try {
-            list = runner.query(Sql, SqlQuery, new MapListHandler());
+            list = runner.query(Sql, SqlQuery, new MapListHandler(), params);
+            for (Map<String, Object> row : list) {
+                for (Object value : row.values()) {
+                    bytes = bytes + QueryMetrics.sizeOf(value);
+                }
+            }
+            failed = false;
             Log.debug("Sql query executed");
         } catch (SQLException e) {
             Log.error( "", e );
+        } finally {
+            record(QueryMetrics.Kind.SELECT, SqlQuery, start, list == null ? 0 : list.size(), bytes, failed);
         }
 
         return list;
@@ -84,29 +122,226 @@ public class SqlCore {
 
 
     /**
-     * Prints result of sql select query to the log file
+     * Executes sql select statement and pushes rows one by one to the consumers
+     * Rows are not kept in memory so it can be used for queries that return a lot of data
+     * Number of rows fetched from the data base at once is taken from Environment.Active.Jdbc.fetchSize
      *
-     * @param list List<Map<String, Object>>, list as returned by method selectList
+     * @param SqlQuery String, query to be executed
+     * @param consumers RowConsumer..., consumers of rows, like RowConsumer.toWriter or RowConsumer.Digest
+     *
+     * @return long, number of rows
      */
-    public void printList(List<Map<String, Object>> list) {
+    public long select (String SqlQuery, RowConsumer... consumers) {
+        return select(SqlQuery, getFetchSize(), new Object[0], consumers);
+    }
 
-        if ( list.size() > 0 ) {
-            //print header
-            Map<String, Object> firstRow = list.get(0);
-            String header = "";
-            for (Map.Entry<String, Object> lme : firstRow.entrySet()) {
-                header = header + ", " + lme.getKey();
-            }
-            Log.debug(header.substring(2));
 
-            //print rows
-            for (Map<String, Object> map : list) {
-                String row = "";
-                for (Map.Entry<String, Object> lme : map.entrySet()) {
-                    row = row + ", " + lme.getValue();
+    /**
+     * Executes sql select statement with ? placeholders and pushes rows one by one to the consumers
+     * Rows are not kept in memory so it can be used for queries that return a lot of data
+     * Number of rows fetched from the data base at once is taken from Environment.Active.Jdbc.fetchSize
+     *
+     * @param SqlQuery String, query to be executed
+     * @param params Object[], values of ? placeholders in the query
+     * @param consumers RowConsumer..., consumers of rows, like RowConsumer.toWriter or RowConsumer.Digest
+     *
+     * @return long, number of rows
+     */
+    public long select (String SqlQuery, Object[] params, RowConsumer... consumers) {
+        return select(SqlQuery, getFetchSize(), params, consumers);
+    }
+
+    private int getFetchSize() {
+        Integer fetchSize = Storage.get("Environment.Active.Jdbc.fetchSize");
+        if ( fetchSize == null ) {
+            fetchSize = DEFAULT_FETCH_SIZE;
+        }
+        return fetchSize;
+    }
+
+
+    /**
+     * Executes sql select statement and pushes rows one by one to the consumers
+     * Rows are not kept in memory so it can be used for queries that return a lot of data
+     *
+     * @param SqlQuery String, query to be executed
+     * @param fetchSize int, number of rows fetched from the data base at once
+     * @param consumers RowConsumer..., consumers of rows, like RowConsumer.toWriter or RowConsumer.Digest
+     *
+     * @return long, number of rows
+     */
+    public long select (String SqlQuery, int fetchSize, RowConsumer... consumers) {
+        return select(SqlQuery, fetchSize, new Object[0], consumers);
+    }
+
+
+    /**
+     * Executes sql select statement with ? placeholders and pushes rows one by one to the consumers
+     * Rows are not kept in memory so it can be used for queries that return a lot of data
+     *
+     * @param SqlQuery String, query to be executed
+     * @param fetchSize int, number of rows fetched from the data base at once
+     * @param params Object[], values of ? placeholders in the query
+     * @param consumers RowConsumer..., consumers of rows, like RowConsumer.toWriter or RowConsumer.Digest
+     *
+     * @return long, number of rows
+     */
+    public long select (String SqlQuery, int fetchSize, Object[] params, RowConsumer... consumers) {
+
+        Log.debug("Going to execute Sql query " + SqlQuery + paramsToString(params) + " with fetch size " + fetchSize);
+        long count = 0;
+        long bytes = 0;
+        boolean failed = true;
+        long start = System.nanoTime();
+
+        try (PreparedStatement st = Sql.prepareStatement(SqlQuery)) {
+            st.setFetchSize(fetchSize);
+            runner.fillStatement(st, params);
+            try (ResultSet rs = st.executeQuery()) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                String[] columns = new String[metaData.getColumnCount()];
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i] = metaData.getColumnLabel(i + 1);
+                }
+                for (RowConsumer consumer : consumers) {
+                    consumer.begin(columns);
+                }
+
+                Object[] row = new Object[columns.length];
+                while ( rs.next() ) {
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = rs.getObject(i + 1);
+                        bytes = bytes + QueryMetrics.sizeOf(row[i]);
+                    }
+                    for (RowConsumer consumer : consumers) {
+                        consumer.accept(row);
+                    }
+                    count++;
+                }
+
+                for (RowConsumer consumer : consumers) {
+                    consumer.end(count);
                 }
-                Log.debug(row.substring(2));
             }
+            failed = false;
+            Log.debug("Sql query executed, " + count + " rows read");
+        } catch (SQLException e) {
+            Log.error( "", e );
+        } catch (IOException e) {
+            Log.error( "Consumer of query results failed", e );
+        } finally {
+            record(QueryMetrics.Kind.SELECT, SqlQuery, start, count, bytes, failed);
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Executes sql select statement and writes results to a file in the same format as writeListToFile
+     * Rows are not kept in memory so it can be used for queries that return a lot of data
+     *
+     * @param SqlQuery String, query to be executed
+     * @param FileName String, name of the file where results will be stored
+     * @param FileExtension String, extension of the file where results will be stored
+     * @param consumers RowConsumer..., additional consumers of rows, like RowConsumer.toLog
+     *
+     * @return File
+     */
+    public File selectToFile (String SqlQuery, String FileName, String FileExtension, RowConsumer... consumers) {
+        return selectToFile(SqlQuery, FileName, FileExtension, ResultExporter.Format.TEXT, consumers);
+    }
+
+
+    /**
+     * Executes sql select statement and writes results to a file in particular format
+     * Rows are not kept in memory so it can be used for queries that return a lot of data
+     *
+     * @param SqlQuery String, query to be executed
+     * @param FileName String, name of the file where results will be stored
+     * @param FileExtension String, extension of the file where results will be stored
+     * @param format ResultExporter.Format, format of the file, like CSV, TSV or JSONL
+     * @param consumers RowConsumer..., additional consumers of rows, like RowConsumer.toLog
+     *
+     * @return File
+     */
+    public File selectToFile (String SqlQuery, String FileName, String FileExtension, ResultExporter.Format format, RowConsumer... consumers) {
+
+        File temp = FileCore.createTempFile(FileName,FileExtension);
+        Log.debug("Results stored in " + temp.getAbsolutePath());
+
+        try (Writer out = openWriter(temp)) {
+            RowConsumer[] all = Arrays.copyOf(consumers, consumers.length + 1);
+            all[consumers.length] = new ResultExporter(out, format);
+            select(SqlQuery, all);
+        } catch (IOException e) {
+            Log.error( "", e );
+        }
+
+        return temp;
+    }
+
+
+    /**
+     * helper function used to open buffered writer to a file
+     *
+     * @param file File
+     *
+     * @return Writer
+     *
+     * @throws IOException when file can't be open
+     */
+    private Writer openWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+
+    /**
+     * Compares content of two tables, see TableDiff
+     * Differences are reported in both directions, tables are never loaded into memory as a whole
+     * Second connection is taken from the connection pool so both tables can be read at the same time
+     *
+     * @param tableA String, name of the table A
+     * @param tableB String, name of the table B
+     * @param keyColumns String..., names of key columns, all columns are used if not provided
+     *
+     * @return TableDiff.Result
+     */
+    public TableDiff.Result compareTables (String tableA, String tableB, String... keyColumns) {
+
+        Log.debug("Going to compare content of tables " + tableA + " and " + tableB);
+        TableDiff.Result result = null;
+        boolean failed = true;
+        long start = System.nanoTime();
+        ConnectionPool pool = new DBConnector(ctx).getPool(Storage.get("Environment.Active.Jdbc.url"));
+
+        try (Connection second = pool.getConnection()) {
+            result = new TableDiff(Sql, second, getFetchSize()).compare(tableA, tableB, keyColumns);
+            failed = false;
+            Log.debug("Tables compared, " + result.getCountOnlyInA() + " rows only in " + tableA +
+                    ", " + result.getCountOnlyInB() + " rows only in " + tableB);
+        } catch (SQLException e) {
+            Log.error( "", e );
+        } finally {
+            //rows are the differences found
+            record(QueryMetrics.Kind.COMPARE, "compare " + tableA + " with " + tableB, start,
+                    result == null ? 0 : result.getCountOnlyInA() + result.getCountOnlyInB(), 0, failed);
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Prints result of sql select query to the log file
+     *
+     * @param list List<Map<String, Object>>, list as returned by method selectList
+     */
+    public void printList(List<Map<String, Object>> list) {
+        try {
+            ResultExporter.feed(list, RowConsumer.toLog());
+        } catch (IOException e) {
+            Log.error( "", e );
         }
     }
 
@@ -118,32 +353,30 @@ public class SqlCore {
      * @return String
      */
     public String listToString(List<Map<String, Object>> list) {
+        return listToString(list, ResultExporter.Format.TEXT);
+    }
 
-        String result = null;
-        String n = System.lineSeparator();
 
-        if ( list.size() > 0 ) {
-            //append header to string
-            Map<String, Object> firstRow = list.get(0);
-            String header = "";
-            for (Map.Entry<String, Object> lme : firstRow.entrySet()) {
-                header = header + ", " + lme.getKey();
-            }
-            result = header + n;
+    /**
+     * creates String in particular format from the list returned by selectList method
+     *
+     * @param list List<Map<String, Object>>, list as returned by method selectList
+     * @param format ResultExporter.Format, format of the result, like CSV, TSV or JSONL
+     * @return String, null if list is empty
+     */
+    public String listToString(List<Map<String, Object>> list, ResultExporter.Format format) {
 
-            //append rows to string
-            for (Map<String, Object> map : list) {
-                String row = "";
-                for (Map.Entry<String, Object> lme : map.entrySet()) {
-                    row = row + ", " + lme.getValue();
-                }
-                result = result + row + n;
+        if ( list.size() > 0 ) {
+            StringWriter result = new StringWriter();
+            try {
+                ResultExporter.export(list, result, format);
+            } catch (IOException e) {
+                Log.error( "", e );
             }
-
-            return result.trim();
+            return result.toString().trim();
         }
 
-        return result;
+        return null;
     }
 
 
@@ -157,32 +390,30 @@ public class SqlCore {
      * @return File
      */
     public File writeListToFile(List<Map<String, Object>> list, String FileName, String FileExtension) {
+        return writeListToFile(list, FileName, FileExtension, ResultExporter.Format.TEXT);
+    }
 
-        File temp = FileCore.createTempFile(FileName,FileExtension);
-        Log.debug("Results stored in " + temp.getAbsolutePath());
-
-        if ( list.size() > 0 ) {
-            //write header to file
-            Map<String, Object> firstRow = list.get(0);
-            String header = "";
-            for (Map.Entry<String, Object> lme : firstRow.entrySet()) {
-                header = header + ", " + lme.getKey();
-            }
-            FileCore.writeToFile(temp, header.substring(2) + System.getProperty("line.separator"));
 
-            //append rows to file
-            for (Map<String, Object> map : list) {
-                String row = "";
-                for (Map.Entry<String, Object> lme : map.entrySet()) {
-                    row = row + ", " + lme.getValue();
-                }
-                FileCore.appendToFile(temp, row.substring(2) + System.getProperty("line.separator"));
-            }
+    /**
+     * writes to file results of the sql select query returned by method selectList in particular format
+     * File is written in a single pass through one buffered writer
+     *
+     * @param list List<Map<String, Object>>, list as returned by method selectList
+     * @param FileName String, name of the file where results will be stored
+     * @param FileExtension String, extension of the file where results will be stored
+     * @param format ResultExporter.Format, format of the file, like CSV, TSV or JSONL
+     *
+     * @return File
+     */
+    public File writeListToFile(List<Map<String, Object>> list, String FileName, String FileExtension, ResultExporter.Format format) {
 
-            return temp;
+        File temp = FileCore.createTempFile(FileName,FileExtension);
+        Log.debug("Results stored in " + temp.getAbsolutePath());
 
-        } else {
-            FileCore.appendToFile(temp, "" + System.getProperty("line.separator"));
+        try (Writer out = openWriter(temp)) {
+            ResultExporter.export(list, out, format);
+        } catch (IOException e) {
+            Log.error( "", e );
         }
 
         return temp;
@@ -192,23 +423,29 @@ public class SqlCore {
     /**
      * Executes sql select statement and returns scalar
      * Shall be used for queries where grouping function are used like count() or sum(), min(), max() etc.
+     * Query can contain ? placeholders, their values are bound as parameters
      *
      * @param SqlQuery String, query to be executed
+     * @param params Object..., values of ? placeholders in the query, if any
      * @return Integer
      */
-    public Integer selectScalar (String SqlQuery) {
+    public Integer selectScalar (String SqlQuery, Object... params) {
 
-        Log.debug("Going to execute Sql query " + SqlQuery);
+        Log.debug("Going to execute Sql query " + SqlQuery + paramsToString(params));
         //ScalarHandler: Single value of data will be returned by the Sql query
         ScalarHandler<Integer> scalarHandler = new ScalarHandler<>();
-        QueryRunner runner = new QueryRunner();
         Integer scalar = null;
+        boolean failed = true;
+        long start = System.nanoTime();
 
         try {
-            scalar = runner.query(Sql, SqlQuery, scalarHandler);
+            scalar = runner.query(Sql, SqlQuery, scalarHandler, params);
+            failed = false;
             Log.debug("Sql query executed");
         } catch (SQLException e) {
             Log.error("", e );
+        } finally {
+            record(QueryMetrics.Kind.SCALAR, SqlQuery, start, scalar == null ? 0 : 1, QueryMetrics.sizeOf(scalar), failed);
         }
 
         return scalar;
@@ -218,22 +455,29 @@ public class SqlCore {
     /**
      * Executes sql insert statement and returns scalar indicating how many rows where inserted
      * to the table
+     * Query can contain ? placeholders, their values are bound as parameters
      *
      * @param SqlQuery String, query to be executed
+     * @param params Object..., values of ? placeholders in the query, if any
      * @return Integer
      */
-    public Integer insert (String SqlQuery) {
+    public Integer insert (String SqlQuery, Object... params) {
 
-        Log.debug("Going to execute Sql insert " + SqlQuery);
+        Log.debug("Going to execute Sql insert " + SqlQuery + paramsToString(params));
         ScalarHandler<Integer> scalarHandler = new ScalarHandler<>();
         Integer scalar = null;
-        QueryRunner runner = new QueryRunner();
+        boolean failed = true;
+        long start = System.nanoTime();
 
         try {
-            scalar = runner.insert(Sql, SqlQuery, scalarHandler);
+            scalar = runner.insert(Sql, SqlQuery, scalarHandler, params);
+            failed = false;
             Log.debug("Sql query executed");
         } catch (SQLException e) {
             Log.error( "", e );
+        } finally {
+            //number of inserted rows is not returned together with generated keys
+            record(QueryMetrics.Kind.INSERT, SqlQuery, start, 0, 0, failed);
         }
 
         return scalar;
@@ -243,21 +487,27 @@ public class SqlCore {
     /**
      * Executes sql update statement and returns scalar indicating how many rows where changed
      * in the table
+     * Query can contain ? placeholders, their values are bound as parameters
      *
      * @param SqlQuery String, query to be executed
+     * @param params Object..., values of ? placeholders in the query, if any
      * @return Integer
      */
-    public Integer update (String SqlQuery) {
+    public Integer update (String SqlQuery, Object... params) {
 
-        Log.debug("Going to execute Sql update " + SqlQuery);
+        Log.debug("Going to execute Sql update " + SqlQuery + paramsToString(params));
         Integer scalar = 0;
-        QueryRunner runner = new QueryRunner();
+        boolean failed = true;
+        long start = System.nanoTime();
 
         try {
-            scalar = runner.update(Sql, SqlQuery);
+            scalar = runner.update(Sql, SqlQuery, params);
+            failed = false;
             Log.debug("Sql query executed");
         } catch (SQLException e) {
             Log.error( "", e );
+        } finally {
+            record(QueryMetrics.Kind.UPDATE, SqlQuery, start, scalar, 0, failed);
         }
 
         return scalar;
@@ -267,31 +517,88 @@ public class SqlCore {
     /**
      * Executes sql delete statement and returns scalar indicating how many rows where removed
      * from the table
+     * Query can contain ? placeholders, their values are bound as parameters
      *
      * @param SqlQuery String, query to be executed
+     * @param params Object..., values of ? placeholders in the query, if any
      * @return Integer
      */
-    public Integer delete (String SqlQuery) {
+    public Integer delete (String SqlQuery, Object... params) {
 
-        Log.debug("Going to execute Sql delete " + SqlQuery);
+        Log.debug("Going to execute Sql delete " + SqlQuery + paramsToString(params));
         Integer scalar = 0;
-        QueryRunner runner = new QueryRunner();
+        boolean failed = true;
+        long start = System.nanoTime();
 
         try {
-            scalar = runner.update(Sql, SqlQuery);
+            scalar = runner.update(Sql, SqlQuery, params);
+            failed = false;
             Log.debug("Sql query executed");
         } catch (SQLException e) {
             Log.error( "", e );
+        } finally {
+            record(QueryMetrics.Kind.DELETE, SqlQuery, start, scalar, 0, failed);
         }
 
         return scalar;
     }
 
 
+    /**
+     * Returns metrics of queries executed by this SqlCore, see QueryMetrics
+     *
+     * @return QueryMetrics
+     */
+    public QueryMetrics getMetrics() {
+        return metrics;
+    }
+
+
+    /**
+     * helper function used to record metrics of executed query, it is called also when query failed
+     * Warning is logged when query took longer than Environment.Active.Jdbc.slowQueryThreshold (in ms, 0 disables it)
+     *
+     * @param kind QueryMetrics.Kind, kind of the query
+     * @param query String, executed query
+     * @param start long, System.nanoTime() taken before query execution
+     * @param rows long, number of rows returned or affected
+     * @param bytes long, approximate number of bytes fetched
+     * @param failed boolean, true if query failed
+     */
+    private void record(QueryMetrics.Kind kind, String query, long start, long rows, long bytes, boolean failed) {
+        long nanos = System.nanoTime() - start;
+        metrics.record(kind, query, nanos, rows, bytes, failed);
+
+        Integer threshold = Storage.get("Environment.Active.Jdbc.slowQueryThreshold");
+        if ( threshold == null ) {
+            threshold = DEFAULT_SLOW_QUERY_THRESHOLD;
+        }
+        if ( threshold > 0 && nanos >= threshold * 1000000L ) {
+            Log.warn("Slow Sql " + kind + (failed ? " failed after " : " took ") + nanos / 1000000 + " ms (threshold " + threshold + " ms) " + query);
+        }
+    }
+
+
+    /**
+     * helper function used to log parameters of a query
+     *
+     * @param params Object[], values of ? placeholders in the query
+     *
+     * @return String
+     */
+    private static String paramsToString(Object[] params) {
+        if ( params == null || params.length == 0 ) {
+            return "";
+        }
+        return " with parameters " + Arrays.toString(params);
+    }
+
+
     /**
      * Executes sql insert statement but takes data from csv file and column types
      * from configuration Storage
      * Optionaly can truncate table data before insert will be done
+     * Rows are inserted in batches, size of the batch is taken from Environment.Active.Jdbc.batchSize
      *
      * @param file File, csv file handle with data to insert
      * @param tableName String, name of the table to which data shall be inserted
@@ -299,163 +606,515 @@ public class SqlCore {
      * @param typeMapping String, name of the Storage with mapping of data types in the columns (shall be List<String>)
      */
     public void insertFromFile(File file, String tableName, boolean truncateBeforeLoad, String typeMapping) {
-        String SQL_INSERT = "INSERT INTO ${table}(${keys}) VALUES(${values})";
-        String TABLE_REGEX = "\\$\\{table\\}";
-        String KEYS_REGEX = "\\$\\{keys\\}";
-        String VALUES_REGEX = "\\$\\{values\\}";
-        Character seprator = ',';
-        CSVReader csvReader = null;
-        String[] headerRow = null;
+        insertFromFile(file, tableName, truncateBeforeLoad, typeMapping, getBatchSize());
+    }
 
-        try {
-            csvReader = new CSVReader(new FileReader(file));
-        } catch (FileNotFoundException e) {
-            Log.error("", e);
+
+    /**
+     * Executes sql insert statement but takes data from csv file and column types
+     * from configuration Storage
+     * Optionaly can truncate table data before insert will be done
+     * Values are parsed without escape character, quote inside quoted value shall be doubled ("").
+     *
+     * @param file File, csv file handle with data to insert
+     * @param tableName String, name of the table to which data shall be inserted
+     * @param truncateBeforeLoad boolean, switch to truncate data before insert
+     * @param typeMapping String, name of the Storage with mapping of data types in the columns (shall be List<String>)
+     * @param batchSize int, number of rows inserted in one batch
+     */
+    public void insertFromFile(File file, String tableName, boolean truncateBeforeLoad, String typeMapping, int batchSize) {
+        String[] headerRow = readHeader(file);
+
+        //type mapping is resolved only once, each column gets its own binder
+        ColumnBinder[] binders = compileBinders(typeMapping, headerRow.length);
+
+        String query = buildInsertQuery(tableName, headerRow);
+        Log.debug("Sql query: " + query);
+
+        long start = System.nanoTime();
+        long count = 0;
+        boolean failed = true;
+
+        try (CSVReader csvReader = openCsv(new FileReader(file))) {
+            //skip header
+            csvReader.readNext();
+            try {
+                Sql.setAutoCommit(false);
+
+                if(truncateBeforeLoad) {
+                    //delete data from table before loading csv
+                    try (Statement st = Sql.createStatement()) {
+                        st.execute("DELETE FROM " + tableName);
+                    }
+                }
+
+                Log.debug("Reading csv file");
+                count = loadRows(Sql, csvReader, query, binders, batchSize);
+                Sql.commit();
+                failed = false;
+                Log.debug("Sql batch query executed");
+            } catch (SQLException e) {
+                try {
+                    Sql.rollback();
+                } catch (SQLException e1) {
+                    Log.error( "SQL batch query rollback execution failed", e1 );
+                }
+                Log.error( "", e );
+            }
+        } catch (IOException e) {
+            Log.error( "", e );
+        } finally {
+            record(QueryMetrics.Kind.BATCH, query, start, count, 0, failed);
         }
 
+        logLoadStatistics(tableName, count, start, batchSize);
+    }
+
+
+    /**
+     * Executes sql insert statement but takes data from csv file and column types
+     * from configuration Storage, file is loaded in parallel
+     * Number of partitions loaded at the same time is taken from Environment.Active.Jdbc.loadThreads
+     * Data is loaded all or nothing via staging table
+     *
+     * @param file File, csv file handle with data to insert
+     * @param tableName String, name of the table to which data shall be inserted
+     * @param truncateBeforeLoad boolean, switch to truncate data before insert
+     * @param typeMapping String, name of the Storage with mapping of data types in the columns (shall be List<String>)
+     */
+    public void insertFromFileInParallel(File file, String tableName, boolean truncateBeforeLoad, String typeMapping) {
+        Integer threads = Storage.get("Environment.Active.Jdbc.loadThreads");
+        if ( threads == null ) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        insertFromFileInParallel(file, tableName, truncateBeforeLoad, typeMapping, threads, true);
+    }
+
+
+    /**
+     * Executes sql insert statement but takes data from csv file and column types
+     * from configuration Storage, file is loaded in parallel
+     *
+     * File is split into partitions aligned on record boundaries and each partition is loaded
+     * on its own connection taken from the connection pool (see DBConnector), so pool size limits the parallelism.
+     * Each partition is committed separately, so if one of them fails other ones may be already committed.
+     * To load all or nothing use allOrNothing switch. In that case data is loaded in parallel to an empty staging table
+     * and moved to the target table in a single transaction afterwards. Staging table is always dropped at the end.
+     * Values are parsed without escape character, quote inside quoted value shall be doubled ("").
+     *
+     * @param file File, csv file handle with data to insert
+     * @param tableName String, name of the table to which data shall be inserted
+     * @param truncateBeforeLoad boolean, switch to truncate data before insert
+     * @param typeMapping String, name of the Storage with mapping of data types in the columns (shall be List<String>)
+     * @param threads int, number of partitions loaded at the same time
+     * @param allOrNothing boolean, switch to load data via staging table
+     */
+    public void insertFromFileInParallel(File file, String tableName, boolean truncateBeforeLoad, String typeMapping, int threads, boolean allOrNothing) {
+        if ( threads < 1 ) {
+            Log.error("Number of partitions loaded at the same time shall be at least 1 but is " + threads +
+                    ". Please check Environment.Active.Jdbc.loadThreads");
+        }
+        String[] headerRow = readHeader(file);
+        ColumnBinder[] binders = compileBinders(typeMapping, headerRow.length);
+        int batchSize = getBatchSize();
+        long start = System.nanoTime();
+
+        long[] bounds = null;
         try {
-            headerRow = csvReader.readNext();
+            bounds = partition(file, threads);
         } catch (IOException e) {
             Log.error( "", e );
         }
+        int partitions = bounds.length - 1;
+        Log.debug("File " + file.getAbsolutePath() + " split into " + partitions + " partitions");
 
-        if ( null == headerRow ) {
-            Log.error( "No columns defined in given CSV file." +
-                    "Please check the CSV file format.");
+        String target = tableName;
+        try {
+            if ( allOrNothing ) {
+                target = createStagingTable(tableName);
+            } else if ( truncateBeforeLoad ) {
+                Sql.setAutoCommit(true);
+                try (Statement st = Sql.createStatement()) {
+                    st.execute("DELETE FROM " + tableName);
+                }
+            }
+        } catch (SQLException e) {
+            Log.error( "", e );
         }
 
-        String questionmarks = StringUtils.repeat("?,", headerRow.length);
-        questionmarks = (String) questionmarks.subSequence(0, questionmarks.length() - 1);
+        String query = buildInsertQuery(target, headerRow);
+        Log.debug("Sql query: " + query);
 
-        String query = SQL_INSERT.replaceFirst(TABLE_REGEX, tableName);
-        query = query.replaceFirst(KEYS_REGEX, StringUtils.join(headerRow, ","));
-        query = query.replaceFirst(VALUES_REGEX, questionmarks);
+        long count = 0;
+        boolean failed = true;
+        try {
+            ConnectionPool pool = new DBConnector(ctx).getPool(Storage.get("Environment.Active.Jdbc.url"));
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, partitions)));
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < partitions; i++) {
+                long from = bounds[i];
+                long to = bounds[i + 1];
+                results.add(executor.submit(Log.inContext(() -> loadPartition(pool, file, from, to, query, binders, batchSize))));
+            }
+            executor.shutdown();
 
-        Log.debug("Sql query: " + query);
+            Throwable failure = null;
+            for (Future<Long> result : results) {
+                try {
+                    count = count + result.get();
+                } catch (ExecutionException e) {
+                    failure = e.getCause();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failure = e;
+                }
+            }
+            if ( failure != null ) {
+                Log.error("Parallel load of " + file.getName() + " to " + tableName + " failed. " +
+                        (allOrNothing ? "Table was not modified" : "Some partitions may be already committed"), failure);
+            }
 
-        String[] nextLine;
-        PreparedStatement ps = null;
+            if ( allOrNothing ) {
+                moveFromStagingTable(target, tableName, headerRow, truncateBeforeLoad);
+            }
+            failed = false;
+        } finally {
+            record(QueryMetrics.Kind.BATCH, buildInsertQuery(tableName, headerRow), start, count, 0, failed);
+            if ( allOrNothing ) {
+                dropStagingTable(target);
+            }
+        }
+
+        logLoadStatistics(tableName, count, start, batchSize);
+    }
 
-        try {
-            Sql.setAutoCommit(false);
-            ps = Sql.prepareStatement(query);
 
-            if(truncateBeforeLoad) {
-                //delete data from table before loading csv
-                Sql.createStatement().execute("DELETE FROM " + tableName);
+    /**
+     * helper function used to load single partition of csv file on a connection taken from the pool
+     *
+     * @return long, number of loaded rows
+     */
+    private long loadPartition(ConnectionPool pool, File file, long from, long to, String query, ColumnBinder[] binders, int batchSize) throws SQLException, IOException {
+        try (Connection connection = pool.getConnection();
+             InputStream in = new FileInputStream(file)) {
+            long skipped = 0;
+            while ( skipped < from ) {
+                skipped = skipped + in.skip(from - skipped);
             }
+            CSVReader csvReader = openCsv(new InputStreamReader(new BoundedInputStream(in, to - from), Charset.defaultCharset()));
+            //uncommitted rows are rolled back when connection is given back to the pool
+            connection.setAutoCommit(false);
+            long count = loadRows(connection, csvReader, query, binders, batchSize);
+            connection.commit();
+            Log.debug("Partition " + from + "-" + to + " of " + file.getName() + " loaded, " + count + " rows");
+            return count;
+        }
+    }
 
-            final int batchSize = 1000;
-            int count = 0;
-            try {
-                Log.debug("Reading csv file");
-                while ((nextLine = csvReader.readNext()) != null) {
-
-                    if (null != nextLine) {
-
-                        List<String> colToTypeList = Storage.get(typeMapping);
-                        if ( colToTypeList == null ) {
-                            Log.error("Type mapping " + typeMapping + " null!");
-                        }
-                        if ( colToTypeList.size() < 1 ) {
-                            Log.error("Type mapping " + typeMapping + " empty!");
-                        }
-                        if ( colToTypeList.size() != nextLine.length ) {
-                            Log.error("Number of columns in the file (" + nextLine.length +
-                                    ") and in type mapping (" + colToTypeList.size() +
-                                    ") is not equal");
-                        }
-
-                        int index = 1;
-                        for (String string : nextLine) {
-                            int idx = index -1;
-                            //type mapping
-                            if ( Storage.get(typeMapping+"["+idx+"]").equals("NUMERIC") ||
-                                    Storage.get(typeMapping+"["+idx+"]").equals("DECIMAL") ){
-                                BigDecimal number = new BigDecimal(string);
-                                ps.setBigDecimal(index++, number);
-                            } else if ( Storage.get(typeMapping+"["+idx+"]").equals("VARCHAR") ||
-                                    Storage.get(typeMapping+"["+idx+"]").equals("CHARACTER") ||
-                                    Storage.get(typeMapping+"["+idx+"]").equals("LONGVARCHAR") ){
-                                ps.setString(index++, string);
-                            } else if ( Storage.get(typeMapping+"["+idx+"]").equals("BIT") ) {
-                                Boolean b = BooleanUtils.toBoolean(string);
-                                ps.setBoolean(index++, b);
-                            } else if ( Storage.get(typeMapping+"["+idx+"]").equals("TINYINT") ||
-                                    Storage.get(typeMapping+"["+idx+"]").equals("SMALLINT") ||
-                                    Storage.get(typeMapping+"["+idx+"]").equals("INTEGER") ) {
-                                Integer number = Integer.getInteger(string);
-                                ps.setInt(index++, number);
-                            } else if ( Storage.get(typeMapping+"["+idx+"]").equals("BIGINT") ) {
-                                Long number = Long.getLong(string);
-                                ps.setLong(index++, number);
-                            } else if ( Storage.get(typeMapping+"["+idx+"]").equals("REAL") ) {
-                                Float number = Float.parseFloat(string);
-                                ps.setFloat(index++, number);
-                            } else if ( Storage.get(typeMapping+"["+idx+"]").equals("FLOAT") ||
-                                    Storage.get(typeMapping+"["+idx+"]").equals("DOUBLE PRECISION") ) {
-                                Double number = Double.valueOf(string);
-                                ps.setDouble(index++, number);
-                            } else if ( Storage.get(typeMapping+"["+idx+"]").equals("BINARY") ||
-                                    Storage.get(typeMapping+"["+idx+"]").equals("VARBINARY") ||
-                                    Storage.get(typeMapping+"["+idx+"]").equals("LONGVARBINARY") ){
-                                Log.error("Wrong type provided. " + "" +
-                                        "BINARY, VARBINARY and LONGVARBINARY are not supported");
-                            } else if ( Storage.get(typeMapping+"["+idx+"]").equals("DATE") ) {
-                                    Date date = DateParser.convertToDate(string);
-                                    ps.setDate(index++, new java.sql.Date(date.getTime()));
-                            } else if ( Storage.get(typeMapping+"["+idx+"]").equals("TIME") ) {
-                                Pattern p = Pattern.compile("\\d\\d:\\d\\d:\\d\\d"); // not perfect but good enough;)
-                                Matcher m = p.matcher(string);
-                                if (m.matches()) {
-                                    Time time = Time.valueOf(string);
-                                    ps.setTime(index++, time);
-                                } else {
-                                    Log.error("Wrong time format provided. Expected is hh:mm:ss" +
-                                    " but was " + string);
-                                }
-                            } else if ( Storage.get(typeMapping+"["+idx+"]").equals("TIMESTAMP") ) {
-                                try {
-                                    Timestamp timestamp = Timestamp.valueOf(string);
-                                    ps.setTimestamp(index++, timestamp);
-                                } catch ( IllegalArgumentException e) {
-                                    Log.error("Wrong timestamp format provided", e);
-                                }
-                            } else {
-                                Log.error("Wrong type provided. Type in typeMapping[" + idx + "] not known");
-                            }
-                        }
-                        ps.addBatch();
-                    }
-                    if (++count % batchSize == 0) {
-                        ps.executeBatch();
+
+    /**
+     * helper function used to split csv file into partitions of similar size
+     * Partitions begin and end on record boundaries, new lines inside quoted values are taken into account
+     * Csv files are read without escape character (see openCsv), so only quotes
+     * are taken into account, each quote starts or ends quoted part of a value and "" inside quotes is a literal quote
+     *
+     * @param file File, csv file
+     * @param partitions int, requested number of partitions
+     *
+     * @return long[], offsets of partitions, first one is the end of the header and last one the size of the file
+     *
+     * @throws IOException when file can't be read
+     */
+    private static long[] partition(File file, int partitions) throws IOException {
+        long size = file.length();
+        List<Long> bounds = new ArrayList<>();
+        long next = 0;
+        long pos = 0;
+        boolean inQuotes = false;
+        byte[] buffer = new byte[64 * 1024];
+
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ( bounds.size() < partitions && (read = in.read(buffer)) != -1 ) {
+                for (int i = 0; i < read && bounds.size() < partitions; i++) {
+                    byte b = buffer[i];
+                    pos++;
+                    if ( b == '"' ) {
+                        inQuotes = ! inQuotes;
+                    } else if ( b == '\n' && ! inQuotes && pos >= next ) {
+                        bounds.add(pos);
+                        //first bound is the end of the header, the next ones split the rest evenly
+                        next = bounds.get(0) + (size - bounds.get(0)) * bounds.size() / partitions;
                     }
                 }
-            } catch (IOException e) {
-                Log.error( "", e );
             }
-            ps.executeBatch(); // insert remaining records
+        }
+        if ( bounds.isEmpty() ) {
+            bounds.add(size);
+        }
+        if ( bounds.get(bounds.size() - 1) < size ) {
+            bounds.add(size);
+        }
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+
+    /**
+     * helper function used to create empty copy of a table
+     *
+     * @param tableName String, name of the table
+     *
+     * @return String, name of the staging table
+     */
+    private String createStagingTable(String tableName) throws SQLException {
+        String staging = "STG_" + Long.toString(System.nanoTime() % 100000000L, 36).toUpperCase();
+        Sql.setAutoCommit(true);
+        String product = Sql.getMetaData().getDatabaseProductName();
+        try (Statement st = Sql.createStatement()) {
+            if ( product.contains("Microsoft") ) {
+                st.execute("SELECT * INTO " + staging + " FROM " + tableName + " WHERE 1=0");
+            } else {
+                st.execute("CREATE TABLE " + staging + " AS SELECT * FROM " + tableName + " WHERE 1=0");
+            }
+        }
+        Log.debug("Staging table " + staging + " created");
+        return staging;
+    }
+
+    private void moveFromStagingTable(String staging, String tableName, String[] headerRow, boolean truncateBeforeLoad) {
+        String columns = StringUtils.join(headerRow, ",");
+        try {
+            Sql.setAutoCommit(false);
+            try (Statement st = Sql.createStatement()) {
+                if ( truncateBeforeLoad ) {
+                    st.execute("DELETE FROM " + tableName);
+                }
+                st.execute("INSERT INTO " + tableName + "(" + columns + ") SELECT " + columns + " FROM " + staging);
+            }
             Sql.commit();
-            Log.debug("Sql batch query executed");
+            Log.debug("Data moved from staging table " + staging + " to " + tableName);
         } catch (SQLException e) {
             try {
                 Sql.rollback();
             } catch (SQLException e1) {
-                Log.error( "SQL batch query rollback execution failed", e1 );
+                Log.error( "SQL query rollback execution failed", e1 );
             }
             Log.error( "", e );
-        } finally {
-            if (null != ps)
-                try {
-                    ps.close();
-                } catch (SQLException e) {
-                    Log.error( "", e );
+        }
+    }
+
+    private void dropStagingTable(String staging) {
+        try {
+            Sql.setAutoCommit(true);
+            try (Statement st = Sql.createStatement()) {
+                st.execute("DROP TABLE " + staging);
+            }
+            Log.debug("Staging table " + staging + " dropped");
+        } catch (SQLException e) {
+            Log.warn("Staging table " + staging + " can't be dropped " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * helper function used to create csv reader
+     * The same parser configuration is used to read the header, to load whole file and to load its partitions,
+     * so the file is loaded the same way in serial and in parallel.
+     * Backslash is not an escape character, quote inside quoted value shall be doubled ("").
+     * Thanks to that quotes are the only thing that decides where record ends (see partition).
+     *
+     * @param reader Reader, csv content
+     *
+     * @return CSVReader
+     */
+    private static CSVReader openCsv(Reader reader) {
+        return new CSVReaderBuilder(reader)
+                .withCSVParser(new CSVParserBuilder().withEscapeChar(CSVParser.NULL_CHARACTER).build())
+                .build();
+    }
+
+
+    /**
+     * helper function used to read header of csv file
+     *
+     * @param file File, csv file
+     *
+     * @return String[], column names
+     */
+    private String[] readHeader(File file) {
+        String[] headerRow = null;
+        try (CSVReader csvReader = openCsv(new FileReader(file))) {
+            headerRow = csvReader.readNext();
+        } catch (IOException e) {
+            Log.error( "", e );
+        }
+
+        if ( null == headerRow ) {
+            Log.error( "No columns defined in given CSV file." +
+                    "Please check the CSV file format.");
+        }
+
+        return headerRow;
+    }
+
+    private String buildInsertQuery(String tableName, String[] headerRow) {
+        String SQL_INSERT = "INSERT INTO ${table}(${keys}) VALUES(${values})";
+        String TABLE_REGEX = "\\$\\{table\\}";
+        String KEYS_REGEX = "\\$\\{keys\\}";
+        String VALUES_REGEX = "\\$\\{values\\}";
+
+        String questionmarks = StringUtils.repeat("?,", headerRow.length);
+        questionmarks = (String) questionmarks.subSequence(0, questionmarks.length() - 1);
+
+        String query = SQL_INSERT.replaceFirst(TABLE_REGEX, Matcher.quoteReplacement(tableName));
+        query = query.replaceFirst(KEYS_REGEX, Matcher.quoteReplacement(StringUtils.join(headerRow, ",")));
+        query = query.replaceFirst(VALUES_REGEX, questionmarks);
+
+        return query;
+    }
+
+    private int getBatchSize() {
+        Integer batchSize = Storage.get("Environment.Active.Jdbc.batchSize");
+        if ( batchSize == null ) {
+            batchSize = DEFAULT_BATCH_SIZE;
+        }
+        return batchSize;
+    }
+
+
+    /**
+     * helper function used to insert rows read from csv file in batches
+     * Transaction is not committed
+     *
+     * @return long, number of inserted rows
+     */
+    private long loadRows(Connection connection, CSVReader csvReader, String query, ColumnBinder[] binders, int batchSize) throws SQLException, IOException {
+        long count = 0;
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
+            String[] nextLine;
+            while ((nextLine = csvReader.readNext()) != null) {
+                if ( nextLine.length != binders.length ) {
+                    Log.error("Number of columns in the file (" + nextLine.length +
+                            ") and in type mapping (" + binders.length +
+                            ") is not equal");
+                }
+                for (int idx = 0; idx < binders.length; idx++) {
+                    binders[idx].bind(ps, idx + 1, nextLine[idx]);
+                }
+                ps.addBatch();
+                if (++count % batchSize == 0) {
+                    ps.executeBatch();
                 }
-            try {
-                csvReader.close();
-            } catch (IOException e) {
-                Log.error( "", e );
             }
+            ps.executeBatch(); // insert remaining records
+        }
+        return count;
+    }
+
+    private void logLoadStatistics(String tableName, long count, long start, int batchSize) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Log.info("Loaded " + count + " rows to " + tableName + " in " + String.format("%.3f", seconds) + " s (" +
+                String.format("%.0f", seconds > 0 ? count / seconds : count) + " rows/s, batch size " + batchSize + ")");
+    }
+
+
+    /**
+     * Sets value of a single column in the prepared statement
+     */
+    private interface ColumnBinder {
+        void bind(PreparedStatement ps, int index, String value) throws SQLException;
+    }
+
+
+    /**
+     * helper function used to create binders for all columns based on the type mapping
+     * Type mapping is read from the Storage and validated only once
+     *
+     * @param typeMapping String, name of the Storage with mapping of data types in the columns (shall be List<String>)
+     * @param columns int, number of columns in the csv file
+     *
+     * @return ColumnBinder[], binder for each column
+     */
+    private ColumnBinder[] compileBinders(String typeMapping, int columns) {
+        List<String> colToTypeList = Storage.get(typeMapping);
+        if ( colToTypeList == null ) {
+            Log.error("Type mapping " + typeMapping + " null!");
+        }
+        if ( colToTypeList.size() < 1 ) {
+            Log.error("Type mapping " + typeMapping + " empty!");
+        }
+        if ( colToTypeList.size() != columns ) {
+            Log.error("Number of columns in the file (" + columns +
+                    ") and in type mapping (" + colToTypeList.size() +
+                    ") is not equal");
+        }
+
+        ColumnBinder[] binders = new ColumnBinder[colToTypeList.size()];
+        for (int idx = 0; idx < binders.length; idx++) {
+            binders[idx] = compileBinder(String.valueOf(colToTypeList.get(idx)), idx);
+        }
+
+        return binders;
+    }
+
+    private ColumnBinder compileBinder(String type, int idx) {
+        switch (type) {
+            case "NUMERIC":
+            case "DECIMAL":
+                return (ps, index, value) -> ps.setBigDecimal(index, new BigDecimal(value));
+            case "VARCHAR":
+            case "CHARACTER":
+            case "LONGVARCHAR":
+                return (ps, index, value) -> ps.setString(index, value);
+            case "BIT":
+                return (ps, index, value) -> ps.setBoolean(index, BooleanUtils.toBoolean(value));
+            case "TINYINT":
+            case "SMALLINT":
+            case "INTEGER":
+                return (ps, index, value) -> ps.setInt(index, Integer.parseInt(value));
+            case "BIGINT":
+                return (ps, index, value) -> ps.setLong(index, Long.parseLong(value));
+            case "REAL":
+                return (ps, index, value) -> ps.setFloat(index, Float.parseFloat(value));
+            case "FLOAT":
+            case "DOUBLE PRECISION":
+                return (ps, index, value) -> ps.setDouble(index, Double.valueOf(value));
+            case "BINARY":
+            case "VARBINARY":
+            case "LONGVARBINARY":
+                Log.error("Wrong type provided. " + "" +
+                        "BINARY, VARBINARY and LONGVARBINARY are not supported");
+                return null;
+            case "DATE":
+                return (ps, index, value) -> {
+                    Date date = DateParser.convertToDate(value);
+                    ps.setDate(index, new java.sql.Date(date.getTime()));
+                };
+            case "TIME":
+                return (ps, index, value) -> {
+                    if ( TIME_PATTERN.matcher(value).matches() ) {
+                        ps.setTime(index, Time.valueOf(value));
+                    } else {
+                        Log.error("Wrong time format provided. Expected is hh:mm:ss" +
+                                " but was " + value);
+                    }
+                };
+            case "TIMESTAMP":
+                return (ps, index, value) -> {
+                    try {
+                        ps.setTimestamp(index, Timestamp.valueOf(value));
+                    } catch ( IllegalArgumentException e) {
+                        Log.error("Wrong timestamp format provided", e);
+                    }
+                };
+            default:
+                Log.error("Wrong type provided. Type in typeMapping[" + idx + "] not known");
+                return null;
         }
     }
 
@@ -1,22 +1,20 @@
 package libs.libCore.modules;
 
 import net.schmizz.sshj.SSHClient;
-import net.schmizz.sshj.common.IOUtils;
 import net.schmizz.sshj.connection.ConnectionException;
 import net.schmizz.sshj.connection.channel.direct.Session;
-import net.schmizz.sshj.sftp.SFTPClient;
 import net.schmizz.sshj.transport.TransportException;
-import net.schmizz.sshj.transport.verification.HostKeyVerifier;
 import net.schmizz.sshj.userauth.UserAuthException;
 import net.schmizz.sshj.xfer.FileSystemFile;
 import net.sf.expectit.Expect;
 import net.sf.expectit.ExpectBuilder;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang.StringUtils;
 
-import java.io.File;
-import java.io.IOException;
-import java.security.PublicKey;
-import java.util.concurrent.TimeUnit;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
 
 import static net.sf.expectit.filter.Filters.removeColors;
 import static net.sf.expectit.filter.Filters.removeNonPrintable;
@@ -24,8 +22,17 @@ import static net.sf.expectit.matcher.Matchers.contains;
 
 public class SshCore {
 
+    private static final int DEFAULT_POOL_MAX_SESSIONS = 8;
+    private static final int DEFAULT_POOL_IDLE_TIMEOUT = 300;
+    private static final int DEFAULT_POOL_KEEP_ALIVE = 30;
+    private static final int DEFAULT_FAN_OUT_THREADS = 10;
+    private static final int DEFAULT_SFTP_CHANNELS = 4;
+    private static final int DEFAULT_SFTP_CHUNK_SIZE = 16;
+    private static final int OUTPUT_LINES = 10000;
+
     private SharedContext ctx;
     private Storage Storage;
+    private SshPool pool;
     private SSHClient client;
     private Session session;
     private Expect expect;
@@ -39,11 +46,42 @@ public class SshCore {
 
     /**
      * Creates new Ssh client and opens connection. Uses password authentication.
+     * Connection is taken from the pool shared by all scenarios, see SshPool,
+     * so handshake and authentication are done only when there is no usable connection to the node.
      *
      * @param node, String, node name as defined in configuration Environment.Active.Ssh.node
      */
     public void createClient(String node) {
 
+        //give back connection that is already leased, if any
+        closeClient();
+        pool = getPool(node);
+
+        try {
+            client = pool.borrow();
+        } catch (UserAuthException e) {
+            Log.error("", e);
+        } catch (IOException e) {
+            Log.error("Unable to connect via ssh to " + node + " as " + pool, e);
+        }
+
+        Log.debug("Connected via ssh to " + node + " as " + pool);
+    }
+
+
+    /**
+     * Returns pool of connections for particular node, pool is created if it does not exist yet
+     * Following settings from Environment.Active.SshPool are used
+     * maxSessions - max number of sessions open at the same time over one connection, default 8
+     * idleTimeout - time in seconds after which not used connection is closed, default 300
+     * keepAlive - interval in seconds of keep-alive requests, default 30, 0 disables them
+     *
+     * @param node, String, node name as defined in configuration Environment.Active.Ssh.node
+     *
+     * @return SshPool
+     */
+    private SshPool getPool(String node) {
+
         String address = Storage.get("Environment.Active.Ssh." + node + ".host");
         Integer port = Storage.get("Environment.Active.Ssh." + node + ".port");
         String user = Storage.get("Environment.Active.Ssh." + node + ".user");
@@ -62,31 +100,31 @@ public class SshCore {
             Log.error("Environment.Active.Ssh. " + node + ".password " + " is null or empty!");
         }
 
-        try {
-            client = new SSHClient();
-            client.addHostKeyVerifier(dummyHostKeyVerifier());
-            client.connect(address, port);
-        } catch (IOException e) {
-            Log.error("Unable to connect via ssh to " + node + " as " + user
-                    + " on " + address + " and port " + port, e);
-        }
+        //password is part of the key so changed credentials do not reuse old connections
+        String key = user + "@" + address + ":" + port + "#" + passwd.hashCode();
+        int sshPort = port;
+        return SshPool.getInstance(key, k -> new SshPool(
+                address,
+                sshPort,
+                user,
+                passwd,
+                getPoolSetting("maxSessions", DEFAULT_POOL_MAX_SESSIONS),
+                getPoolSetting("idleTimeout", DEFAULT_POOL_IDLE_TIMEOUT),
+                getPoolSetting("keepAlive", DEFAULT_POOL_KEEP_ALIVE)));
+    }
 
-        try {
-            client.authPassword(user, passwd);
-        } catch (UserAuthException e) {
-            closeClient();
-            Log.error("", e);
-        } catch (TransportException e) {
-            closeClient();
-            Log.error("", e);
+    private int getPoolSetting(String name, int defaultValue) {
+        Integer value = Storage.get("Environment.Active.SshPool." + name);
+        if ( value == null ) {
+            return defaultValue;
         }
-
-        Log.debug("Connected via ssh to " + node + " as " + user + " on " + address + " and port " + port);
+        return value;
     }
 
 
     /**
      * Starts Ssh session that can be used for single command execution
+     * Session is multiplexed over the pooled connection
      * helper function used by execute
      *
      */
@@ -95,10 +133,10 @@ public class SshCore {
             session = client.startSession();
             session.allocateDefaultPTY();
         } catch (ConnectionException e) {
-            closeClient();
+            discardClient();
             Log.error("", e);
         } catch (TransportException e) {
-            closeClient();
+            discardClient();
             Log.error("", e);
         }
     }
@@ -108,22 +146,23 @@ public class SshCore {
      * Executes a single command in a session. For each command new session is open and closed
      * after command execution
      *
+     * Stdout and stderr are read at the same time while command is running and each line is pushed to the consumers,
+     * like LineConsumer.toLog, LineConsumer.toWriter or LineConsumer.until. Command is stopped when one of consumers
+     * returns false or timeout is reached, exit status code is null in that case.
+     * Only the last 10000 lines of each stream are kept in the result, so output of long running commands
+     * shall be consumed by consumers. Warning is logged and result is marked as truncated when lines were dropped.
+     *
      * @param cmd, String, command to execute
      * @param timeout, Integer, timeout
+     * @param consumers, LineConsumer..., consumers of output lines, if any
      *
      * @return SSHResult, result set that contains stdout, stderr and exit status code
      */
-    public SSHResult execute(String cmd, Integer timeout) {
+    public SSHResult execute(String cmd, Integer timeout, LineConsumer... consumers) {
         startSession();
-        Session.Command command;
         SSHResult result = null;
         try {
-            command = session.exec(cmd);
-            command.join(timeout, TimeUnit.SECONDS);
-            Integer exitStatus = command.getExitStatus();
-            String stdout = IOUtils.readFully(command.getInputStream()).toString();
-            String stderr = IOUtils.readFully(command.getErrorStream()).toString();
-            result = new SSHResult(stdout, stderr, exitStatus);
+            result = run(session, cmd, timeout, consumers);
         } catch (ConnectionException e) {
             Log.error("", e);
         } catch (TransportException e) {
@@ -138,6 +177,346 @@ public class SshCore {
     }
 
 
+    /**
+     * Executes the same command on many nodes at the same time
+     * Number of nodes handled at the same time is taken from Environment.Active.SshPool.threads
+     *
+     * @param nodes, List<String>, node names as defined in configuration Environment.Active.Ssh.node, see resolveNodes
+     * @param cmd, String, command to execute
+     * @param timeout, Integer, timeout in seconds of command execution on a single node
+     * @param failFast, Boolean, if true execution is cancelled on other nodes as soon as command fails on one of them
+     *
+     * @return Map<String, SSHResult>, results per node in the order of nodes, see executeOnNodes
+     */
+    public Map<String, SSHResult> executeOnNodes(List<String> nodes, String cmd, Integer timeout, Boolean failFast) {
+        Integer threads = Storage.get("Environment.Active.SshPool.threads");
+        if ( threads == null ) {
+            threads = DEFAULT_FAN_OUT_THREADS;
+        }
+        return executeOnNodes(nodes, cmd, timeout, threads, failFast);
+    }
+
+
+    /**
+     * Executes the same command on many nodes at the same time
+     *
+     * Each node runs the command in its own session on a connection leased from the pool of the node (see SshPool),
+     * so it does not use nor change client opened by createClient. Command fails when its exit code is not 0,
+     * it did not finish before timeout or node is not accessible. In the last two cases exit code is null
+     * and reason is given in stderr.
+     * When fail fast is used results of nodes on which execution was cancelled are not returned.
+     *
+     * @param nodes, List<String>, node names as defined in configuration Environment.Active.Ssh.node, see resolveNodes
+     * @param cmd, String, command to execute
+     * @param timeout, Integer, timeout in seconds of command execution on a single node
+     * @param threads, int, max number of nodes handled at the same time
+     * @param failFast, Boolean, if true execution is cancelled on other nodes as soon as command fails on one of them
+     *
+     * @return Map<String, SSHResult>, results per node in the order of nodes, each result contains execution time
+     */
+    public Map<String, SSHResult> executeOnNodes(List<String> nodes, String cmd, Integer timeout, int threads, Boolean failFast) {
+        Log.debug("Going to execute " + cmd + " on " + nodes.size() + " nodes " + nodes);
+
+        //pools are resolved up front so configuration is not read by worker threads
+        Map<String, SshPool> pools = new LinkedHashMap<>();
+        for (String node : nodes) {
+            pools.put(node, getPool(node));
+        }
+
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, pools.size())));
+        CompletionService<Map.Entry<String, SSHResult>> completion = new ExecutorCompletionService<>(executor);
+        for (Map.Entry<String, SshPool> entry : pools.entrySet()) {
+            completion.submit(Log.inContext(() -> new AbstractMap.SimpleEntry<>(entry.getKey(), executeOnNode(entry.getValue(), cmd, timeout))));
+        }
+        executor.shutdown();
+
+        Map<String, SSHResult> finished = new HashMap<>();
+        try {
+            for (int i = 0; i < pools.size(); i++) {
+                Map.Entry<String, SSHResult> entry = completion.take().get();
+                finished.put(entry.getKey(), entry.getValue());
+                if ( failFast && ! isSuccess(entry.getValue()) ) {
+                    Log.debug("Command failed on " + entry.getKey() + ", execution on other nodes is cancelled");
+                    executor.shutdownNow();
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            Log.error("", e.getCause());
+        }
+
+        Map<String, SSHResult> results = new LinkedHashMap<>();
+        for (String node : pools.keySet()) {
+            SSHResult result = finished.get(node);
+            if ( result != null ) {
+                results.put(node, result);
+                Log.debug("Node " + node + " exit code " + result.getExitCode() + " in " + result.getDuration() + " ms");
+            }
+        }
+        Log.debug("Command executed on " + results.size() + " of " + nodes.size() + " nodes in " +
+                (System.currentTimeMillis() - start) + " ms");
+
+        return results;
+    }
+
+
+    /**
+     * helper function used by executeOnNodes to execute command on a single node
+     * Errors are returned as result so other nodes are not affected
+     *
+     * @return SSHResult
+     */
+    private static SSHResult executeOnNode(SshPool pool, String cmd, Integer timeout) {
+        long start = System.currentTimeMillis();
+        SSHClient client = null;
+        try {
+            client = pool.borrow();
+            try (Session session = client.startSession()) {
+                session.allocateDefaultPTY();
+                return run(session, cmd, timeout);
+            }
+        } catch (IOException e) {
+            return new SSHResult("", "Unable to execute command via ssh as " + pool + " " + e,
+                    null, System.currentTimeMillis() - start);
+        } finally {
+            if ( client != null ) {
+                pool.release(client);
+            }
+        }
+    }
+
+
+    /**
+     * helper function used to execute command in a session and pump its output to the consumers
+     * Each stream is read by its own thread so chatty stderr can't block stdout and vice versa
+     *
+     * @return SSHResult, last lines of output, exit status code is null when command was stopped
+     */
+    private static SSHResult run(Session session, String cmd, Integer timeout, LineConsumer... consumers) throws IOException {
+        long start = System.currentTimeMillis();
+        LineConsumer.Tail tail = new LineConsumer.Tail(OUTPUT_LINES);
+        List<LineConsumer> all = new ArrayList<>();
+        all.add(tail);
+        all.addAll(Arrays.asList(consumers));
+
+        Session.Command command = session.exec(cmd);
+        OutputPump pump = new OutputPump(all);
+        pump.start(command.getInputStream(), false);
+        pump.start(command.getErrorStream(), true);
+
+        Integer exitStatus = null;
+        boolean finished = pump.await(TimeUnit.SECONDS.toMillis(timeout));
+        if ( finished ) {
+            //exit status is sent after the output
+            long left = TimeUnit.SECONDS.toMillis(timeout) - (System.currentTimeMillis() - start);
+            try {
+                command.join(Math.max(1, left), TimeUnit.MILLISECONDS);
+                exitStatus = command.getExitStatus();
+            } catch (ConnectionException e) {
+                Log.warn("Exit status of command " + cmd + " was not received in " + timeout + " s");
+            }
+        } else if ( pump.isStopped() ) {
+            Log.debug("Command " + cmd + " stopped by output consumer");
+        } else if ( pump.isCancelled() ) {
+            Log.debug("Command " + cmd + " cancelled");
+        } else {
+            Log.warn("Command " + cmd + " did not finish in " + timeout + " s");
+        }
+        if ( exitStatus == null ) {
+            //closing the channel stops the command and the output pump
+            command.close();
+        }
+        //consumers are never called after the command returned
+        pump.close();
+        if ( pump.getFailure() != null ) {
+            throw pump.getFailure();
+        }
+
+        boolean truncated = tail.getDropped() > 0;
+        if ( truncated ) {
+            Log.warn("Output of command " + cmd + " had " + tail.getLines() + " lines, only the last " + OUTPUT_LINES +
+                    " lines of stdout and stderr are kept in the result");
+        }
+
+        return new SSHResult(tail.getStdout(), tail.getStderr(), exitStatus, System.currentTimeMillis() - start, truncated);
+    }
+
+
+    /**
+     * helper class used to read stdout and stderr of a command at the same time and push their lines to the consumers
+     */
+    private static final class OutputPump {
+
+        private static final long CLOSE_TIMEOUT = 5000;
+
+        private final List<LineConsumer> consumers;
+        private int running = 0;
+        private boolean stopped = false;
+        private boolean closed = false;
+        //thread waiting for the output was interrupted, for example when fan out is cancelled
+        private boolean cancelled = false;
+        private IOException failure;
+
+        OutputPump(List<LineConsumer> consumers) {
+            this.consumers = consumers;
+        }
+
+        synchronized void start(InputStream in, boolean stderr) {
+            running++;
+            Thread thread = new Thread(Log.inContext(() -> pump(in, stderr)), "ssh-" + (stderr ? "stderr" : "stdout"));
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void pump(InputStream in, boolean stderr) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                String line;
+                while ( (line = reader.readLine()) != null && accept(line, stderr) ) {
+                    //all done by accept
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    //stream is closed when command is stopped
+                    if ( ! stopped && ! closed && failure == null ) {
+                        failure = e;
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    running--;
+                    notifyAll();
+                }
+            }
+        }
+
+        private synchronized boolean accept(String line, boolean stderr) throws IOException {
+            if ( stopped || closed ) {
+                return false;
+            }
+            for (LineConsumer consumer : consumers) {
+                if ( ! consumer.accept(line, stderr) ) {
+                    stopped = true;
+                    notifyAll();
+                }
+            }
+            return ! stopped;
+        }
+
+        /**
+         * @return boolean, true if both streams were read till the end, false if pump was stopped, cancelled or timeout was reached
+         */
+        synchronized boolean await(long millis) {
+            long deadline = System.currentTimeMillis() + millis;
+            long left = millis;
+            try {
+                while ( running > 0 && ! stopped && left > 0 ) {
+                    wait(left);
+                    left = deadline - System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                cancelled = true;
+                Thread.currentThread().interrupt();
+            }
+            return running == 0 && ! stopped && ! cancelled;
+        }
+
+        synchronized boolean isStopped() {
+            return stopped;
+        }
+
+        synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Stops delivery of lines to the consumers and waits till threads reading the streams end
+         * Streams shall be closed before, otherwise threads are left running until they are
+         */
+        synchronized void close() {
+            closed = true;
+            long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT;
+            long left = CLOSE_TIMEOUT;
+            try {
+                while ( running > 0 && left > 0 ) {
+                    wait(left);
+                    left = deadline - System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                cancelled = true;
+                Thread.currentThread().interrupt();
+            }
+            if ( running > 0 && ! cancelled ) {
+                Log.warn("Output of ssh command is still being read after the command was closed");
+            }
+        }
+
+        synchronized IOException getFailure() {
+            return failure;
+        }
+    }
+
+
+    /**
+     * Checks if command was executed successfully
+     *
+     * @param result, SSHResult, result of command execution
+     *
+     * @return boolean, true if exit code is 0
+     */
+    public static boolean isSuccess(SSHResult result) {
+        return result != null && result.getExitCode() != null && result.getExitCode() == 0;
+    }
+
+
+    /**
+     * Returns names of ssh nodes
+     * Selector is a comma separated list of node names or tags. Tag starts with @ and selects all nodes
+     * that have such tag in Environment.Active.Ssh.node.tags list, for example node1, node2, @web
+     *
+     * @param selector, String, node names and tags
+     *
+     * @return List<String>, node names without duplicates in the order of the selector, nodes selected by tag are sorted
+     */
+    public List<String> resolveNodes(String selector) {
+        Set<String> nodes = new LinkedHashSet<>();
+        for (String item : selector.split(",")) {
+            String name = item.trim();
+            if ( name.isEmpty() ) {
+                continue;
+            }
+            if ( ! name.startsWith("@") ) {
+                nodes.add(name);
+                continue;
+            }
+
+            Map<String, Object> config = Storage.get("Environment.Active.Ssh");
+            List<String> tagged = new ArrayList<>();
+            if ( config != null ) {
+                for (Map.Entry<String, Object> entry : config.entrySet()) {
+                    if ( entry.getValue() instanceof Map ) {
+                        Object tags = ((Map) entry.getValue()).get("tags");
+                        if ( tags instanceof List && ((List) tags).contains(name.substring(1)) ) {
+                            tagged.add(entry.getKey());
+                        }
+                    }
+                }
+            }
+            if ( tagged.isEmpty() ) {
+                Log.error("No ssh nodes with tag " + name.substring(1) + " found in Environment.Active.Ssh");
+            }
+            Collections.sort(tagged);
+            nodes.addAll(tagged);
+        }
+
+        return new ArrayList<>(nodes);
+    }
+
+
     /**
      * Checks that particular file exists on remote host
      *
@@ -153,7 +532,7 @@ public class SshCore {
         SSHResult output = execute("test -e " + pathToFile,60);
         closeClient();
 
-        if ( output.getExitCode() == 0 ) {
+        if ( output != null && output.getExitCode() != null && output.getExitCode() == 0 ) {
             result = true;
         }
 
@@ -164,32 +543,85 @@ public class SshCore {
 
     /**
      * Waits for a file to be present on a remote host for defined time duration
+     * File is watched on remote host by a single command, see waitForFiles
      *
      * @param nodeName, String, node name as defined in configuration Environment.Active.Ssh.node
-     * @param pathToFile, String, path to the file on remote host
+     * @param pathToFile, String, path to the file on remote host, it can be a glob pattern
      * @param timeout, Integer, timeout
      *
      * @return Boolean, true if file exists, false otherwise
      */
     public Boolean waitForFile(String nodeName, String pathToFile, Integer timeout) {
+        return waitForFiles(nodeName, Collections.singletonList(pathToFile), timeout) != null;
+    }
 
-        if ( timeout < 0 ) {
-            return false;
+
+    /**
+     * Waits for any of the files to be present on a remote host for defined time duration
+     *
+     * Files are watched by a single command executed on the remote host, so only one session is used
+     * regardless of the timeout. Command returns as soon as one of the files appears.
+     * When inotifywait is available on the remote host it waits for create and move events in directories
+     * of the files, otherwise files are checked every second.
+     *
+     * @param nodeName, String, node name as defined in configuration Environment.Active.Ssh.node
+     * @param pathsToFiles, List<String>, paths to the files on remote host, they can be glob patterns like /tmp/*.log
+     * @param timeout, Integer, timeout in seconds
+     *
+     * @return String, path of the first file found, null if none of them appeared before timeout
+     */
+    public String waitForFiles(String nodeName, List<String> pathsToFiles, Integer timeout) {
+        if ( timeout < 0 || pathsToFiles.isEmpty() ) {
+            return null;
         }
-        Boolean result = checkThatFileExists(nodeName, pathToFile);
-        if ( result.equals(false) ) {
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                //don't do anything
-            }
-            return waitForFile(nodeName, pathToFile, timeout - 1);
+
+        //patterns are separated by new line and expanded by the shell, so they can contain spaces
+        String script = "IFS='\n'\n" +
+                "patterns=" + quote(StringUtils.join(pathsToFiles, "\n")) + "\n" +
+                "deadline=$(( $(date +%s) + " + timeout + " ))\n" +
+                "watch=0; command -v inotifywait >/dev/null 2>&1 && watch=1\n" +
+                "while :; do\n" +
+                "  for p in $patterns; do for f in $p; do if [ -e \"$f\" ]; then echo \"$f\"; exit 0; fi; done; done\n" +
+                "  now=$(date +%s)\n" +
+                "  if [ $now -ge $deadline ]; then exit 1; fi\n" +
+                "  if [ $watch -eq 1 ]; then\n" +
+                //short watch timeout covers files created between the check above and start of inotifywait
+                "    left=$(( deadline - now )); if [ $left -gt 2 ]; then left=2; fi\n" +
+                "    inotifywait -qq -t $left -e create -e moved_to $(for p in $patterns; do dirname \"$p\"; done) >/dev/null 2>&1\n" +
+                "    if [ $? -eq 1 ]; then sleep 1; fi\n" +
+                "  else\n" +
+                "    sleep 1\n" +
+                "  fi\n" +
+                "done";
+
+        Log.debug("Waiting up to " + timeout + " s for any of " + pathsToFiles + " on " + nodeName);
+        createClient(nodeName);
+        SSHResult output = execute("sh -c " + quote(script), timeout + 30);
+        closeClient();
+
+        String result = null;
+        if ( output != null && output.getExitCode() != null && output.getExitCode() == 0 ) {
+            String[] lines = output.getStdout().trim().split("\\r?\\n");
+            result = lines[lines.length - 1].trim();
+            Log.debug("File " + result + " found on " + nodeName);
         }
 
         return result;
     }
 
 
+    /**
+     * helper function used to quote a string for remote shell
+     *
+     * @param value String
+     *
+     * @return String, value in single quotes
+     */
+    private static String quote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+
     /**
      * Checks that node is accessible
      *
@@ -205,7 +637,7 @@ public class SshCore {
         SSHResult output = execute(cmd, 60);
         closeClient();
 
-        if ( output.getExitCode() == 0 ) {
+        if ( output != null && output.getExitCode() != null && output.getExitCode() == 0 ) {
             result = true;
         }
 
@@ -234,12 +666,6 @@ public class SshCore {
             closeClient();
         }
 
-        try {
-            Thread.sleep(2000);
-        } catch (InterruptedException e) {
-            //don't do anything
-        }
-
         return new File(pathToLocalDir + File.separator + fileName);
     }
 
@@ -272,6 +698,8 @@ public class SshCore {
 
     /**
      * Downloads file from remote node using sftp
+     * File is transferred in chunks over several channels at the same time and verified, see SftpTransfer
+     * Interrupted download is resumed by the next download of the same file
      *
      * @param nodeName, String, node name as defined in configuration Environment.Active.Ssh.node
      * @param pathToFileOnRemote, String, path to the file on remote host
@@ -280,28 +708,22 @@ public class SshCore {
      * @return File, file handle
      */
     public File downloadFileViaSftp(String nodeName, String pathToFileOnRemote, String pathToLocalDir) {
-        createClient(nodeName);
         String fileName = FilenameUtils.getName(pathToFileOnRemote);
+        File file = new File(pathToLocalDir + File.separator + fileName);
         try {
-            SFTPClient sftp = client.newSFTPClient();
-            try {
-                sftp.get(pathToFileOnRemote, new FileSystemFile(pathToLocalDir));
-            } finally {
-                sftp.close();
-            }
+            getSftpTransfer(nodeName).download(pathToFileOnRemote, file);
         } catch (IOException e) {
             Log.error("", e);
-        } finally {
-            closeClient();
         }
 
-        return new File(pathToLocalDir + File.separator + fileName);
-
+        return file;
     }
 
 
     /**
      * Uploads file via sftp
+     * File is transferred in chunks over several channels at the same time and verified, see SftpTransfer
+     * Interrupted upload is resumed by the next upload of the same file
      *
      * @param nodeName, String, node name as defined in configuration Environment.Active.Ssh.node
      * @param pathToLocalFile, String, path to the file on local host
@@ -312,25 +734,78 @@ public class SshCore {
     public Boolean uploadFileViaSftp(String nodeName, String pathToLocalFile, String pathToUploadDirOnRemote) {
         Boolean result = false;
 
-        createClient(nodeName);
+        File file = new File(pathToLocalFile);
         try {
-            SFTPClient sftp = client.newSFTPClient();
-            try {
-                sftp.put(new FileSystemFile(pathToLocalFile), pathToUploadDirOnRemote);
-                result = true;
-            } finally {
-                sftp.close();
-            }
+            getSftpTransfer(nodeName).upload(file, StringUtils.removeEnd(pathToUploadDirOnRemote, "/") + "/" + file.getName());
+            result = true;
         } catch (IOException e) {
             Log.error("", e);
-        } finally {
-            closeClient();
         }
 
         return result;
     }
 
 
+    /**
+     * Downloads directory tree from remote node using sftp
+     * Files are transferred at the same time, see SftpTransfer
+     *
+     * @param nodeName, String, node name as defined in configuration Environment.Active.Ssh.node
+     * @param pathToDirOnRemote, String, path to the directory on remote host
+     * @param pathToLocalDir, String, path to the directory where content of remote directory shall be downloaded
+     *
+     * @return File, directory handle
+     */
+    public File downloadDirViaSftp(String nodeName, String pathToDirOnRemote, String pathToLocalDir) {
+        File dir = new File(pathToLocalDir);
+        try {
+            getSftpTransfer(nodeName).downloadTree(pathToDirOnRemote, dir);
+        } catch (IOException e) {
+            Log.error("", e);
+        }
+
+        return dir;
+    }
+
+
+    /**
+     * Uploads directory tree via sftp
+     * Files are transferred at the same time, see SftpTransfer
+     *
+     * @param nodeName, String, node name as defined in configuration Environment.Active.Ssh.node
+     * @param pathToLocalDir, String, path to the directory on local host
+     * @param pathToDirOnRemote, String, path to the directory where content of local directory shall be uploaded on remote host
+     *
+     * @return Boolean, true if upload was successful, false otherwise
+     */
+    public Boolean uploadDirViaSftp(String nodeName, String pathToLocalDir, String pathToDirOnRemote) {
+        Boolean result = false;
+
+        try {
+            getSftpTransfer(nodeName).uploadTree(new File(pathToLocalDir), pathToDirOnRemote);
+            result = true;
+        } catch (IOException e) {
+            Log.error("", e);
+        }
+
+        return result;
+    }
+
+
+    /**
+     * helper function used to create sftp transfer over connections of the node pool
+     * Settings are taken from Environment.Active.SshPool
+     */
+    private SftpTransfer getSftpTransfer(String nodeName) {
+        Boolean verify = Storage.get("Environment.Active.SshPool.sftpVerify");
+        return new SftpTransfer(
+                getPool(nodeName),
+                getPoolSetting("sftpChannels", DEFAULT_SFTP_CHANNELS),
+                getPoolSetting("sftpChunkSize", DEFAULT_SFTP_CHUNK_SIZE) * 1024L * 1024L,
+                verify == null || verify);
+    }
+
+
     /**
      * Starts interactive shell
      *
@@ -348,13 +823,13 @@ public class SshCore {
                     .withExceptionOnFailure()
                     .build();
         } catch (ConnectionException e) {
-            closeClient();
+            discardClient();
             Log.error("", e);
         } catch (TransportException e) {
-            closeClient();
+            discardClient();
             Log.error("", e);
         } catch (IOException e) {
-            closeClient();
+            discardClient();
             Log.error("", e);
         }
 
@@ -423,33 +898,32 @@ public class SshCore {
 
 
     /**
-     * Closes ssh client and connection to remote host
+     * Closes ssh client
+     * Open session is closed and connection to remote host is given back to the pool
      */
     public void closeClient() {
-        try {
-            if ( client != null ) {
-                Boolean isConnected = client.isConnected();
-                if (isConnected) {
-                    client.disconnect();
-                }
+        if ( client != null ) {
+            //sessions are multiplexed over the pooled connection so they have to be closed before it is given back
+            //connection is given back even if session can't be closed because Log.error throws
+            try {
+                closeSession();
+            } finally {
+                pool.release(client);
+                client = null;
             }
-        } catch (IOException e) {
-            Log.error("", e);
         }
     }
 
 
     /**
-     * creates a blank host key verifier
-     * helper function used by createClient method to always pass key verification
+     * Closes ssh client and removes its connection from the pool
+     * helper function used when connection is broken
      */
-    private HostKeyVerifier dummyHostKeyVerifier() {
-        return new HostKeyVerifier() {
-            @Override
-            public boolean verify(String arg0, int arg1, PublicKey arg2) {
-                return true;
-            }
-        };
+    private void discardClient() {
+        if ( client != null ) {
+            pool.invalidate(client);
+            client = null;
+        }
     }
 
 }
\ No newline at end of file
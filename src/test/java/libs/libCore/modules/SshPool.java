@@ -0,0 +1,291 @@
+package libs.libCore.modules;
+
+import net.schmizz.keepalive.KeepAliveProvider;
+import net.schmizz.sshj.DefaultConfig;
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.transport.verification.HostKeyVerifier;
+
+import java.io.IOException;
+import java.security.PublicKey;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Pool of authenticated ssh connections
+ *
+ * One pool is created per node (host, port, user and password) and it is shared by all scenarios executed
+ * in the test suite, so key exchange and authentication are done only when there is no usable connection.
+ * Connection is leased by borrow and given back by release. One connection can be leased many times
+ * at the same time, each lease runs its commands in its own sessions multiplexed over the same connection.
+ *
+ * Keep-alive requests are sent on each connection so dead connections are detected and disconnected.
+ * Connections are checked before they are handed out and closed when they were not used for longer than idle timeout.
+ */
+public class SshPool {
+
+    private static final Map<String, SshPool> pools = new ConcurrentHashMap<>();
+    //creation of config is expensive, it is shared by all connections
+    private static final DefaultConfig config = new DefaultConfig();
+    static {
+        config.setKeepAliveProvider(KeepAliveProvider.KEEP_ALIVE);
+    }
+
+    private final String host;
+    private final int port;
+    private final String user;
+    private final String password;
+    private final int maxSessions;
+    private final long idleTimeout;
+    private final int keepAlive;
+    //access is synchronized on the list
+    private final List<Pooled> connections = new ArrayList<>();
+    private volatile boolean closed = false;
+
+    /**
+     * @param host String, address of the node
+     * @param port int, ssh port
+     * @param user String, user name
+     * @param password String, password
+     * @param maxSessions int, max number of leases of a single connection, it shall not exceed MaxSessions of sshd
+     * @param idleTimeout int, time in seconds after which not used connection is closed
+     * @param keepAlive int, interval in seconds of keep-alive requests, 0 disables them
+     */
+    public SshPool(String host, int port, String user, String password, int maxSessions, int idleTimeout, int keepAlive) {
+        this.host = host;
+        this.port = port;
+        this.user = user;
+        this.password = password;
+        this.maxSessions = Math.max(1, maxSessions);
+        this.idleTimeout = TimeUnit.SECONDS.toMillis(idleTimeout);
+        this.keepAlive = keepAlive;
+    }
+
+
+    /**
+     * Returns pool for particular node, pool is created if it does not exist yet
+     *
+     * @param key String, identity of the node, see SshCore
+     * @param factory Function, creates new pool for the node
+     *
+     * @return SshPool
+     */
+    public static SshPool getInstance(String key, Function<String, SshPool> factory) {
+        return pools.computeIfAbsent(key, factory);
+    }
+
+
+    /**
+     * Closes all pools and connections that are not in use
+     * Connections that are in use are closed when they are given back
+     */
+    public static void closeAll() {
+        for (SshPool pool : pools.values()) {
+            pool.close();
+        }
+        pools.clear();
+    }
+
+
+    /**
+     * Closes the pool and connections that are not in use
+     */
+    public void close() {
+        closed = true;
+        List<SSHClient> toClose = new ArrayList<>();
+        synchronized (connections) {
+            Iterator<Pooled> it = connections.iterator();
+            while ( it.hasNext() ) {
+                Pooled pooled = it.next();
+                if ( pooled.leases == 0 ) {
+                    toClose.add(pooled.client);
+                    it.remove();
+                }
+            }
+        }
+        for (SSHClient client : toClose) {
+            disconnect(client);
+        }
+        Log.debug("Ssh pool for " + this + " closed");
+    }
+
+
+    /**
+     * Leases connection from the pool
+     * The least used healthy connection is reused, new connection is open when all of them are leased maxSessions times
+     *
+     * @return SSHClient, connected and authenticated client, it shall not be disconnected but given back by release
+     *
+     * @throws IOException when connection can't be open or authentication fails
+     */
+    public SSHClient borrow() throws IOException {
+        if ( closed ) {
+            throw new IOException("Ssh pool for " + this + " is closed");
+        }
+
+        List<SSHClient> toClose = new ArrayList<>();
+        Pooled found = null;
+        synchronized (connections) {
+            long now = System.currentTimeMillis();
+            Iterator<Pooled> it = connections.iterator();
+            while ( it.hasNext() ) {
+                Pooled pooled = it.next();
+                boolean expired = pooled.leases == 0 && now - pooled.lastUsed > idleTimeout;
+                if ( expired || ! isHealthy(pooled.client) ) {
+                    //broken connection that is still leased is disconnected, its users will get an error on next use
+                    toClose.add(pooled.client);
+                    it.remove();
+                } else if ( pooled.leases < maxSessions && ( found == null || pooled.leases < found.leases ) ) {
+                    found = pooled;
+                }
+            }
+            if ( found != null ) {
+                found.leases++;
+            }
+        }
+        for (SSHClient client : toClose) {
+            disconnect(client);
+        }
+        if ( found != null ) {
+            return found.client;
+        }
+
+        //handshake is done outside of the lock so other threads are not blocked
+        SSHClient client = connect();
+        Pooled pooled = new Pooled(client);
+        pooled.leases = 1;
+        synchronized (connections) {
+            connections.add(pooled);
+        }
+        Log.debug("New ssh connection to " + this + " open");
+
+        return client;
+    }
+
+
+    /**
+     * Gives back connection leased by borrow
+     *
+     * @param client SSHClient, leased connection
+     */
+    public void release(SSHClient client) {
+        boolean discard = false;
+        synchronized (connections) {
+            Pooled pooled = find(client);
+            if ( pooled == null ) {
+                //connection was already removed from the pool
+                discard = true;
+            } else {
+                pooled.leases--;
+                pooled.lastUsed = System.currentTimeMillis();
+                if ( pooled.leases == 0 && ( closed || ! isHealthy(client) ) ) {
+                    connections.remove(pooled);
+                    discard = true;
+                }
+            }
+        }
+        if ( discard ) {
+            disconnect(client);
+        }
+    }
+
+
+    /**
+     * Removes connection from the pool and disconnects it, shall be used when connection is broken
+     * Other leases of the connection will get an error on next use
+     *
+     * @param client SSHClient, leased connection
+     */
+    public void invalidate(SSHClient client) {
+        synchronized (connections) {
+            Pooled pooled = find(client);
+            if ( pooled != null ) {
+                connections.remove(pooled);
+            }
+        }
+        disconnect(client);
+    }
+
+
+    /**
+     * @return String, user@host:port
+     */
+    @Override
+    public String toString() {
+        return user + "@" + host + ":" + port;
+    }
+
+
+    /**
+     * helper function used to open and authenticate new connection
+     */
+    private SSHClient connect() throws IOException {
+        SSHClient client = new SSHClient(config);
+        client.addHostKeyVerifier(dummyHostKeyVerifier());
+        try {
+            client.connect(host, port);
+            client.authPassword(user, password);
+            if ( keepAlive > 0 ) {
+                client.getConnection().getKeepAlive().setKeepAliveInterval(keepAlive);
+            }
+        } catch (IOException e) {
+            disconnect(client);
+            throw e;
+        }
+        return client;
+    }
+
+    private Pooled find(SSHClient client) {
+        for (Pooled pooled : connections) {
+            if ( pooled.client == client ) {
+                return pooled;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isHealthy(SSHClient client) {
+        return client.isConnected() && client.isAuthenticated();
+    }
+
+    private static void disconnect(SSHClient client) {
+        try {
+            if ( client.isConnected() ) {
+                client.disconnect();
+            }
+        } catch (IOException e) {
+            Log.warn("Ssh connection can't be closed " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * creates a blank host key verifier
+     * helper function used by connect method to always pass key verification
+     */
+    private static HostKeyVerifier dummyHostKeyVerifier() {
+        return new HostKeyVerifier() {
+            @Override
+            public boolean verify(String arg0, int arg1, PublicKey arg2) {
+                return true;
+            }
+        };
+    }
+
+
+    /**
+     * helper class used to keep connection together with number of its leases
+     */
+    private static final class Pooled {
+
+        private final SSHClient client;
+        private int leases = 0;
+        private long lastUsed = System.currentTimeMillis();
+
+        Pooled(SSHClient client) {
+            this.client = client;
+        }
+    }
+
+}
@@ -5,8 +5,8 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
 import ru.yandex.qatools.allure.annotations.Attachment;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.text.NumberFormat;
@@ -130,6 +130,7 @@ public class StepCore {
 
     /**
      * Executes white space tolerant template comparison
+     * Location of the first difference is reported in case of failure
      *
      * @param templateName String, name of the template without .template extension
      * @param pathToResults String, path on the file system to the file which shall be compared with template
@@ -142,11 +143,10 @@ public class StepCore {
         File template = new File(templatePath);
         File results = new File(pathToResults);
 
-        String sFile = FileCore.readToString(template);
-        String sResults = FileCore.readToString(results);
-
         //evaluate the template
-        String templateAfteEval = replaceInTemplate(sFile);
+        StringWriter writer = new StringWriter();
+        renderTemplate(template, writer);
+        String templateAfteEval = writer.toString();
 
         //attach template after evaluation to the report
         File temp = FileCore.createTempFile(templateName,"template");
@@ -154,13 +154,10 @@ public class StepCore {
         String tempPath = temp.getAbsolutePath();
         attachFileToReport(templateName + ".template","text/plain",tempPath);
 
-        //trim template content and string to compare
-        String templateContent = templateAfteEval.trim().replaceAll("\\s+","");
-        String resultToCompare = sResults.trim().replaceAll("\\s+","");
-
-        //compare ignoring white spaces
-        if ( ! resultToCompare.matches(templateContent) ) {
-            Log.error("Template comparison failed!");
+        //compare ignoring white spaces, results are read as a stream
+        TemplateComparator.Mismatch mismatch = new TemplateComparator(templateAfteEval).compare(results);
+        if ( mismatch != null ) {
+            Log.error("Template comparison failed! " + mismatch);
         }
     }
 
@@ -178,19 +175,8 @@ public class StepCore {
         String templatePath = searchForTemplate(templateName);
 
         File template = new File(templatePath);
-        String sFile = FileCore.readToString(template);
-
-        //evaluate the template
-        String templateAfteEval = replaceInTemplate(sFile);
-
-        //attach template after evaluation to the report
-        File temp = FileCore.createTempFile(templateName,"template");
-        FileCore.appendToFile(temp, templateAfteEval);
-        String tempPath = temp.getAbsolutePath();
-        attachFileToReport(templateName + ".template","text/plain",tempPath);
-
-        return temp;
 
+        return writeTemplate(templateName, template);
     }
 
 
@@ -206,14 +192,31 @@ public class StepCore {
      */
     public File evaluateTemplate(String templateName, String templateDirPath){
         File template = new File(templateDirPath + File.separator + templateName + ".template");
-        String sFile = FileCore.readToString(template);
+
+        return writeTemplate(templateName, template);
+    }
+
+
+    /**
+     * helper function used in evaluateTemplate method
+     * writes template after evaluation to a temporary file and attaches it to the report
+     *
+     * @param templateName String, name of the template without .template extension
+     * @param template File, template file
+     *
+     * @return File
+     */
+    private File writeTemplate(String templateName, File template) {
+        File temp = FileCore.createTempFile(templateName,"template");
 
         //evaluate the template
-        String templateAfterEval = replaceInTemplate(sFile);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            renderTemplate(template, writer);
+        } catch (IOException e) {
+            Log.error( "", e );
+        }
 
         //attach template after evaluation to the report
-        File temp = FileCore.createTempFile(templateName,"template");
-        FileCore.appendToFile(temp, templateAfterEval);
         String tempPath = temp.getAbsolutePath();
         attachFileToReport(templateName + ".template","text/plain",tempPath);
 
@@ -225,33 +228,40 @@ public class StepCore {
     /**
      * helper function used in evaluateTemplate method
      * replaces variables with values from storage
+     * Template is compiled only once and rendered straight to the output
      *
-     * @param input String, template content
-     *
-     * @return String
+     * @param template File, template file
+     * @param out Writer, output
      */
-    private String replaceInTemplate (String input) {
-        Integer beignIdx = input.indexOf("${");
-        Integer endIdx = input.indexOf("}", beignIdx);
+    private void renderTemplate (File template, Writer out) {
+        try {
+            Template.compile(template).render(out, this::resolvePlaceholder);
+        } catch (IOException e) {
+            Log.error( "", e );
+        }
+    }
 
-        if (beignIdx != -1) {
-            if ( endIdx == -1 ){
-                Log.error("Typo in template! Missing closing bracket }. Can't do variable substitution!");
-            }
 
-            String toReplace = input.substring(beignIdx+2, endIdx);
-            String toCheck = toReplace;
-            if ( toReplace.startsWith("ctx.") ){
-                toCheck = toReplace.substring(4);
-            }
-            String result = checkIfInputIsVariable(toCheck).toString();
+    /**
+     * helper function used in renderTemplate method
+     * returns value of a template variable like ctx.storageName.storageKey
+     *
+     * @param toReplace String, name of the variable
+     *
+     * @return String or null if variable does not exist in the storage
+     */
+    private String resolvePlaceholder (String toReplace) {
+        String toCheck = toReplace;
+        if ( toReplace.startsWith("ctx.") ){
+            toCheck = toReplace.substring(4);
+        }
+        String result = checkIfInputIsVariable(toCheck).toString();
 
-            if (  ! toReplace.equals("ctx." + result) ) {
-                return replaceInTemplate(input.replace("${" + toReplace + "}", result));
-            }
+        if ( toReplace.equals("ctx." + result) ) {
+            return null;
         }
 
-        return input;
+        return result;
     }
 
 
@@ -321,28 +331,9 @@ public class StepCore {
             Log.error("List of positive filters is empty!");
         }
 
-        String output = "";
-        List<String> lines = FileCore.readLines(input);
-
-        String sFilter = "";
-        for (String filter : filters) {
-            sFilter = sFilter + ", " + filter;
-        }
-
-        String n = System.lineSeparator();
-
-        Log.debug("Going to apply positive filter [" + sFilter.substring(1) + "]");
-        for ( String line : lines ) {
-            for ( String filter : filters) {
-                if ( line.contains(filter) ) {
-                    output = output + line + n;
-                }
-            }
-        }
-
-        output = output.trim();
+        Log.debug("Going to apply positive filter " + filters);
 
-        return output;
+        return LineFilter.positive(filters).apply(input);
     }
 
 
@@ -365,32 +356,9 @@ public class StepCore {
             Log.error("List of negative filters is empty!");
         }
 
-        String output = "";
-        List<String> lines = FileCore.readLines(input);
-
-        String sFilter = "";
-        for (String filter : filters) {
-            sFilter = sFilter + ", " + filter;
-        }
-
-        String n = System.lineSeparator();
-
-        Log.debug("Going to apply negative filter [" + sFilter.substring(1) + "]");
-        for ( String line : lines ) {
-            Boolean isMatch = false;
-            for ( String filter : filters) {
-                if ( line.contains(filter) ) {
-                    isMatch = true;
-                }
-            }
-            if ( ! isMatch ) {
-                output = output + line + n;
-            }
-        }
-
-        output = output.trim();
+        Log.debug("Going to apply negative filter " + filters);
 
-        return output;
+        return LineFilter.negative(filters).apply(input);
     }
 
 
@@ -414,41 +382,30 @@ public class StepCore {
             Log.error("List of block filters is empty!");
         }
 
-        String output = "";
-        String n = System.lineSeparator();
-        List<String> lines = FileCore.readLines(input);
+        checkBlockFilters(filters);
 
+        return LineFilter.block(filters).apply(input);
+    }
+
+
+    /**
+     * helper function used to check if begin and end keywords of block filters are defined
+     *
+     * @param filters List<Map<String, String>>, list of block filters
+     */
+    private void checkBlockFilters (List<Map<String, String>> filters) {
         for ( Map<String, String> filter : filters) {
-            Boolean isMatch = false;
             String begin = filter.get("begin");
             String end = filter.get("end");
 
-            if (begin == null || begin == "") {
+            if (begin == null || begin.equals("")) {
                 Log.error("begin keyword of block filter " + filter + " null or empty!");
             }
 
-            if (end == null || end == "") {
+            if (end == null || end.equals("")) {
                 Log.error("end keyword of block filter " + filter + " null or empty!");
             }
-
-            for ( String line : lines ) {
-                if ( line.contains( end ) ) {
-                    output = output + line + n;
-                    isMatch = false;
-                }
-                if ( line.contains( begin ) ) {
-                    isMatch = true;
-                    }
-                if ( isMatch ) {
-                    output = output + line + n;
-                }
-            }
-
         }
-
-        output = output.trim();
-
-        return output;
     }
 
 
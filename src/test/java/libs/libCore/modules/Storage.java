@@ -2,11 +2,11 @@ package libs.libCore.modules;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import org.apache.commons.lang.math.NumberUtils;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 
 import java.io.*;
 import java.util.*;
-import java.util.regex.Pattern;
 
 public class Storage {
 
@@ -32,47 +32,55 @@ public class Storage {
      *
      */
     public <T> void set (String textKey, T value) {
-        Log.debug("Try to set " + textKey + " to " + value);
+        set(StoragePath.compile(textKey), value);
+    }
+
+
+    /**
+     * sets value of particular key in the storage
+     * if key does not exists it will be created
+     *
+     * @param path StoragePath, compiled path to the value
+     * @param value object value
+     *
+     */
+    public <T> void set (StoragePath path, T value) {
+        Log.debug("Try to set " + path + " to " + value);
 
-        Integer idx = 0;
-        String[] t_textKey = textKey.split("[.]");
-        String StorageName = t_textKey[idx];
+        String StorageName = path.getStorageName();
 
         HashMap<String, Object> Storage = ctx.Object.get(StorageName, HashMap.class);
 
         if ( Storage == null ) {
-            Log.error("Can't set " + textKey + " to " + value + ". Storage does not exists or null!");
+            Log.error("Can't set " + path + " to " + value + ". Storage does not exists or null!");
         }
 
-        for(idx = 1; idx < t_textKey.length; idx++) {
-            String key = t_textKey[idx].split("\\[")[0];
+        for(int idx = 0; idx < path.size(); idx++) {
+            String key = path.getKey(idx);
             //if key does not exist lets create one
             if ( Storage.get(key) == null ) {
-                if ( idx < t_textKey.length-1 ) {
-                    if ( t_textKey[idx].contains("[") ){
-                        String sIndex = t_textKey[idx].split("\\[")[1].replace("]","");
-                        if ( sIndex.equals("0") ) {
+                if ( idx < path.size()-1 ) {
+                    if ( path.hasIndex(idx) ){
+                        if ( path.getIndex(idx) == 0 ) {
                             ArrayList<Object> tValue = new ArrayList<>();
                             HashMap<String, Object> tInnerValue = new HashMap<>();
                             tValue.add(tInnerValue);
                             Storage.put(key, tValue);
                         } else {
-                            Log.error("Can't set " + textKey + " to " + value + ". Key does not exists or null!");
+                            Log.error("Can't set " + path + " to " + value + ". Key does not exists or null!");
                         }
                     } else {
                         HashMap<String, Object> tValue = new HashMap<>();
                         Storage.put(key, tValue);
                     }
                 } else {
-                    if ( t_textKey[idx].contains("[") ) {
-                        String sIndex = t_textKey[idx].split("\\[")[1].replace("]", "");
-                        Integer iIndex = Integer.valueOf(sIndex);
-                        if (iIndex == 0) {
+                    if ( path.hasIndex(idx) ) {
+                        if ( path.getIndex(idx) == 0 ) {
                             ArrayList<Object> tValue = new ArrayList<>();
                             tValue.add(null);
                             Storage.put(key, tValue);
                         } else {
-                            Log.error("Can't set " + textKey + " to " + value + ". Key does not exists or null!");
+                            Log.error("Can't set " + path + " to " + value + ". Key does not exists or null!");
                         }
                     } else {
                         Object tValue = null;
@@ -82,10 +90,10 @@ public class Storage {
                 //Log.error("Can't set " + textKey + " to " + value + ". Key does not exists or null!");
             }
 
-            Storage = parseMap(Storage, t_textKey[idx], value);
+            Storage = parseMap(Storage, path, idx, value);
 
         }
-        Log.debug(textKey + " was set to " + value);
+        Log.debug(path + " was set to " + value);
     }
 
 
@@ -93,24 +101,25 @@ public class Storage {
      * helper function used by set method
      *
      * @param Storage HashMap
-     * @param key String
+     * @param path StoragePath
+     * @param idx int, position of the key in the path
      * @param value T
      *
      * @return HashMap
      */
-    private <T> HashMap parseMap (HashMap Storage, String key, T value) {
-        String tKey = key.split("\\[")[0];
+    private <T> HashMap parseMap (HashMap Storage, StoragePath path, int idx, T value) {
+        String tKey = path.getKey(idx);
         if ( Storage.get(tKey) instanceof Map ) {
-            Storage = (HashMap<String, Object>) Storage.get(key);
+            Storage = (HashMap<String, Object>) Storage.get(tKey);
         } else if (Storage.get(tKey) instanceof List ) {
-            Integer index = Integer.valueOf(key.substring(key.indexOf("[") + 1, key.indexOf("]")));
+            Integer index = path.getIndex(idx);
             ArrayList<Object> t_Array = (ArrayList<Object>) Storage.get(tKey);
             if (t_Array.size() - index == 0) {
                 HashMap<String, Object> tMap = new HashMap<>();
                 t_Array.add(tMap);
                 Storage = (HashMap<String, Object>) t_Array.get(index);
             } else if (t_Array.size() - index < 0) {
-                Log.error("Can't set " + Storage + "." + key + " to " + value + ". Key does not exists or null!");
+                Log.error("Can't set " + Storage + "." + path.getElement(idx) + " to " + value + ". Key does not exists or null!");
             } else if (t_Array.get(index) instanceof Map) {
                 Storage = (HashMap<String, Object>) t_Array.get(index);
             } else {
@@ -168,8 +177,7 @@ public class Storage {
         if ( dataMap != null ) {
             Log.info("--- start ---");
             for (Map.Entry<String, Object> entry : dataMap.entrySet()) {
-                String[] tmp = entry.getValue().getClass().getName().split(Pattern.quote(".")); // Split on period.
-                String type = tmp[2];
+                String type = entry.getValue().getClass().getSimpleName();
                 Log.info("(" + type + ")" + entry.getKey() + " = " + entry.getValue().toString());
             }
             Log.info("--- end ---");
@@ -186,41 +194,45 @@ public class Storage {
      * @return value from storage
      */
     public <T> T get(String path) {
+        return get(StoragePath.compile(path));
+    }
+
+
+    /**
+     * Retrieves particular key value from the storage.
+     * Usage is get(StoragePath.compile("StorageName.key1.nestedKey2[2]"))
+     * Path is already parsed so no parsing is done here
+     *
+     * @param path StoragePath, compiled path to the value in the storage
+     *
+     * @return value from storage
+     */
+    public <T> T get(StoragePath path) {
         //do not check if storage exists if we are dealing with a number
-        if ( NumberUtils.isNumber(path) ) {
+        if ( path.isNumber() ) {
             Log.warn("Value of " + path + " is null");
             return null;
         } else {
-            // if no dots in the path return just the storage ->
+            // if no keys in the path return just the storage ->
             // for example "TestData" was entered but not "TestData.key1"
-            if ( ! path.contains(".") ) {
-                Object value = ctx.Object.get(path, HashMap.class);
+            if ( path.isStorage() ) {
+                Object value = ctx.Object.get(path.getStorageName(), HashMap.class);
                 Log.debug("Value of " + path + " is " + value);
                 return (T) value;
             }
 
             //get hashmap with particular storage if it exists else return null
-            String[] tmp = path.split("\\.");
-            Object value = ctx.Object.get(tmp[0], HashMap.class);
+            Object value = ctx.Object.get(path.getStorageName(), HashMap.class);
 
             if ( value != null ) {
-                String sTmp = "";
-                for (int i = 1; i < tmp.length; i++) {
-                    sTmp = sTmp + "." + tmp[i];
-                }
-
                 //iterate over elements
-                String[] elements = sTmp.substring(1).split("\\.");
-                for (String element : elements) {
-                    String ename = element.split("\\[")[0];
-
-                    if (AbstractMap.class.isAssignableFrom(value.getClass())) {
-                        value = ((AbstractMap<String, Object>) value).get(ename);
+                for (int i = 0; i < path.size(); i++) {
+                    if ( value instanceof AbstractMap ) {
+                        value = ((AbstractMap<String, Object>) value).get(path.getKey(i));
                         if ( value != null ) {
-                            if (element.contains("[")) {
-                                if (List.class.isAssignableFrom(value.getClass())) {
-                                    Integer index = Integer.valueOf(element.substring(element.indexOf("[") + 1, element.indexOf("]")));
-                                    value = ((List<Object>) value).get(index);
+                            if ( path.hasIndex(i) ) {
+                                if ( value instanceof List ) {
+                                    value = ((List<Object>) value).get(path.getIndex(i));
                                     if ( value == null ){
                                         Log.warn("Value of " + path + " is null");
                                         return null;
@@ -247,6 +259,13 @@ public class Storage {
         }
     }
 
+    /**
+     * Writes current content of the storage to the persistent storage file
+     * Content is appended to the file, previous content with the same identifier becomes outdated
+     *
+     * @param name String, name of the storage
+     * @param identifier String, identifier that can be used later on to read the content
+     */
     public void writeToFile(String name, String identifier) {
         Log.debug("Flushing current content of the storage " + name + " to the file");
         if ( name == null || name.equals("") ){
@@ -263,40 +282,19 @@ public class Storage {
             Gson gson = new GsonBuilder().create();
             String content = gson.toJson(dataMap);
 
-            if ( ! STORAGE_FILE.exists() ) {
-                FileCore.writeToFile(STORAGE_FILE, identifier + "=" + content + System.getProperty("line.separator"));
-                Log.debug("Storage file " + STORAGE_FILE.getAbsolutePath() + " created");
-            } else {
-                //overwrite line with identifier if exist else add new line
-                Boolean overwriteWasDone = false;
-                List<String> lines = FileCore.readLines(STORAGE_FILE);
-
-                //just in case file exists but is empty
-                if ( lines.size() == 0 ) {
-                    FileCore.writeToFile(STORAGE_FILE, identifier + "=" + content + System.getProperty("line.separator"));
-                    Log.debug("Storage file " + STORAGE_FILE.getAbsolutePath() + " updated");
-                }
-
-                for (int i = 0; i < lines.size(); i++) {
-                    if ( lines.get(i).startsWith(identifier+"={") ) {
-                        lines.set( i, identifier + "=" + content );
-                        overwriteWasDone = true;
-                    }
-                }
-
-                if ( overwriteWasDone.equals(true) ) {
-                    FileCore.removeFile(STORAGE_FILE);
-                    for (int i = 0; i < lines.size(); i++) {
-                        FileCore.appendToFile(STORAGE_FILE, lines.get(i) + System.getProperty("line.separator"));
-                    }
-                } else {
-                    FileCore.appendToFile(STORAGE_FILE, identifier + "=" + content + System.getProperty("line.separator"));
-                }
-                Log.debug("Storage file " + STORAGE_FILE.getAbsolutePath() + " updated");
-            }
+            PersistentStorageFile.getInstance(STORAGE_FILE).put(identifier, content);
+            Log.debug("Storage file " + STORAGE_FILE.getAbsolutePath() + " updated");
         }
     }
 
+
+    /**
+     * Reads content of the storage from the persistent storage file
+     * Content is merged with current content of the storage, storage is created if it does not exist
+     *
+     * @param name String, name of the storage
+     * @param identifier String, identifier used when content was written to the file
+     */
     public void readFromFile(String name, String identifier) {
         Log.debug("Loading current content of the storage " + name + " from file");
         if ( name == null || name.equals("") ){
@@ -306,23 +304,21 @@ public class Storage {
             Log.error("identifier null or empty!");
         }
 
-        if ( STORAGE_FILE.exists() ) {
-            String content = null;
-            List<String> lines = FileCore.readLines(STORAGE_FILE);
-            for (int i = 0; i < lines.size(); i++) {
-                if ( lines.get(i).startsWith(identifier+"={") ) {
-                    content = lines.get(i);
-                    break;
-                }
+        PersistentStorageFile storageFile = PersistentStorageFile.getInstance(STORAGE_FILE);
+        if ( storageFile.exists() ) {
+            String content = storageFile.get(identifier);
+            if ( content == null ) {
+                Log.error( "Identifier " + identifier + " not found in storage file "
+                        + STORAGE_FILE.getAbsolutePath() + "! Please make sure that step "
+                        + " 'write storage (.+) with id (.+) to file'"
+                        + " was executed" );
             }
 
-            String sJson = name + " : " + content.substring(identifier.length()+1);
-            File file = FileCore.createTempFile(name + "_" + identifier + "_","config");
-            FileCore.appendToFile(file, sJson);
-            Config.create(file.getAbsolutePath());
-            //clean up
-            if ( file.exists() ) {
-                FileCore.removeFile(file);
+            try {
+                Config.createFromJson(name, new JsonParser().parse(content).getAsJsonObject());
+            } catch (JsonParseException | IllegalStateException e) {
+                Log.error( "Content of " + identifier + " in storage file "
+                        + STORAGE_FILE.getAbsolutePath() + " is not a valid json", e );
             }
         } else {
             Log.error( "Storage file " + TMP_DIR_PATH + "//"
@@ -0,0 +1,164 @@
+package libs.libCore.modules;
+
+import org.apache.commons.lang.math.NumberUtils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled form of a path to the value in the storage, like "StorageName.key1.nestedKey2[2]"
+ *
+ * Path is split into storage name, keys and list indexes only once.
+ * Compiled paths are kept in a bounded cache so the same path string is usually parsed only once.
+ * Cache is read without locking because all parallel workers read configuration through it.
+ * Frequently used paths can be compiled upfront and kept as constants, for example
+ * private static final StoragePath TIMEOUT = StoragePath.compile("Environment.Active.Web.timeout");
+ */
+public final class StoragePath {
+
+    private static final int CACHE_SIZE = 2048;
+
+    private static final Map<String, StoragePath> cache = new ConcurrentHashMap<>(256);
+
+    private final String path;
+    private final boolean number;
+    private final String storageName;
+    private final String[] elements;
+    private final String[] keys;
+    private final String[] indexes;
+    private final int[] parsedIndexes;
+
+    private StoragePath(String path) {
+        this.path = path;
+        this.number = NumberUtils.isNumber(path);
+
+        String[] tmp = path.split("\\.");
+        this.storageName = tmp.length > 0 ? tmp[0] : "";
+
+        int size = path.contains(".") ? Math.max(0, tmp.length - 1) : 0;
+        this.elements = new String[size];
+        this.keys = new String[size];
+        this.indexes = new String[size];
+        this.parsedIndexes = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            String element = tmp[i + 1];
+            elements[i] = element;
+            String[] parts = element.split("\\[");
+            keys[i] = parts.length > 0 ? parts[0] : "";
+            parsedIndexes[i] = -1;
+            if ( element.contains("[") ) {
+                int begin = element.indexOf("[") + 1;
+                int end = element.indexOf("]");
+                indexes[i] = end >= begin ? element.substring(begin, end) : element.substring(begin);
+                try {
+                    parsedIndexes[i] = Integer.parseInt(indexes[i]);
+                } catch (NumberFormatException e) {
+                    //reported when path is used
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Returns compiled path. Paths are cached so compilation is done only once per path
+     *
+     * @param path String, path to the value in the storage
+     *
+     * @return StoragePath
+     */
+    public static StoragePath compile(String path) {
+        StoragePath result = cache.get(path);
+        if ( result == null ) {
+            //paths are cheap to compile so full cache is simply cleared instead of tracking usage of each path
+            if ( cache.size() >= CACHE_SIZE ) {
+                cache.clear();
+            }
+            result = new StoragePath(path);
+            StoragePath previous = cache.putIfAbsent(path, result);
+            if ( previous != null ) {
+                result = previous;
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * @return String, path as provided by the user
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return boolean, true if path is actually a number, like "1.5"
+     */
+    public boolean isNumber() {
+        return number;
+    }
+
+    /**
+     * @return boolean, true if path points to the whole storage, like "TestData"
+     */
+    public boolean isStorage() {
+        return keys.length == 0;
+    }
+
+    /**
+     * @return String, name of the storage
+     */
+    public String getStorageName() {
+        return storageName;
+    }
+
+    /**
+     * @return int, number of keys after the storage name
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @param i int, position of the element
+     * @return String, element as written in the path, like "key[2]"
+     */
+    public String getElement(int i) {
+        return elements[i];
+    }
+
+    /**
+     * @param i int, position of the element
+     * @return String, key without index, like "key"
+     */
+    public String getKey(int i) {
+        return keys[i];
+    }
+
+    /**
+     * @param i int, position of the element
+     * @return boolean, true if element contains list index
+     */
+    public boolean hasIndex(int i) {
+        return indexes[i] != null;
+    }
+
+    /**
+     * @param i int, position of the element
+     * @return int, list index
+     * @throws NumberFormatException when index is not a number
+     */
+    public int getIndex(int i) {
+        if ( parsedIndexes[i] < 0 ) {
+            return Integer.parseInt(indexes[i]);
+        }
+        return parsedIndexes[i];
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+
+}
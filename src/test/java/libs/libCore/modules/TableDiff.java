@@ -0,0 +1,575 @@
+package libs.libCore.modules;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Compares content of two tables in the data base
+ *
+ * For Oracle and MS SQL Server rows of both tables are assigned to buckets by a hash of key columns,
+ * number of rows and sum of row hashes is calculated per bucket on the server. Only rows from buckets
+ * that differ are read, bucket by bucket, and compared.
+ * For other data bases, or when hashes can't be calculated on the server (for example because of LOB columns),
+ * both tables are streamed sorted by key columns and merge compared.
+ * In both cases tables are never loaded into memory as a whole.
+ *
+ * Differences are reported in both directions, rows that are only in table A and rows that are only in table B.
+ * Row that exists in both tables but with different values is reported in both directions.
+ * If key columns are not given all columns are used as a key, otherwise key shall be unique.
+ */
+public class TableDiff {
+
+    private static final int MAX_REPORTED = 100;
+    private static final int ROWS_PER_BUCKET = 10000;
+    private static final int MAX_BUCKETS = 1000000;
+    private static final int MAX_BUCKETS_PER_QUERY = 1000;
+    private static final List<Integer> NOT_HASHABLE_TYPES = Arrays.asList(Types.BLOB, Types.CLOB, Types.NCLOB,
+            Types.LONGVARBINARY, Types.LONGVARCHAR, Types.LONGNVARCHAR, Types.SQLXML, Types.OTHER, Types.STRUCT, Types.ARRAY);
+
+    private final Connection connectionA;
+    private final Connection connectionB;
+    private final int fetchSize;
+
+    /**
+     * Two connections are used so both tables can be streamed at the same time
+     *
+     * @param connectionA Connection, used to read table A
+     * @param connectionB Connection, used to read table B
+     * @param fetchSize int, number of rows fetched from the data base at once
+     */
+    public TableDiff(Connection connectionA, Connection connectionB, int fetchSize) {
+        this.connectionA = connectionA;
+        this.connectionB = connectionB;
+        this.fetchSize = fetchSize;
+    }
+
+
+    /**
+     * Compares content of two tables
+     *
+     * @param tableA String, name of the table A
+     * @param tableB String, name of the table B
+     * @param keyColumns String..., names of key columns, all columns are used if not provided
+     *
+     * @return Result
+     *
+     * @throws SQLException when tables can't be read
+     */
+    public Result compare(String tableA, String tableB, String... keyColumns) throws SQLException {
+        String[] columns = readColumns(tableA, tableB);
+        String[] keys = keyColumns.length > 0 ? keyColumns : columns;
+        for (String key : keys) {
+            if ( indexOf(columns, key) < 0 ) {
+                Log.error("Key column " + key + " does not exist in table " + tableA);
+            }
+        }
+
+        String product = connectionA.getMetaData().getDatabaseProductName();
+        Dialect dialect = product.contains("Oracle") ? Dialect.ORACLE : product.contains("Microsoft") ? Dialect.MSSQL : null;
+        Map<String, Integer> types = readTypes(tableA);
+        if ( dialect != null && isHashable(types) ) {
+            Result result = new Result(tableA, tableB, columns);
+            try {
+                compareByHashes(dialect, types, result, keys);
+                return result;
+            } catch (SQLException e) {
+                Log.warn("Hashes of tables can't be calculated in the data base, tables will be merge compared. " + e.getMessage());
+            }
+        }
+
+        Result result = new Result(tableA, tableB, columns);
+        compareByMerge(result, keys);
+        return result;
+    }
+
+
+    /**
+     * helper function used to read names of columns of both tables
+     * Tables shall have the same columns, order of columns does not matter
+     *
+     * @return String[], names of columns of table A
+     */
+    private String[] readColumns(String tableA, String tableB) throws SQLException {
+        String[] columnsA = readColumns(connectionA, tableA);
+        String[] columnsB = readColumns(connectionB, tableB);
+        Set<String> a = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        a.addAll(Arrays.asList(columnsA));
+        Set<String> b = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        b.addAll(Arrays.asList(columnsB));
+        if ( ! a.equals(b) ) {
+            Log.error("Tables have different columns. " + tableA + " " + Arrays.toString(columnsA) +
+                    ", " + tableB + " " + Arrays.toString(columnsB));
+        }
+        return columnsA;
+    }
+
+    private static String[] readColumns(Connection connection, String table) throws SQLException {
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT * FROM " + table + " WHERE 1=0")) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            String[] columns = new String[metaData.getColumnCount()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = metaData.getColumnLabel(i + 1);
+            }
+            return columns;
+        }
+    }
+
+    /**
+     * helper function used to read sql types of columns
+     *
+     * @return Map, column name (case insensitive) to type as defined in java.sql.Types
+     */
+    private Map<String, Integer> readTypes(String table) throws SQLException {
+        Map<String, Integer> result = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        try (Statement st = connectionA.createStatement();
+             ResultSet rs = st.executeQuery("SELECT * FROM " + table + " WHERE 1=0")) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                result.put(metaData.getColumnLabel(i), metaData.getColumnType(i));
+            }
+        }
+        return result;
+    }
+
+    private static boolean isHashable(Map<String, Integer> types) {
+        for (Map.Entry<String, Integer> entry : types.entrySet()) {
+            if ( NOT_HASHABLE_TYPES.contains(entry.getValue()) ) {
+                Log.debug("Column " + entry.getKey() + " can't be hashed in the data base");
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private enum Dialect {
+        ORACLE {
+            String bucket(String[] keys, Map<String, Integer> types, int buckets) {
+                return "ORA_HASH(" + concat(keys, types) + ", " + (buckets - 1) + ")";
+            }
+            String hash(String[] columns, Map<String, Integer> types) {
+                return "ORA_HASH(" + concat(columns, types) + ")";
+            }
+            //dates are converted with explicit format so time part is not lost, nulls are distinguished from empty values
+            private String concat(String[] columns, Map<String, Integer> types) {
+                StringBuilder result = new StringBuilder();
+                for (String column : columns) {
+                    Integer type = types.get(column);
+                    String text;
+                    if ( type != null && ( type == Types.DATE || type == Types.TIMESTAMP || type == Types.TIME ) ) {
+                        text = "TO_CHAR(CAST(" + column + " AS TIMESTAMP), 'YYYY-MM-DD HH24:MI:SS.FF9')";
+                    } else if ( type != null && ( type == Types.BINARY || type == Types.VARBINARY ) ) {
+                        text = "RAWTOHEX(" + column + ")";
+                    } else {
+                        text = "TO_CHAR(" + column + ")";
+                    }
+                    if ( result.length() > 0 ) {
+                        result.append(" || '|' || ");
+                    }
+                    result.append("CASE WHEN ").append(column).append(" IS NULL THEN '~' ELSE 'v' || ").append(text).append(" END");
+                }
+                return result.toString();
+            }
+        },
+        MSSQL {
+            //checksum is used only to distribute rows to buckets, it does not have to detect changes
+            String bucket(String[] keys, Map<String, Integer> types, int buckets) {
+                return "ABS(CAST(CHECKSUM(" + String.join(", ", keys) + ") AS BIGINT)) % " + buckets;
+            }
+            //first 8 bytes of SHA-256, decimal so sum of a bucket does not overflow
+            String hash(String[] columns, Map<String, Integer> types) {
+                return "CAST(CAST(SUBSTRING(HASHBYTES('SHA2_256', " + concat(columns, types) + "), 1, 8) AS BIGINT) AS DECIMAL(38, 0))";
+            }
+            //dates keep fraction of seconds, floats are converted via their binary form so no digit is lost
+            private String concat(String[] columns, Map<String, Integer> types) {
+                StringBuilder result = new StringBuilder();
+                for (String column : columns) {
+                    Integer type = types.get(column);
+                    String text;
+                    if ( type != null && ( type == Types.DATE || type == Types.TIMESTAMP || type == Types.TIME ) ) {
+                        text = "CONVERT(NVARCHAR(MAX), " + column + ", 121)";
+                    } else if ( type != null && ( type == Types.BINARY || type == Types.VARBINARY ) ) {
+                        text = "CONVERT(NVARCHAR(MAX), " + column + ", 1)";
+                    } else if ( type != null && ( type == Types.FLOAT || type == Types.DOUBLE || type == Types.REAL ) ) {
+                        text = "CONVERT(NVARCHAR(MAX), CONVERT(VARBINARY(8), " + column + "), 1)";
+                    } else {
+                        text = "CONVERT(NVARCHAR(MAX), " + column + ")";
+                    }
+                    if ( result.length() > 0 ) {
+                        result.append(" + N'|' + ");
+                    }
+                    result.append("CASE WHEN ").append(column).append(" IS NULL THEN N'~' ELSE N'v' + ").append(text).append(" END");
+                }
+                return result.toString();
+            }
+        };
+
+        abstract String bucket(String[] keys, Map<String, Integer> types, int buckets);
+        abstract String hash(String[] columns, Map<String, Integer> types);
+    }
+
+
+    /**
+     * helper function used to compare tables using hashes calculated in the data base
+     * Only rows of buckets with different number of rows or sum of row hashes are read and compared
+     */
+    private void compareByHashes(Dialect dialect, Map<String, Integer> types, Result result, String[] keys) throws SQLException {
+        long count = Math.max(count(connectionA, result.tableA), count(connectionB, result.tableB));
+        int buckets = (int) Math.min(MAX_BUCKETS, Math.max(1, count / ROWS_PER_BUCKET));
+        String bucket = dialect.bucket(keys, types, buckets);
+        String hash = dialect.hash(result.columns, types);
+
+        String query = "SELECT b, COUNT(*), SUM(h) FROM (SELECT " + bucket + " b, " + hash + " h FROM ${table}) x GROUP BY b";
+        Map<Long, String> hashesA = aggregate(connectionA, query.replace("${table}", result.tableA));
+        Map<Long, String> hashesB = aggregate(connectionB, query.replace("${table}", result.tableB));
+
+        SortedSet<Long> differ = new TreeSet<>();
+        for (Map.Entry<Long, String> entry : hashesA.entrySet()) {
+            if ( ! entry.getValue().equals(hashesB.get(entry.getKey())) ) {
+                differ.add(entry.getKey());
+            }
+        }
+        for (Long key : hashesB.keySet()) {
+            if ( ! hashesA.containsKey(key) ) {
+                differ.add(key);
+            }
+        }
+        Log.debug(differ.size() + " of " + buckets + " buckets of " + result.tableA + " and " + result.tableB + " differ");
+
+        List<Long> group = new ArrayList<>();
+        for (Long key : differ) {
+            group.add(key);
+            if ( group.size() == MAX_BUCKETS_PER_QUERY || key.equals(differ.last()) ) {
+                if ( result.isFull() ) {
+                    result.complete = false;
+                    return;
+                }
+                compareBuckets(result, bucket, group);
+                group.clear();
+            }
+        }
+    }
+
+    private long count(Connection connection, String table) throws SQLException {
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private Map<Long, String> aggregate(Connection connection, String query) throws SQLException {
+        Map<Long, String> result = new HashMap<>();
+        try (Statement st = connection.createStatement()) {
+            st.setFetchSize(fetchSize);
+            try (ResultSet rs = st.executeQuery(query)) {
+                while ( rs.next() ) {
+                    result.put(rs.getLong(1), rs.getLong(2) + "/" + rs.getBigDecimal(3));
+                }
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * helper function used to compare rows of particular buckets
+     * Rows of both tables are streamed ordered by bucket, rows of a single bucket are compared in memory
+     */
+    private void compareBuckets(Result result, String bucket, List<Long> buckets) throws SQLException {
+        StringBuilder in = new StringBuilder();
+        for (Long b : buckets) {
+            in.append(in.length() > 0 ? "," : "").append(b);
+        }
+        String query = "SELECT b, " + String.join(", ", result.columns) + " FROM (SELECT " + bucket + " b, " +
+                String.join(", ", result.columns) + " FROM ${table}) x WHERE b IN (" + in + ") ORDER BY b";
+
+        try (Cursor a = new Cursor(connectionA, query.replace("${table}", result.tableA), result.columns.length, 1);
+             Cursor b = new Cursor(connectionB, query.replace("${table}", result.tableB), result.columns.length, 1)) {
+            while ( a.row != null || b.row != null ) {
+                long current = a.row == null ? b.bucket : b.row == null ? a.bucket : Math.min(a.bucket, b.bucket);
+                Map<List<Object>, Integer> rows = new HashMap<>();
+                Map<List<Object>, Object[]> values = new HashMap<>();
+                while ( a.row != null && a.bucket == current ) {
+                    List<Object> key = normalize(a.row);
+                    rows.merge(key, 1, Integer::sum);
+                    values.putIfAbsent(key, a.row);
+                    a.next();
+                }
+                while ( b.row != null && b.bucket == current ) {
+                    List<Object> key = normalize(b.row);
+                    rows.merge(key, -1, Integer::sum);
+                    values.putIfAbsent(key, b.row);
+                    b.next();
+                }
+                for (Map.Entry<List<Object>, Integer> entry : rows.entrySet()) {
+                    for (int i = 0; i < Math.abs(entry.getValue()); i++) {
+                        result.add(entry.getValue() > 0, values.get(entry.getKey()));
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * helper function used to compare tables streamed in the order of key columns
+     * Null values are ordered first in all data bases
+     */
+    private void compareByMerge(Result result, String[] keys) throws SQLException {
+        StringBuilder order = new StringBuilder();
+        int[] keyIdx = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            order.append(i > 0 ? ", " : "").append("CASE WHEN ").append(keys[i]).append(" IS NULL THEN 0 ELSE 1 END, ").append(keys[i]);
+            keyIdx[i] = indexOf(result.columns, keys[i]);
+        }
+        String query = "SELECT " + String.join(", ", result.columns) + " FROM ${table} ORDER BY " + order;
+
+        try (Cursor a = new Cursor(connectionA, query.replace("${table}", result.tableA), result.columns.length, 0);
+             Cursor b = new Cursor(connectionB, query.replace("${table}", result.tableB), result.columns.length, 0)) {
+            while ( a.row != null || b.row != null ) {
+                int c = a.row == null ? 1 : b.row == null ? -1 : compareKeys(a.row, b.row, keyIdx);
+                if ( c < 0 ) {
+                    result.add(true, a.row);
+                    a.nextInOrder(keyIdx);
+                } else if ( c > 0 ) {
+                    result.add(false, b.row);
+                    b.nextInOrder(keyIdx);
+                } else {
+                    if ( ! normalize(a.row).equals(normalize(b.row)) ) {
+                        result.add(true, a.row);
+                        result.add(false, b.row);
+                    }
+                    a.nextInOrder(keyIdx);
+                    b.nextInOrder(keyIdx);
+                }
+            }
+        }
+    }
+
+    private static int compareKeys(Object[] a, Object[] b, int[] keyIdx) {
+        for (int idx : keyIdx) {
+            int c = compareValues(a[idx], b[idx]);
+            if ( c != 0 ) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private static int compareValues(Object a, Object b) {
+        if ( a == null || b == null ) {
+            return a == null ? ( b == null ? 0 : -1 ) : 1;
+        }
+        if ( a instanceof Number && b instanceof Number ) {
+            return toBigDecimal(a).compareTo(toBigDecimal(b));
+        }
+        if ( a instanceof Comparable && a.getClass().equals(b.getClass()) ) {
+            //values are of the same class so they are comparable with each other
+            @SuppressWarnings("unchecked")
+            Comparable<Object> comparable = (Comparable<Object>) a;
+            return comparable.compareTo(b);
+        }
+        return String.valueOf(a).compareTo(String.valueOf(b));
+    }
+
+
+    /**
+     * helper function used to create representation of a row that can be used as a key of a map
+     * Numbers of different types but equal values are equal, arrays are compared by content
+     */
+    private static List<Object> normalize(Object[] row) {
+        List<Object> result = new ArrayList<>(row.length);
+        for (Object value : row) {
+            if ( value instanceof Number ) {
+                BigDecimal number = toBigDecimal(value);
+                result.add(number == null ? value : number);
+            } else if ( value instanceof byte[] ) {
+                result.add(ByteBuffer.wrap((byte[]) value));
+            } else if ( value instanceof java.util.Date && ! (value instanceof Timestamp) ) {
+                result.add(new Timestamp(((java.util.Date) value).getTime()));
+            } else {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+
+    private static BigDecimal toBigDecimal(Object number) {
+        try {
+            BigDecimal result = number instanceof BigDecimal ? (BigDecimal) number : new BigDecimal(number.toString());
+            return result.signum() == 0 ? BigDecimal.ZERO : result.stripTrailingZeros();
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static int indexOf(String[] columns, String column) {
+        for (int i = 0; i < columns.length; i++) {
+            if ( columns[i].equalsIgnoreCase(column) ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Forward only result set of a table, rows are read one by one
+     */
+    private final class Cursor implements AutoCloseable {
+
+        private final Statement statement;
+        private final ResultSet rs;
+        private final int columns;
+        private final int offset;
+        private Object[] row;
+        private long bucket;
+
+        /**
+         * @param offset int, 1 if the first column is a bucket, 0 otherwise
+         */
+        Cursor(Connection connection, String query, int columns, int offset) throws SQLException {
+            this.columns = columns;
+            this.offset = offset;
+            this.statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            this.rs = statement.executeQuery(query);
+            next();
+        }
+
+        void next() throws SQLException {
+            if ( ! rs.next() ) {
+                row = null;
+                return;
+            }
+            if ( offset > 0 ) {
+                bucket = rs.getLong(1);
+            }
+            row = new Object[columns];
+            for (int i = 0; i < columns; i++) {
+                row[i] = rs.getObject(i + 1 + offset);
+            }
+        }
+
+        /**
+         * reads next row and checks that rows are returned in the order expected by merge comparison
+         */
+        void nextInOrder(int[] keyIdx) throws SQLException {
+            Object[] previous = row;
+            next();
+            if ( row != null && compareKeys(previous, row, keyIdx) > 0 ) {
+                Log.error("Rows are not returned in the order expected by merge comparison, " +
+                        "please check collation of key columns or provide different key columns");
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                rs.close();
+            } finally {
+                statement.close();
+            }
+        }
+    }
+
+
+    /**
+     * Result of the comparison
+     * Only first rows are kept, but all different rows are counted
+     */
+    public static final class Result {
+
+        private final String tableA;
+        private final String tableB;
+        private final String[] columns;
+        private final List<Object[]> onlyInA = new ArrayList<>();
+        private final List<Object[]> onlyInB = new ArrayList<>();
+        private long countOnlyInA = 0;
+        private long countOnlyInB = 0;
+        private boolean complete = true;
+
+        Result(String tableA, String tableB, String[] columns) {
+            this.tableA = tableA;
+            this.tableB = tableB;
+            this.columns = columns;
+        }
+
+        void add(boolean inA, Object[] row) {
+            if ( inA ) {
+                countOnlyInA++;
+                if ( onlyInA.size() < MAX_REPORTED ) {
+                    onlyInA.add(row);
+                }
+            } else {
+                countOnlyInB++;
+                if ( onlyInB.size() < MAX_REPORTED ) {
+                    onlyInB.add(row);
+                }
+            }
+        }
+
+        boolean isFull() {
+            return onlyInA.size() + onlyInB.size() >= MAX_REPORTED;
+        }
+
+        /**
+         * @return boolean, true if content of tables is the same
+         */
+        public boolean isEqual() {
+            return countOnlyInA == 0 && countOnlyInB == 0;
+        }
+
+        /**
+         * @return List<Object[]>, first rows that exist only in table A
+         */
+        public List<Object[]> getOnlyInA() {
+            return onlyInA;
+        }
+
+        /**
+         * @return List<Object[]>, first rows that exist only in table B
+         */
+        public List<Object[]> getOnlyInB() {
+            return onlyInB;
+        }
+
+        public long getCountOnlyInA() {
+            return countOnlyInA;
+        }
+
+        public long getCountOnlyInB() {
+            return countOnlyInB;
+        }
+
+        /**
+         * @return boolean, false if comparison was stopped after enough differences were found, counts are lower bounds then
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        @Override
+        public String toString() {
+            String n = System.lineSeparator();
+            StringBuilder result = new StringBuilder();
+            result.append(complete ? "" : "at least ").append(countOnlyInA).append(" rows only in ").append(tableA)
+                    .append(", ").append(complete ? "" : "at least ").append(countOnlyInB).append(" rows only in ").append(tableB);
+            if ( ! isEqual() ) {
+                result.append(n).append(RowConsumer.join(columns));
+            }
+            for (Object[] row : onlyInA) {
+                result.append(n).append("< ").append(RowConsumer.join(row));
+            }
+            for (Object[] row : onlyInB) {
+                result.append(n).append("> ").append(RowConsumer.join(row));
+            }
+            return result.toString();
+        }
+    }
+
+}
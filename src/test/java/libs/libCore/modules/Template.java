@@ -0,0 +1,154 @@
+package libs.libCore.modules;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Compiled template
+ *
+ * Template content is split only once into literal and placeholder segments, where placeholder is
+ * ${name} or ${ctx.name}. Compiled templates are cached by path and reused as long as the file was not modified.
+ * Rendering writes segments one by one straight into a Writer so no intermediate strings are created.
+ */
+public class Template {
+
+    private static final Map<String, Template> cache = new ConcurrentHashMap<>();
+
+    private final long lastModified;
+    private final long length;
+    //literals are on even positions, placeholders on odd positions
+    private final String[] segments;
+
+    private Template(long lastModified, long length, String[] segments) {
+        this.lastModified = lastModified;
+        this.length = length;
+        this.segments = segments;
+    }
+
+
+    /**
+     * Returns compiled template
+     * File is read and compiled only if it was not compiled yet or was modified since then
+     *
+     * @param file File, template file
+     *
+     * @return Template
+     */
+    public static Template compile(File file) {
+        String key = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        Template template = cache.get(key);
+        if ( template != null && template.lastModified == lastModified && template.length == length ) {
+            return template;
+        }
+
+        String content = null;
+        try {
+            content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Log.error( "Template " + key + " can't be read", e );
+        }
+
+        template = new Template(lastModified, length, tokenize(content));
+        cache.put(key, template);
+        Log.debug("Template " + key + " compiled");
+
+        return template;
+    }
+
+
+    /**
+     * Compiles template content that is not stored in a file
+     * Result is not cached
+     *
+     * @param content String, template content
+     *
+     * @return Template
+     */
+    public static Template compile(String content) {
+        return new Template(0, 0, tokenize(content));
+    }
+
+
+    /**
+     * helper function used to split template content into literal and placeholder segments
+     *
+     * @param content String, template content
+     *
+     * @return String[], literals on even positions and placeholder names on odd positions
+     */
+    private static String[] tokenize(String content) {
+        List<String> result = new ArrayList<>();
+        int last = 0;
+        int beginIdx = content.indexOf("${");
+        while ( beginIdx != -1 ) {
+            int endIdx = content.indexOf("}", beginIdx);
+            if ( endIdx == -1 ) {
+                Log.error("Typo in template! Missing closing bracket }. Can't do variable substitution!");
+            }
+            result.add(content.substring(last, beginIdx));
+            result.add(content.substring(beginIdx + 2, endIdx));
+            last = endIdx + 1;
+            beginIdx = content.indexOf("${", last);
+        }
+        result.add(content.substring(last));
+
+        return result.toArray(new String[result.size()]);
+    }
+
+
+    /**
+     * @return List<String>, names of placeholders in order of appearance, like "ctx.TestData.key"
+     */
+    public List<String> getPlaceholders() {
+        List<String> result = new ArrayList<>();
+        for (int i = 1; i < segments.length; i = i + 2) {
+            result.add(segments[i]);
+        }
+        return result;
+    }
+
+
+    /**
+     * Renders the template
+     * Each distinct placeholder is resolved only once
+     *
+     * @param out Writer, output
+     * @param resolver Function, returns value of a placeholder or null if placeholder shall be left as is
+     *
+     * @throws IOException when output can't be written
+     */
+    public void render(Writer out, Function<String, String> resolver) throws IOException {
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < segments.length; i++) {
+            if ( i % 2 == 0 ) {
+                out.write(segments[i]);
+            } else {
+                String name = segments[i];
+                String value;
+                if ( values.containsKey(name) ) {
+                    value = values.get(name);
+                } else {
+                    value = resolver.apply(name);
+                    values.put(name, value);
+                }
+                if ( value == null ) {
+                    out.write("${");
+                    out.write(name);
+                    out.write("}");
+                } else {
+                    out.write(value);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,838 @@
+package libs.libCore.modules;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * White space tolerant comparison of a file with a template
+ *
+ * Template is a regular expression, white spaces are ignored in the template and in the file.
+ * Instead of matching whole file with a single regular expression, template is split into segments
+ * which are matched one after another against the file that is read as a stream
+ * - literal blocks are compared character by character
+ * - wildcards .* and .+ followed by a literal block skip content up to the first occurrence of that block
+ * - other regular expression constructs (regex islands) are matched against a window of the file
+ * Location of the first difference is reported with its line and column in the file.
+ *
+ * When a segment fails after a segment that could have matched differently (wildcard followed by more segments
+ * or a regex island), the most recent such segment is retried with its next match, for example with the next
+ * occurrence of the literal block that follows a wildcard. Backtracking is bounded, only the last
+ * BACKTRACK_WINDOW characters are kept to retry segments and at most BACKTRACK_LIMIT retries are done
+ * without getting further in the file.
+ * If template does not match, the difference found furthest in the file is reported.
+ *
+ * Templates that use constructs which can't be split, like alternation at top level or back references,
+ * are compared as a single regex island, so file can't be longer than ISLAND_LIMIT characters in such case.
+ */
+public class TemplateComparator {
+
+    private static final int WINDOW = 64 * 1024;
+    //max number of characters a regex island can match
+    private static final int ISLAND_LIMIT = 1024 * 1024;
+    //number of characters kept in memory to retry segments that could match differently
+    private static final int BACKTRACK_WINDOW = 1024 * 1024;
+    private static final int BACKTRACK_LIMIT = 10000;
+    //number of characters of the next literal block that has to follow a regex island
+    private static final int LOOKAHEAD = 4;
+    private static final Pattern QUANTIFIER = Pattern.compile("\\{\\d+(,\\d*)?\\}");
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\[1-9k]");
+
+    private static final int LITERAL = 0;
+    private static final int WILDCARD = 1;
+    private static final int REGEX = 2;
+
+    private final List<Segment> segments;
+
+
+    /**
+     * @param template String, template content after evaluation
+     */
+    public TemplateComparator(String template) {
+        String t = removeWhitespaces(template);
+        List<Segment> parsed = parse(t);
+        if ( parsed == null ) {
+            Log.debug("Template can't be split into segments. It is going to be compared as a single regex");
+            Segment island = new Segment(REGEX, t);
+            island.pattern = Pattern.compile("(?:" + t + ")");
+            parsed = Collections.singletonList(island);
+        }
+        this.segments = parsed;
+    }
+
+
+    /**
+     * Compares file with the template
+     *
+     * @param results File, file to compare
+     *
+     * @return Mismatch, first difference or null if file matches the template
+     */
+    public Mismatch compare(File results) {
+        Mismatch mismatch = null;
+        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(results), StandardCharsets.UTF_8))) {
+            mismatch = compare(reader);
+        } catch (IOException e) {
+            Log.error( "", e );
+        }
+
+        return mismatch;
+    }
+
+
+    /**
+     * helper function used to compare content with the template as a stream
+     * Segments that could match differently are remembered as choices and the most recent one
+     * is retried when a later segment does not match
+     *
+     * @param results Reader, content to compare
+     *
+     * @return Mismatch, furthest difference or null if content matches the template
+     */
+    private Mismatch compare(Reader results) throws IOException {
+        Input input = new Input(results);
+        Deque<Choice> choices = new ArrayDeque<>();
+        Mismatch furthest = null;
+        long furthestPos = -1;
+        int retries = 0;
+        int s = 0;
+        long pos = 0;
+
+        while ( true ) {
+            //content needed to retry the oldest choice is kept
+            input.keep(choices.isEmpty() ? Long.MAX_VALUE : choices.peekLast().keep());
+
+            Mismatch mismatch = null;
+            long mismatchPos = pos;
+            long end = pos;
+
+            if ( s == segments.size() ) {
+                if ( ! input.available(pos) ) {
+                    return null;
+                }
+                mismatch = input.mismatch(pos, "end of file");
+
+            } else {
+                Segment segment = segments.get(s);
+                Segment next = s + 1 < segments.size() ? segments.get(s + 1) : null;
+
+                if ( segment.kind == LITERAL ) {
+                    String text = segment.text;
+                    for (int i = 0; i < text.length(); i++) {
+                        if ( ! input.available(pos + i) || input.charAt(pos + i) != text.charAt(i) ) {
+                            mismatchPos = pos + i;
+                            mismatch = input.mismatch(mismatchPos, text.substring(i));
+                            break;
+                        }
+                    }
+                    end = pos + text.length();
+
+                } else if ( segment.kind == WILDCARD ) {
+                    if ( ! input.available(pos + segment.min - 1) ) {
+                        mismatch = input.mismatch(pos, segment.text);
+                    } else if ( next == null ) {
+                        end = input.drain(0);
+                    } else if ( next.kind == LITERAL && s + 2 == segments.size() ) {
+                        //last literal block has to be at the end of the file
+                        Mismatch notFound = input.mismatch(pos, segment.text + next.text);
+                        end = input.drain(next.text.length()) - next.text.length();
+                        if ( end < pos + segment.min ) {
+                            mismatch = notFound;
+                        }
+                    } else {
+                        //location of the wildcard is remembered because content is dropped while searching
+                        Mismatch notFound = input.mismatch(pos, segment.text + next.text);
+                        end = input.indexOf(next.text, pos + segment.min);
+                        if ( end < 0 ) {
+                            mismatch = notFound;
+                        } else {
+                            //later occurrence of the next block could be matched as well
+                            choices.push(new Choice(s, -1, end, end + 1));
+                        }
+                    }
+
+                } else {
+                    end = matchIsland(input, segment, next == null, pos);
+                    if ( end < 0 ) {
+                        mismatch = input.mismatch(pos, next != null && next.kind == LITERAL ? segment.text + next.text : segment.text);
+                    } else if ( next != null ) {
+                        //island could match shorter or longer content as well
+                        choices.push(new Choice(s, pos, end, pos));
+                    }
+                }
+            }
+
+            if ( mismatch == null ) {
+                s++;
+                pos = end;
+                input.keep(choices.isEmpty() ? Long.MAX_VALUE : choices.peekLast().keep());
+                input.discardBefore(pos);
+                continue;
+            }
+            //retries are limited only while they do not get further in the file
+            if ( mismatchPos > furthestPos ) {
+                furthest = mismatch;
+                furthestPos = mismatchPos;
+                retries = 0;
+            }
+
+            //retry the most recent segment that could match differently
+            long resumed = -1;
+            while ( resumed < 0 && ! choices.isEmpty() ) {
+                if ( retries == BACKTRACK_LIMIT ) {
+                    Log.warn("Template could not be matched within " + BACKTRACK_LIMIT + " retries. Furthest difference is reported");
+                    return furthest;
+                }
+                retries++;
+                resumed = retry(input, choices.peek());
+                if ( resumed < 0 ) {
+                    choices.pop();
+                }
+            }
+            if ( resumed < 0 ) {
+                return furthest;
+            }
+            s = choices.peek().segment + 1;
+            pos = resumed;
+        }
+    }
+
+
+    /**
+     * helper function used to find the next match of a segment that could match differently
+     *
+     * @param input Input, content to compare
+     * @param choice Choice, segment to retry
+     *
+     * @return long, position after the next match or -1 if there is no other match
+     */
+    private long retry(Input input, Choice choice) throws IOException {
+        Segment segment = segments.get(choice.segment);
+        if ( segment.kind == WILDCARD ) {
+            //occurrences in content that was already dropped are not retried
+            long found = input.indexOf(segments.get(choice.segment + 1).text, Math.max(choice.next, input.first()));
+            if ( found >= 0 ) {
+                choice.next = found + 1;
+            }
+            return found;
+        }
+
+        if ( choice.start < input.first() ) {
+            return -1;
+        }
+        long end = nextIslandEnd(input, segment, choice.start, choice.next, choice.first);
+        if ( end >= 0 ) {
+            choice.next = end + 1;
+        }
+        return end;
+    }
+
+
+    /**
+     * helper function used to match regex island at particular position
+     * Island that is not the last one has to be followed by the beginning of the next literal block,
+     * the last one has to match till the end of the file
+     *
+     * @return long, position after the match or -1 if island does not match
+     */
+    private long matchIsland(Input input, Segment segment, boolean last, long pos) throws IOException {
+        int need = WINDOW;
+        while ( true ) {
+            input.available(pos + need);
+            Matcher m = segment.pattern.matcher(input.window(pos));
+            boolean found = last ? m.matches() : m.lookingAt();
+            if ( m.hitEnd() && ! input.isEof() ) {
+                if ( need < ISLAND_LIMIT ) {
+                    need = Math.min(need * 2, ISLAND_LIMIT);
+                    continue;
+                }
+                Log.warn("Regex " + segment.text + " can't be matched against more than " + ISLAND_LIMIT + " characters");
+                //the last island has to match content till the end of the file which was not read
+                found = found && ! last;
+            }
+            return found ? pos + m.end() : -1;
+        }
+    }
+
+
+    /**
+     * helper function used to find the next possible end of a regex island
+     * Ends are checked from the nearest one, island is always followed by the beginning of the next literal block
+     *
+     * @param start long, position of the island
+     * @param from long, first end to check
+     * @param skip long, end that was already used
+     *
+     * @return long, position after the match or -1 if island can't match more content
+     */
+    private long nextIslandEnd(Input input, Segment segment, long start, long from, long skip) throws IOException {
+        long end = from;
+        while ( end - start <= ISLAND_LIMIT ) {
+            if ( segment.lookahead != null ) {
+                end = input.find(segment.lookahead, end, start + ISLAND_LIMIT);
+                if ( end < 0 ) {
+                    return -1;
+                }
+            } else if ( end > start && ! input.available(end - 1) ) {
+                return -1;
+            }
+            input.available(end + LOOKAHEAD);
+            if ( end != skip ) {
+                Matcher m = segment.pattern.matcher(input.window(start));
+                m.useTransparentBounds(true);
+                m.region(0, (int) (end - start));
+                if ( m.matches() ) {
+                    return end;
+                }
+                //island failed before reaching the end so it can't match longer content either
+                if ( ! m.hitEnd() ) {
+                    return -1;
+                }
+            }
+            end++;
+        }
+        return -1;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static String removeWhitespaces(String input) {
+        StringBuilder result = new StringBuilder(input.length());
+        for (int i = 0; i < input.length(); i++) {
+            if ( ! isWhitespace(input.charAt(i)) ) {
+                result.append(input.charAt(i));
+            }
+        }
+        return result.toString();
+    }
+
+
+    /**
+     * Part of the template
+     */
+    private static final class Segment {
+        private final int kind;
+        private final String text;
+        private int min = 0;
+        private Pattern pattern;
+        //beginning of the next literal block, regex island only
+        private String lookahead;
+
+        Segment(int kind, String text) {
+            this.kind = kind;
+            this.text = text;
+        }
+    }
+
+
+    /**
+     * helper function used to split template into literal, wildcard and regex segments
+     *
+     * @param t String, template without white spaces
+     *
+     * @return List<Segment> or null if template uses constructs that can't be split
+     */
+    private static List<Segment> parse(String t) {
+        //first split template into atoms, each atom is a literal character or a regex with optional quantifier
+        List<String> atoms = new ArrayList<>();
+        List<Boolean> literals = new ArrayList<>();
+        int n = t.length();
+        int i = 0;
+        while ( i < n ) {
+            char c = t.charAt(i);
+            String atom = null;
+            String literal = null;
+
+            if ( c == '\\' ) {
+                if ( i + 1 >= n ) {
+                    return null;
+                }
+                char d = t.charAt(i + 1);
+                if ( d == 'Q' ) {
+                    int end = t.indexOf("\\E", i + 2);
+                    String quoted = end < 0 ? t.substring(i + 2) : t.substring(i + 2, end);
+                    i = end < 0 ? n : end + 2;
+                    for (int j = 0; j < quoted.length(); j++) {
+                        atoms.add(String.valueOf(quoted.charAt(j)));
+                        literals.add(true);
+                    }
+                    if ( quantifierEnd(t, i) != i ) {
+                        return null;
+                    }
+                    continue;
+                } else if ( "dDwWsShHvVtnrfae".indexOf(d) >= 0 ) {
+                    atom = t.substring(i, i + 2);
+                } else if ( d == 'p' || d == 'P' ) {
+                    int end = i + 2 < n && t.charAt(i + 2) == '{' ? t.indexOf('}', i + 2) : i + 2;
+                    if ( end < 0 || end >= n ) {
+                        return null;
+                    }
+                    atom = t.substring(i, end + 1);
+                } else if ( d == 'x' ) {
+                    int end = i + 2 < n && t.charAt(i + 2) == '{' ? t.indexOf('}', i + 2) : i + 3;
+                    if ( end < 0 || end >= n ) {
+                        return null;
+                    }
+                    atom = t.substring(i, end + 1);
+                } else if ( d == 'u' && i + 6 <= n ) {
+                    atom = t.substring(i, i + 6);
+                } else if ( d == 'c' && i + 3 <= n ) {
+                    atom = t.substring(i, i + 3);
+                } else if ( d == '0' ) {
+                    int end = i + 2;
+                    while ( end < n && end < i + 5 && t.charAt(end) >= '0' && t.charAt(end) <= '7' ) {
+                        end++;
+                    }
+                    atom = t.substring(i, end);
+                } else if ( Character.isLetterOrDigit(d) ) {
+                    //back references, boundaries and other constructs that depend on the context
+                    return null;
+                } else {
+                    literal = String.valueOf(d);
+                    atom = t.substring(i, i + 2);
+                }
+                i = i + atom.length();
+            } else if ( c == '[' ) {
+                int end = classEnd(t, i);
+                if ( end < 0 ) {
+                    return null;
+                }
+                atom = t.substring(i, end + 1);
+                i = end + 1;
+            } else if ( c == '(' ) {
+                if ( t.startsWith("(?", i) && ! t.startsWith("(?:", i) ) {
+                    return null;
+                }
+                int end = groupEnd(t, i);
+                if ( end < 0 ) {
+                    return null;
+                }
+                atom = t.substring(i, end + 1);
+                if ( BACK_REFERENCE.matcher(atom).find() ) {
+                    return null;
+                }
+                i = end + 1;
+            } else if ( c == '.' ) {
+                atom = ".";
+                i++;
+            } else if ( c == '^' && i == 0 ) {
+                i++;
+                continue;
+            } else if ( c == '$' && i == n - 1 ) {
+                i++;
+                continue;
+            } else if ( "^$|)*+?{".indexOf(c) >= 0 ) {
+                return null;
+            } else {
+                literal = String.valueOf(c);
+                i++;
+            }
+
+            int q = quantifierEnd(t, i);
+            if ( q < 0 ) {
+                return null;
+            }
+            if ( q > i ) {
+                if ( atom == null ) {
+                    atom = Pattern.quote(literal);
+                }
+                atoms.add(atom + t.substring(i, q));
+                literals.add(false);
+                i = q;
+            } else if ( literal != null ) {
+                atoms.add(literal);
+                literals.add(true);
+            } else {
+                atoms.add(atom);
+                literals.add(false);
+            }
+        }
+
+        //join atoms into segments
+        List<Segment> result = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        boolean literal = true;
+        for (int a = 0; a <= atoms.size(); a++) {
+            boolean isLiteral = a < atoms.size() && literals.get(a);
+            boolean isWildcard = a < atoms.size() && isWildcard(atoms.get(a))
+                    && ( a + 1 == atoms.size() || literals.get(a + 1) );
+            if ( a == atoms.size() || isWildcard || isLiteral != literal ) {
+                if ( text.length() > 0 ) {
+                    result.add(new Segment(literal ? LITERAL : REGEX, text.toString()));
+                }
+                text.setLength(0);
+            }
+            if ( a == atoms.size() ) {
+                break;
+            }
+            if ( isWildcard ) {
+                Segment wildcard = new Segment(WILDCARD, atoms.get(a));
+                wildcard.min = atoms.get(a).startsWith(".+") ? 1 : 0;
+                result.add(wildcard);
+                literal = true;
+                continue;
+            }
+            text.append(atoms.get(a));
+            literal = isLiteral;
+        }
+
+        //compile regex islands, each one has to be followed by the next literal block
+        Map<String, Pattern> compiled = new HashMap<>();
+        for (int s = 0; s < result.size(); s++) {
+            Segment segment = result.get(s);
+            if ( segment.kind == REGEX ) {
+                String regex = "(?:" + segment.text + ")";
+                if ( s + 1 < result.size() && result.get(s + 1).kind == LITERAL ) {
+                    String next = result.get(s + 1).text;
+                    segment.lookahead = next.substring(0, Math.min(LOOKAHEAD, next.length()));
+                    regex = regex + "(?=" + Pattern.quote(segment.lookahead) + ")";
+                }
+                segment.pattern = compiled.computeIfAbsent(regex, Pattern::compile);
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean isWildcard(String atom) {
+        return atom.equals(".*") || atom.equals(".*?") || atom.equals(".+") || atom.equals(".+?");
+    }
+
+    /**
+     * helper function used to find end of a quantifier
+     *
+     * @return int, index after the quantifier, the same index if there is no quantifier or -1 if quantifier is not valid
+     */
+    private static int quantifierEnd(String t, int i) {
+        int n = t.length();
+        if ( i >= n ) {
+            return i;
+        }
+        int j;
+        char c = t.charAt(i);
+        if ( c == '*' || c == '+' || c == '?' ) {
+            j = i + 1;
+        } else if ( c == '{' ) {
+            Matcher m = QUANTIFIER.matcher(t);
+            m.region(i, n);
+            if ( ! m.lookingAt() ) {
+                return -1;
+            }
+            j = m.end();
+        } else {
+            return i;
+        }
+        if ( j < n && ( t.charAt(j) == '?' || t.charAt(j) == '+' ) ) {
+            j++;
+        }
+        return j;
+    }
+
+    private static int classEnd(String t, int i) {
+        int j = i + 1;
+        if ( j < t.length() && t.charAt(j) == '^' ) {
+            j++;
+        }
+        if ( j < t.length() && t.charAt(j) == ']' ) {
+            j++;
+        }
+        int depth = 1;
+        while ( j < t.length() ) {
+            char c = t.charAt(j);
+            if ( c == '\\' ) {
+                j++;
+            } else if ( c == '[' ) {
+                depth++;
+            } else if ( c == ']' ) {
+                depth--;
+                if ( depth == 0 ) {
+                    return j;
+                }
+            }
+            j++;
+        }
+        return -1;
+    }
+
+    private static int groupEnd(String t, int i) {
+        int depth = 0;
+        int j = i;
+        while ( j < t.length() ) {
+            char c = t.charAt(j);
+            if ( c == '\\' ) {
+                j++;
+            } else if ( c == '[' ) {
+                j = classEnd(t, j);
+                if ( j < 0 ) {
+                    return -1;
+                }
+            } else if ( c == '(' ) {
+                depth++;
+            } else if ( c == ')' ) {
+                depth--;
+                if ( depth == 0 ) {
+                    return j;
+                }
+            }
+            j++;
+        }
+        return -1;
+    }
+
+
+    /**
+     * Segment that could match differently, it is retried when a later segment does not match
+     */
+    private static final class Choice {
+        private final int segment;
+        //position of the regex island, -1 for a wildcard
+        private final long start;
+        //end of the island used so far
+        private final long first;
+        //position from which the next match is searched
+        private long next;
+
+        Choice(int segment, long start, long first, long next) {
+            this.segment = segment;
+            this.start = start;
+            this.first = first;
+            this.next = next;
+        }
+
+        /**
+         * @return long, position of the first character needed to retry the segment
+         */
+        long keep() {
+            return start < 0 ? next : start;
+        }
+    }
+
+
+    /**
+     * Content to compare without white spaces
+     * Only part of the content is kept in memory, each character remembers its line and column
+     */
+    private static final class Input {
+
+        private final Reader reader;
+        private final char[] chunk = new char[8192];
+        private final StringBuilder buffer = new StringBuilder();
+        private int[] lines = new int[1024];
+        private int[] columns = new int[1024];
+        //position of the first buffered character
+        private long start = 0;
+        //content after this position is kept for backtracking
+        private long floor = Long.MAX_VALUE;
+        private boolean eof = false;
+        private int line = 1;
+        private int column = 0;
+
+        Input(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * reads content until character at particular position is available or end of file is reached
+         *
+         * @return boolean, true if character at particular position is available
+         */
+        boolean available(long pos) throws IOException {
+            while ( ! eof && pos >= start + buffer.length() ) {
+                int read = reader.read(chunk);
+                if ( read == -1 ) {
+                    eof = true;
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    char c = chunk[i];
+                    if ( c == '\n' ) {
+                        line++;
+                        column = 0;
+                        continue;
+                    }
+                    column++;
+                    if ( ! isWhitespace(c) ) {
+                        int idx = buffer.length();
+                        if ( idx == lines.length ) {
+                            lines = Arrays.copyOf(lines, idx * 2);
+                            columns = Arrays.copyOf(columns, idx * 2);
+                        }
+                        lines[idx] = line;
+                        columns[idx] = column;
+                        buffer.append(c);
+                    }
+                }
+            }
+            return pos < start + buffer.length();
+        }
+
+        boolean isEof() {
+            return eof;
+        }
+
+        long first() {
+            return start;
+        }
+
+        void keep(long pos) {
+            floor = pos;
+        }
+
+        char charAt(long pos) {
+            return buffer.charAt((int) (pos - start));
+        }
+
+        /**
+         * reads content until end of file is reached, only the last characters are kept
+         *
+         * @param keep int, number of characters to keep
+         *
+         * @return long, length of the content
+         */
+        long drain(int keep) throws IOException {
+            while ( ! eof ) {
+                available(start + buffer.length() + WINDOW);
+                discardBefore(start + buffer.length() - keep);
+            }
+            return start + buffer.length();
+        }
+
+        /**
+         * @return CharSequence, already read content starting at particular position
+         */
+        CharSequence window(final long pos) {
+            final int offset = (int) (pos - start);
+            return new CharSequence() {
+                public int length() {
+                    return buffer.length() - offset;
+                }
+                public char charAt(int index) {
+                    return buffer.charAt(offset + index);
+                }
+                public CharSequence subSequence(int begin, int end) {
+                    return buffer.subSequence(offset + begin, offset + end);
+                }
+                @Override
+                public String toString() {
+                    return buffer.substring(offset);
+                }
+            };
+        }
+
+        /**
+         * finds first occurrence of a text starting at particular position
+         *
+         * @return long, position of the text or -1 if not found
+         */
+        long indexOf(String text, long from) throws IOException {
+            long searchFrom = from;
+            while ( true ) {
+                available(searchFrom + Math.max(WINDOW, text.length()));
+                int idx = buffer.indexOf(text, (int) Math.max(0, searchFrom - start));
+                if ( idx >= 0 ) {
+                    return start + idx;
+                }
+                if ( eof ) {
+                    return -1;
+                }
+                //keep only the part that can still contain beginning of the text
+                searchFrom = Math.max(searchFrom, start + buffer.length() - text.length() + 1);
+                discardBefore(searchFrom);
+            }
+        }
+
+        /**
+         * finds first occurrence of a text between two positions, content is not dropped
+         *
+         * @return long, position of the text or -1 if not found
+         */
+        long find(String text, long from, long to) throws IOException {
+            long searchFrom = from;
+            long loaded = from;
+            while ( true ) {
+                loaded = Math.min(to, loaded + WINDOW);
+                available(loaded + text.length());
+                int idx = buffer.indexOf(text, (int) (searchFrom - start));
+                if ( idx >= 0 ) {
+                    return start + idx <= to ? start + idx : -1;
+                }
+                if ( eof || loaded >= to ) {
+                    return -1;
+                }
+                searchFrom = Math.max(searchFrom, start + buffer.length() - text.length() + 1);
+            }
+        }
+
+        /**
+         * drops content that is not needed anymore
+         * Content needed for backtracking is kept, but not more than BACKTRACK_WINDOW characters
+         */
+        void discardBefore(long pos) {
+            long to = Math.min(pos, Math.max(floor, start + buffer.length() - BACKTRACK_WINDOW));
+            int count = (int) (to - start);
+            if ( count > WINDOW ) {
+                buffer.delete(0, count);
+                System.arraycopy(lines, count, lines, 0, buffer.length());
+                System.arraycopy(columns, count, columns, 0, buffer.length());
+                start = to;
+            }
+        }
+
+        /**
+         * @return Mismatch, difference at particular position
+         */
+        Mismatch mismatch(long pos, String expected) throws IOException {
+            available(pos + 40);
+            int idx = (int) (pos - start);
+            String found = "end of file";
+            int mLine = line;
+            int mColumn = column;
+            if ( idx >= 0 && idx < buffer.length() ) {
+                found = buffer.substring(idx, Math.min(buffer.length(), idx + 40));
+                mLine = lines[idx];
+                mColumn = columns[idx];
+            }
+            if ( expected.length() > 60 ) {
+                expected = expected.substring(0, 60) + "...";
+            }
+            return new Mismatch(mLine, mColumn, expected, found);
+        }
+    }
+
+
+    /**
+     * First difference between the template and the file
+     */
+    public static final class Mismatch {
+        private final int line;
+        private final int column;
+        private final String expected;
+        private final String found;
+
+        Mismatch(int line, int column, String expected, String found) {
+            this.line = line;
+            this.column = column;
+            this.expected = expected;
+            this.found = found;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public int getColumn() {
+            return column;
+        }
+
+        @Override
+        public String toString() {
+            return "First difference at line " + line + ", column " + column +
+                    ". Expected " + expected + " but found " + found;
+        }
+    }
+
+}
@@ -5,11 +5,11 @@ import cucumber.api.java.en.Then;
 import cucumber.api.java.en.When;
 import libs.libCore.modules.BaseSteps;
 import libs.libCore.modules.Log;
+import libs.libCore.modules.RowConsumer;
 import libs.libCore.modules.SharedContext;
+import libs.libCore.modules.TableDiff;
 
 import java.io.File;
-import java.util.List;
-import java.util.Map;
 
 public class CoreDbSteps extends BaseSteps {
 
@@ -40,6 +40,28 @@ public class CoreDbSteps extends BaseSteps {
     }
 
 
+    /**
+     * Loads data from csv file to data base in parallel
+     * File is split into partitions that are loaded at the same time on separate connections,
+     * number of partitions is defined in Environment.Active.Jdbc.loadThreads
+     * Data is loaded via staging table so either all rows are loaded or table is not modified
+     * It uses csv file as an input and TestData.<filename>TypeMapping object in the same way as
+     * step data from (.*?) csv file is loaded to table (.*?)
+     *
+     * @param fileName, String, name of the input csv file that contains input data (without .csv extension)
+     * @param tableName, String, name of the table to which data shall be loaded
+     */
+    @Given("^data from (.*?) csv file is loaded in parallel to table (.*?)$")
+    public void data_from_csv_file_is_loaded_to_table_in_parallel(String fileName, String tableName) throws Throwable {
+        Log.info("* Step started data_from_csv_file_is_loaded_to_table_in_parallel");
+
+        File input = new File(FileCore.getCurrentFeatureDirPath() + "/input/" + fileName + ".csv");
+        StepCore.attachFileToReport(fileName+".csv", "text/csv", input.getAbsolutePath());
+        Log.debug("Path to csv input file is " + input.getAbsolutePath());
+        SqlCore.insertFromFileInParallel(input,tableName,true, "TestData." + fileName + "TypeMapping");
+    }
+
+
     /**
      * Executes sql select query
      * Results are printed to the log and attached as a file attachment to the report
@@ -58,10 +80,8 @@ public class CoreDbSteps extends BaseSteps {
         Log.info("* Step started select_query_is_executed");
 
         String query = StepCore.checkIfInputIsVariable(sQuery);
-        List<Map<String,Object>> list = SqlCore.selectList(query);
-
-        SqlCore.printList(list);
-        File results = SqlCore.writeListToFile(list,queryResultName,"txt");
+        //results are streamed to the log and the file so they are not kept in memory
+        File results = SqlCore.selectToFile(query, queryResultName, "txt", RowConsumer.toLog());
 
         StepCore.attachFileToReport(queryResultName + ".txt","text/plain", results.getAbsolutePath());
         ctx.Object.put(queryResultName, String.class, results.getAbsolutePath());
@@ -113,22 +133,23 @@ public class CoreDbSteps extends BaseSteps {
 
     /**
      * Verifies that content of 2 tables A and B is the same
+     * Differences are checked in both directions, rows missing in table B as well as rows missing in table A
+     * are printed to the log
      *
      * @param tableAName, String, name of the table A
      * @param tableBName, String, name of the table B
      */
     @Then("^verify that content of table (.*?) equals content of table (.*)$")
     public void verify_that_content_of_table_equals_content_of_table(String tableAName, String tableBName) throws Throwable {
-        Log.info("* Step started create_table_backup_with_name");
+        Log.info("* Step started verify_that_content_of_table_equals_content_of_table");
 
         String tableA = StepCore.checkIfInputIsVariable(tableAName);
         String tableB = StepCore.checkIfInputIsVariable(tableBName);
 
-        String query = "SELECT * FROM TABLE " + tableA + " EXCEPT SELECT * FROM TABLE " + tableB;
-        List<Map<String,Object>> list = SqlCore.selectList(query);
+        TableDiff.Result diff = SqlCore.compareTables(tableA, tableB);
 
-        if ( list.size() > 0 ){
-            SqlCore.printList(list);
+        if ( ! diff.isEqual() ){
+            Log.warn(diff.toString());
             Log.error("Content of table " + tableA + " is different than content of table " + tableB);
         }
     }
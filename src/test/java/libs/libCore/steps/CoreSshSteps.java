@@ -1,11 +1,18 @@
 package libs.libCore.steps;
 
 import cucumber.api.java.en.Given;
+import cucumber.api.java.en.When;
 import libs.libCore.modules.BaseSteps;
 import libs.libCore.modules.Log;
 import libs.libCore.modules.SSHResult;
 import libs.libCore.modules.SharedContext;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 public class CoreSshSteps extends BaseSteps {
 
     // PicoContainer injects class SharedContext
@@ -42,4 +49,53 @@ public class CoreSshSteps extends BaseSteps {
     }
 
 
+    /**
+     * Executes command on many ssh nodes at the same time
+     * By default execution is cancelled on other nodes as soon as command fails on one of them,
+     * when results are collected command is executed on all nodes and step fails at the end
+     * Results are stored as ctx.Object.SshResults (map of SSHResult per node) and summary is attached to the report
+     * Timeout of the command on a single node is taken from Environment.Active.SshPool.timeout (60 s by default)
+     *
+     * @param cmd, String, command to execute (can also be defined in test data config, in that case
+     *             this parameter act as command identifier)
+     * @param nodes, String, comma separated list of node names or tags starting with @, like node1, node2, @web
+     * @param collectAll, String, not null if all results shall be collected
+     */
+    @When("^command (.+?) is executed on ssh nodes (.+?)( and all results are collected)?$")
+    public void command_is_executed_on_ssh_nodes(String cmd, String nodes, String collectAll) throws Throwable {
+        Log.info("* Step started command_is_executed_on_ssh_nodes");
+
+        String command = StepCore.checkIfInputIsVariable(cmd);
+        List<String> nodeNames = SshCore.resolveNodes(nodes);
+        Integer timeout = Storage.get("Environment.Active.SshPool.timeout");
+        if ( timeout == null ) {
+            timeout = 60;
+        }
+        Map<String, SSHResult> results = SshCore.executeOnNodes(nodeNames, command, timeout, collectAll == null);
+
+        StringBuilder summary = new StringBuilder();
+        List<String> failed = new ArrayList<>();
+        for (Map.Entry<String, SSHResult> entry : results.entrySet()) {
+            SSHResult result = entry.getValue();
+            summary.append(entry.getKey()).append(" exit code ").append(result.getExitCode())
+                    .append(" in ").append(result.getDuration()).append(" ms").append(System.lineSeparator())
+                    .append(result.getStdout().trim()).append(System.lineSeparator())
+                    .append(result.getStderr().trim()).append(System.lineSeparator());
+            //field SshCore hides the class so static method is called via fully qualified name
+            if ( ! libs.libCore.modules.SshCore.isSuccess(result) ) {
+                failed.add(entry.getKey());
+            }
+        }
+        StepCore.attachMessageToReport("Ssh results", summary.toString());
+        ctx.Object.put("SshResults", HashMap.class, new LinkedHashMap<>(results));
+
+        if ( failed.size() > 0 ) {
+            Log.error("Command " + command + " failed on nodes " + failed);
+        }
+        if ( results.size() < nodeNames.size() ) {
+            Log.error("Command " + command + " was executed only on " + results.size() + " of " + nodeNames.size() + " nodes");
+        }
+    }
+
+
 }